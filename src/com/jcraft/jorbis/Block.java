@@ -109,14 +109,12 @@ public class Block {
         if (pcm.length < vi.channels) {
             pcm = new float[vi.channels][];
         }
+        // the mapping clears the spectrum half itself, and the inverse
+        // MDCT overwrites the whole block, so no need to zero it here.
+        // Allocate for the long block up front to avoid flip-flopping.
         for (int i = 0; i < vi.channels; i++) {
-            if (pcm[i] == null || pcm[i].length < pcmend) {
-                pcm[i] = new float[pcmend];
-            } else {
-                for (int j = 0; j < pcmend; j++) {
-                    pcm[i][j] = 0;
-                }
-            }
+            if (pcm[i] == null || pcm[i].length < pcmend)
+                pcm[i] = new float[vi.blocksizes[1]];
         }
 
         // unpack_header enforces range checking
@@ -26,6 +26,8 @@
 
 package com.jcraft.jorbis;
 
+import java.util.*;
+
 public class DspState {
     static final float M_PI = 3.1415926539f;
     static final int VI_TRANSFORMB = 1;
@@ -93,7 +95,24 @@ public class DspState {
         window[1][1][1] = new float[2][];
     }
 
+    /* Windows are shared between all streams, since they only depend
+     * on the block sizes. The returned arrays must not be modified. */
+    private static final Map<List<Integer>, float[]> windows = new HashMap<List<Integer>, float[]>();
+
     static float[] window(int type, int window, int left, int right) {
+        List<Integer> key = Arrays.asList(type, window, left, right);
+        synchronized (windows) {
+            if (windows.containsKey(key))
+                return (windows.get(key));
+        }
+        float[] ret = mkwindow(type, window, left, right);
+        synchronized (windows) {
+            windows.put(key, ret);
+        }
+        return (ret);
+    }
+
+    private static float[] mkwindow(int type, int window, int left, int right) {
         float[] ret = new float[window];
         switch (type) {
             case 0:
@@ -182,6 +201,9 @@ public class DspState {
         pcm_storage = 8192; // we'll assume later that we have
         // a minimum of twice the blocksize of
         // accumulated samples in analysis
+        // leave room for a long block past the shift threshold, so
+        // that synthesis_blockin never has to grow the storage
+        pcm_storage += vi.blocksizes[1];
         pcm = new float[vi.channels][];
         {
             for (int i = 0; i < vi.channels; i++) {
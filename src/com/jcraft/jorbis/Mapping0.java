@@ -186,6 +186,7 @@ class Mapping0 extends FuncMapping {
     int[] zerobundle = null;
     int[] nonzero = null;
     Object[] floormemo = null;
+    Object[] floorbuf = null; // keeps the floor buffers across silent blocks
 
     synchronized int inverse(Block vb, Object l) {
         DspState vd = vb.vd;
@@ -201,6 +202,7 @@ class Mapping0 extends FuncMapping {
             nonzero = new int[vi.channels];
             zerobundle = new int[vi.channels];
             floormemo = new Object[vi.channels];
+            floorbuf = new Object[vi.channels];
         }
 
         // time domain information decode (note that applying the
@@ -214,8 +216,9 @@ class Mapping0 extends FuncMapping {
             int submap = info.chmuxlist[i];
 
             floormemo[i] = look.floor_func[submap].inverse1(vb,
-                    look.floor_look[submap], floormemo[i]);
+                    look.floor_look[submap], floorbuf[i]);
             if (floormemo[i] != null) {
+                floorbuf[i] = floormemo[i];
                 nonzero[i] = 1;
             } else {
                 nonzero[i] = 0;
@@ -292,10 +295,13 @@ class Mapping0 extends FuncMapping {
         // transform the PCM data; takes PCM vector, vb; modifies PCM vector
         // only MDCT right now....
 
+        // silent channels are cleared below anyway, so skip their
+        // transform.
         for (int i = 0; i < vi.channels; i++) {
             float[] pcm = vb.pcm[i];
             //_analysis_output("out",seq+i,pcm,n/2,0,0);
-            ((Mdct) vd.transform[vb.W][0]).backward(pcm, pcm);
+            if (nonzero[i] != 0)
+                ((Mdct) vd.transform[vb.W][0]).backward(pcm, pcm);
         }
 
         // now apply the decoded pre-window time information
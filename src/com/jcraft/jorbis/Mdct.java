@@ -26,6 +26,8 @@
 
 package com.jcraft.jorbis;
 
+import java.util.*;
+
 class Mdct {
 
     int n;
@@ -36,12 +38,28 @@ class Mdct {
 
     float scale;
 
-    void init(int n) {
-        bitrev = new int[n / 4];
-        trig = new float[n + n / 4];
+    /* The tables only depend on the block size, so they are shared
+     * between all streams rather than rebuilt for every clip. */
+    private static final Map<Integer, Object[]> tables = new HashMap<Integer, Object[]>();
 
+    void init(int n) {
         log2n = (int) Math.rint(Math.log(n) / Math.log(2));
         this.n = n;
+        Object[] t;
+        synchronized (tables) {
+            if ((t = tables.get(n)) == null)
+                tables.put(n, t = mktables(n, log2n));
+        }
+        trig = (float[]) t[0];
+        bitrev = (int[]) t[1];
+        _x = new float[n / 2];
+        _w = new float[n / 2];
+        scale = 4.f / n;
+    }
+
+    private static Object[] mktables(int n, int log2n) {
+        int[] bitrev = new int[n / 4];
+        float[] trig = new float[n + n / 4];
 
         int AE = 0;
         int AO = 1;
@@ -74,7 +92,7 @@ class Mdct {
                 bitrev[i * 2 + 1] = acc;
             }
         }
-        scale = 4.f / n;
+        return (new Object[]{trig, bitrev});
     }
 
     void clear() {
@@ -83,8 +101,8 @@ class Mdct {
     void forward(float[] in, float[] out) {
     }
 
-    float[] _x = new float[1024];
-    float[] _w = new float[1024];
+    float[] _x;
+    float[] _w;
 
     synchronized void backward(float[] in, float[] out) {
         if (_x.length < n / 2) {
@@ -95,6 +113,7 @@ class Mdct {
         }
         float[] x = _x;
         float[] w = _w;
+        float[] trig = this.trig;
         int n2 = n >>> 1;
         int n4 = n >>> 2;
         int n8 = n >>> 3;
@@ -154,62 +173,69 @@ class Mdct {
 
     private float[] mdct_kernel(float[] x, float[] w, int n, int n2, int n4,
                                 int n8) {
-        // step 2
-
-        int xA = n4;
-        int xB = 0;
-        int w2 = n4;
-        int A = n2;
+        float[] trig = this.trig;
 
-        for (int i = 0; i < n4; ) {
-            float x0 = x[xA] - x[xB];
-            float x1;
-            w[w2 + i] = x[xA++] + x[xB++];
-
-            x1 = x[xA] - x[xB];
-            A -= 4;
-
-            w[i++] = x0 * trig[A] + x1 * trig[A + 1];
-            w[i] = x1 * trig[A] - x0 * trig[A + 1];
+        // step 2
 
-            w[w2 + i] = x[xA++] + x[xB++];
-            i++;
+        for (int i = 0, A = n2 - 4; i < n4; i += 2, A -= 4) {
+            float xA0 = x[n4 + i], xB0 = x[i];
+            float xA1 = x[n4 + i + 1], xB1 = x[i + 1];
+            float x0 = xA0 - xB0;
+            float x1 = xA1 - xB1;
+            float AEv = trig[A], AOv = trig[A + 1];
+
+            w[n4 + i] = xA0 + xB0;
+            w[n4 + i + 1] = xA1 + xB1;
+            w[i] = x0 * AEv + x1 * AOv;
+            w[i + 1] = x1 * AEv - x0 * AOv;
         }
 
         // step 3
+        // Each stage is an r-by-s grid of butterflies; run the longer
+        // dimension as the inner loop, so that the early stages don't
+        // spend their time in two-iteration loops.
 
         {
             for (int i = 0; i < log2n - 3; i++) {
                 int k0 = n >>> (i + 2);
                 int k1 = 1 << (i + 3);
-                int wbase = n2 - 2;
-
-                A = 0;
+                int h = k0 >> 1;
+                int rn = k0 >>> 2;
+                int sn = 2 << i;
                 float[] temp;
 
-                for (int r = 0; r < (k0 >>> 2); r++) {
-                    int w1 = wbase;
-                    w2 = w1 - (k0 >> 1);
-                    float AEv = trig[A], wA;
-                    float AOv = trig[A + 1], wB;
-                    wbase -= 2;
-
-                    k0++;
-                    for (int s = 0; s < (2 << i); s++) {
-                        wB = w[w1] - w[w2];
-                        x[w1] = w[w1] + w[w2];
-
-                        wA = w[++w1] - w[++w2];
-                        x[w1] = w[w1] + w[w2];
-
-                        x[w2] = wA * AEv - wB * AOv;
-                        x[w2 - 1] = wB * AEv + wA * AOv;
-
-                        w1 -= k0;
-                        w2 -= k0;
+                if (rn >= sn) {
+                    for (int s = 0, o = n2 - 2; s < sn; s++, o -= k0) {
+                        for (int r = 0, w1 = o, A = 0; r < rn; r++, w1 -= 2, A += k1) {
+                            int w2 = w1 - h;
+                            float AEv = trig[A], AOv = trig[A + 1];
+                            float w10 = w[w1], w11 = w[w1 + 1];
+                            float w20 = w[w2], w21 = w[w2 + 1];
+                            float wB = w10 - w20;
+                            float wA = w11 - w21;
+
+                            x[w1] = w10 + w20;
+                            x[w1 + 1] = w11 + w21;
+                            x[w2 + 1] = wA * AEv - wB * AOv;
+                            x[w2] = wB * AEv + wA * AOv;
+                        }
+                    }
+                } else {
+                    for (int r = 0, o = n2 - 2, A = 0; r < rn; r++, o -= 2, A += k1) {
+                        float AEv = trig[A], AOv = trig[A + 1];
+                        for (int s = 0, w1 = o; s < sn; s++, w1 -= k0) {
+                            int w2 = w1 - h;
+                            float w10 = w[w1], w11 = w[w1 + 1];
+                            float w20 = w[w2], w21 = w[w2 + 1];
+                            float wB = w10 - w20;
+                            float wA = w11 - w21;
+
+                            x[w1] = w10 + w20;
+                            x[w1 + 1] = w11 + w21;
+                            x[w2 + 1] = wA * AEv - wB * AOv;
+                            x[w2] = wB * AEv + wA * AOv;
+                        }
                     }
-                    k0--;
-                    A += k1;
                 }
 
                 temp = w;
@@ -0,0 +1,123 @@
+package dolda.xiphutil;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks and benchmarks Vorbis decoding. For every given file, the
+ * decoded samples of both {@link VorbisStream#decode()} and {@link
+ * VorbisStream#decode(float[][], int, int)} are hashed bitwise, and
+ * must agree. The hashes are printed one file per line, as the file
+ * name, the number of sample frames and the hash, and when a
+ * reference listing recorded from an earlier decoder is given, they
+ * are checked against it as well. With <code>-b</code>, decode
+ * throughput is then measured as seconds of audio decoded per second
+ * of CPU time. Run as
+ *   DecodeCheck [-r REFERENCE] [-b] FILE...
+ */
+public class DecodeCheck {
+    private static long hash(float[][] buf, int off, int n, long h) {
+        for (int i = off; i < off + n; i++) {
+            for (int c = 0; c < buf.length; c++)
+                h = (h * 31) + Float.floatToRawIntBits(buf[c][i]);
+        }
+        return (h);
+    }
+
+    private static String check(String name, byte[] data) throws IOException {
+        VorbisStream s = new VorbisStream(new ByteArrayInputStream(data));
+        long h1 = 1125899906842597L, n1 = 0;
+        float[][] b;
+        while ((b = s.decode()) != null) {
+            h1 = hash(b, 0, b[0].length, h1);
+            n1 += b[0].length;
+        }
+        s = new VorbisStream(new ByteArrayInputStream(data));
+        long h2 = 1125899906842597L, n2 = 0;
+        float[][] buf = new float[s.chn][1000];
+        int n;
+        while ((n = s.decode(buf, 0, buf[0].length)) >= 0) {
+            h2 = hash(buf, 0, n, h2);
+            n2 += n;
+        }
+        if ((h1 != h2) || (n1 != n2))
+            throw (new AssertionError(name + ": decode() and decode(buf, off, len) disagree"));
+        return (String.format("%s %d %016x", name, n1, h1));
+    }
+
+    private static double bench(List<byte[]> files, boolean bulk, int rounds) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        float[][] buf = new float[8][4096];
+        double best = 0, alloc = 0;
+        for (int r = 0; r < rounds; r++) {
+            long c0 = threads.getCurrentThreadCpuTime(), a0 = threads.getThreadAllocatedBytes(tid);
+            long samples = 0;
+            for (byte[] data : files) {
+                VorbisStream s = new VorbisStream(new ByteArrayInputStream(data));
+                if (bulk) {
+                    int n;
+                    while ((n = s.decode(buf, 0, buf[0].length)) >= 0)
+                        samples += n;
+                } else {
+                    float[][] b;
+                    while ((b = s.decode()) != null)
+                        samples += b[0].length;
+                }
+            }
+            long c1 = threads.getCurrentThreadCpuTime(), a1 = threads.getThreadAllocatedBytes(tid);
+            best = Math.max(best, (samples / 44100.0) / ((c1 - c0) / 1e9));
+            alloc = (a1 - a0) / (samples / 1024.0);
+        }
+        System.out.printf("%s: %.1f s of audio per CPU second, %.0f B allocated per 1024 samples%n",
+                          bulk ? "decode(buf, off, len)" : "decode()", best, alloc);
+        return (best);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> ref = null;
+        boolean bench = false;
+        List<String> names = new ArrayList<String>();
+        List<byte[]> files = new ArrayList<byte[]>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-r")) {
+                ref = new HashMap<String, String>();
+                for (String ln : Files.readAllLines(Paths.get(args[++i]))) {
+                    if (!ln.trim().equals(""))
+                        ref.put(ln.split(" ")[0], ln.trim());
+                }
+            } else if (args[i].equals("-b")) {
+                bench = true;
+            } else {
+                names.add(new File(args[i]).getName());
+                files.add(Files.readAllBytes(Paths.get(args[i])));
+            }
+        }
+        int failed = 0;
+        for (int i = 0; i < files.size(); i++) {
+            String res = check(names.get(i), files.get(i));
+            System.out.println(res);
+            if (ref != null) {
+                String exp = ref.get(names.get(i));
+                if (exp == null) {
+                    System.out.println("  not in reference");
+                } else if (!exp.equals(res)) {
+                    System.out.println("  MISMATCH, reference: " + exp);
+                    failed++;
+                }
+            }
+        }
+        if (failed > 0)
+            throw (new AssertionError(failed + " files differ from the reference"));
+        if (bench) {
+            /* Each round decodes the corpus 20 times. */
+            List<byte[]> corpus = new ArrayList<byte[]>();
+            for (int i = 0; i < 20; i++)
+                corpus.addAll(files);
+            bench(corpus, false, 16);
+            bench(corpus, true, 16);
+        }
+    }
+}
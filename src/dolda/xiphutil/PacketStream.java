@@ -36,24 +36,44 @@ public class PacketStream {
      *                             stream.
      */
     public Packet packet() throws IOException {
-        if (eos)
+        Packet pkt = new Packet();
+        if (!packet(pkt))
             return (null);
+        return (pkt);
+    }
+
+    /**
+     * Fetches one packet from the stream into an existing
+     * <code>Packet</code> object, so that it can be reused between
+     * calls. The packet data refers to the internal buffers of the
+     * stream, and is only valid until the next packet is fetched.
+     *
+     * @param pkt the packet object to fill in.
+     * @return <code>true</code> if a packet was fetched, or
+     * <code>false</code> if at the end of the stream.
+     * @throws java.io.IOException if the <code>PageStream</code>
+     *                             itself throws an <code>IOException</code>.
+     * @throws FormatException     if a format error is found in the
+     *                             stream.
+     */
+    public boolean packet(Packet pkt) throws IOException {
+        if (eos)
+            return (false);
         if (strm == null) {
             strm = new StreamState();
             page = in.page();
             strm.init(page.serialno());
         }
-        Packet pkt = new Packet();
         while (true) {
             int ret = strm.packetout(pkt);
             if (ret < 0)
                 throw (new OggException()); /* ? */
             if (ret == 1)
-                return (pkt);
+                return (true);
             if (page == null) {
                 if ((page = in.page()) == null) {
                     eos = true;
-                    return (null);
+                    return (false);
                 }
             }
             if (strm.pagein(page) != 0)
@@ -34,6 +34,7 @@ public class VorbisStream {
     private Block blk = new Block(dsp);
     private float[][][] pcmp;
     private int[] idxp;
+    private final Packet pkt = new Packet();
     /**
      * A <code>java.util.Map</code> instance, providing the Vorbis
      * comments as key-value pairs decoded as normal
@@ -151,14 +152,49 @@ public class VorbisStream {
                 dsp.synthesis_read(len);
                 return (ret);
             }
-            Packet pkt = in.packet();
-            if (pkt == null)
+            if (!in.packet(pkt))
                 return (null);
             if ((blk.synthesis(pkt) != 0) || (dsp.synthesis_blockin(blk) != 0))
                 throw (new VorbisException());
         }
     }
 
+    /**
+     * Perform a decode cycle into caller-provided buffers. At most
+     * <code>len</code> samples are decoded into each array of
+     * <code>buf</code>, starting at <code>off</code>. Unlike {@link
+     * #decode()}, this function allocates no sample arrays of its
+     * own, and is therefore preferable for continuous playback.
+     *
+     * <p>If <code>buf</code> contains more arrays than there are
+     * channels in the stream, the channels are repeated, so that
+     * array <code>i</code> receives channel <code>i % chn</code>.
+     *
+     * @return The number of samples decoded into each array, which is
+     * always at least one unless <code>len</code> is zero, or -1 when
+     * the stream ends.
+     * @throws java.io.IOException if the backing input stream
+     *                             itself throws an <code>IOException</code>.
+     * @throws FormatException     if a format error is found in
+     *                             the input.
+     */
+    public int decode(float[][] buf, int off, int len) throws IOException {
+        while (true) {
+            int av = dsp.synthesis_pcmout(pcmp, idxp);
+            if (av > 0) {
+                int n = Math.min(av, len);
+                for (int i = 0; i < buf.length; i++)
+                    System.arraycopy(pcmp[0][i % chn], idxp[i % chn], buf[i], off, n);
+                dsp.synthesis_read(n);
+                return (n);
+            }
+            if (!in.packet(pkt))
+                return (-1);
+            if ((blk.synthesis(pkt) != 0) || (dsp.synthesis_blockin(blk) != 0))
+                throw (new VorbisException());
+        }
+    }
+
     /**
      * Constructs and returns a <code>java.io.InputStream</code> which
      * uses the {@link #decode()} function to decode data, and encodes
@@ -49,12 +49,24 @@ public class Audio {
     }
 
     public interface CS {
-        public int get(double[][] buf, int len);
+        public int get(float[][] buf, int len);
+    }
+
+    /* Returns a buffer of at least the given size, reusing the old
+     * one if it is large enough, so that the stages below need not
+     * allocate on the audio thread once they have warmed up. */
+    static float[][] scratch(float[][] buf, int nch, int ns) {
+        if ((buf.length != nch) || ((nch > 0) && (buf[0].length < ns)))
+            buf = new float[nch][Math.max(ns, 512)];
+        return (buf);
     }
 
     public static class Mixer implements CS {
         public final boolean cont;
-        private final Collection<CS> clips = new LinkedList<CS>();
+        /* The clip list is replaced rather than modified, so that the
+         * audio thread can mix without taking the lock. */
+        private volatile CS[] clips = {};
+        private float[][] buf = {};
 
         public Mixer(boolean continuous) {
             this.cont = continuous;
@@ -64,41 +76,38 @@ public class Audio {
             this(false);
         }
 
-        public int get(double[][] dst, int ns) {
+        public int get(float[][] dst, int ns) {
             int nch = dst.length;
-            double[][] buf = new double[nch][ns];
+            float[][] buf = this.buf = scratch(this.buf, nch, ns);
+            CS[] clips = this.clips;
             int max = 0;
-            synchronized (clips) {
-                clip:
-                for (Iterator<CS> i = clips.iterator(); i.hasNext(); ) {
-                    CS cs = i.next();
-                    int left = ns;
-                    int boff = 0;
-                    while (left > 0) {
-                        int ret = cs.get(buf, left);
-                        if (ret < 0) {
-                            i.remove();
-                            continue clip;
-                        }
-                        if (boff + ret > max) {
-                            for (int ch = 0; ch < nch; ch++)
-                                Arrays.fill(dst[ch], max, boff + ret, 0.0);
-                            max = boff + ret;
-                        }
-                        for (int ch = 0; ch < nch; ch++) {
-                            for (int sm = 0; sm < ret; sm++)
-                                dst[ch][boff + sm] += buf[ch][sm];
-                        }
-                        left -= ret;
-                        boff += ret;
+            clip:
+            for (CS cs : clips) {
+                int left = ns;
+                int boff = 0;
+                while (left > 0) {
+                    int ret = cs.get(buf, left);
+                    if (ret < 0) {
+                        stop(cs);
+                        continue clip;
+                    }
+                    if (boff + ret > max) {
+                        for (int ch = 0; ch < nch; ch++)
+                            Arrays.fill(dst[ch], max, boff + ret, 0.0f);
+                        max = boff + ret;
+                    }
+                    for (int ch = 0; ch < nch; ch++) {
+                        float[] d = dst[ch], b = buf[ch];
+                        for (int sm = 0; sm < ret; sm++)
+                            d[boff + sm] += b[sm];
                     }
+                    left -= ret;
+                    boff += ret;
                 }
             }
             if (cont) {
-                for (int ch = 0; ch < nch; ch++) {
-                    for (int sm = max; sm < ns; sm++)
-                        dst[ch][sm] = 0;
-                }
+                for (int ch = 0; ch < nch; ch++)
+                    Arrays.fill(dst[ch], max, ns, 0.0f);
                 return (ns);
             } else {
                 return ((max > 0) ? max : -1);
@@ -106,16 +115,21 @@ public class Audio {
         }
 
         public void add(CS clip) {
-            synchronized (clips) {
-                clips.add(clip);
+            synchronized (this) {
+                CS[] n = Arrays.copyOf(clips, clips.length + 1);
+                n[clips.length] = clip;
+                clips = n;
             }
         }
 
         public void stop(CS clip) {
-            synchronized (clips) {
-                for (Iterator<CS> i = clips.iterator(); i.hasNext(); ) {
-                    if (i.next() == clip) {
-                        i.remove();
+            synchronized (this) {
+                for (int i = 0; i < clips.length; i++) {
+                    if (clips[i] == clip) {
+                        CS[] n = new CS[clips.length - 1];
+                        System.arraycopy(clips, 0, n, 0, i);
+                        System.arraycopy(clips, i + 1, n, i, n.length - i);
+                        clips = n;
                         break;
                     }
                 }
@@ -123,30 +137,24 @@ public class Audio {
         }
 
         public boolean playing(CS clip) {
-            synchronized (clips) {
-                for (CS cs : clips) {
-                    if (cs == clip)
-                        return (true);
-                }
+            for (CS cs : clips) {
+                if (cs == clip)
+                    return (true);
             }
             return (false);
         }
 
         public boolean empty() {
-            synchronized (clips) {
-                return (clips.isEmpty());
-            }
+            return (clips.length == 0);
         }
 
         public Collection<CS> current() {
-            synchronized (clips) {
-                return (new ArrayList<CS>(clips));
-            }
+            return (new ArrayList<CS>(Arrays.asList(clips)));
         }
 
         public void clear() {
-            synchronized (clips) {
-                clips.clear();
+            synchronized (this) {
+                clips = new CS[0];
             }
         }
     }
@@ -155,16 +163,17 @@ public class Audio {
         public final InputStream clip;
         public final int sch;
         private final byte[] dbuf = new byte[256];
+        private final float[] dec;
         private int head = 0, tail = 0;
 
         public PCMClip(InputStream clip, int nch) {
             this.clip = clip;
             this.sch = nch;
+            this.dec = new float[nch];
         }
 
-        public int get(double[][] dst, int ns) {
+        public int get(float[][] dst, int ns) {
             int nch = dst.length;
-            double[] dec = new double[sch];
             for (int sm = 0; sm < ns; sm++) {
                 while (tail - head < 2 * sch) {
                     if (head > 0) {
@@ -188,7 +197,7 @@ public class Audio {
                     int v = b1 + (b2 << 8);
                     if (v >= 32768)
                         v -= 65536;
-                    dec[ch] = v * 0x1.0p-15;
+                    dec[ch] = v * 0x1.0p-15f;
                 }
                 for (int ch = 0; ch < nch; ch++)
                     dst[ch][sm] = dec[ch % sch];
@@ -199,39 +208,171 @@ public class Audio {
 
     public static class VorbisClip implements CS {
         public final VorbisStream clip;
-        private float[][] data = new float[1][0];
-        private int dp = 0;
+        private boolean eof = false;
+        private PCMCache rcache = null;
+        private Object rkey;
+        private List<float[][]> rec;
+        private int reclen;
 
         public VorbisClip(VorbisStream clip) {
             this.clip = clip;
         }
 
-        public int get(double[][] dst, int ns) {
-            int nch = dst.length;
-            if (data == null)
+        /* Keeps the decoded samples as the clip plays, and hands them
+         * to the cache if it gets to the end without growing past the
+         * cache's length limit. */
+        public VorbisClip record(PCMCache cache, Object key) {
+            if (!cache.streamed(key)) {
+                this.rcache = cache;
+                this.rkey = key;
+                this.rec = new ArrayList<>();
+                this.reclen = 0;
+            }
+            return (this);
+        }
+
+        private void recorded(float[][] data, int off, int n) {
+            if (data == null) {
+                rcache.put(rkey, PCMCache.join(rec, reclen));
+                rec = null;
+            } else if (reclen + n > rcache.maxlen) {
+                rcache.stream(rkey);
+                rec = null;
+            } else {
+                float[][] part = new float[Math.min(clip.chn, data.length)][];
+                for (int ch = 0; ch < part.length; ch++)
+                    part[ch] = Arrays.copyOfRange(data[ch], off, off + n);
+                rec.add(part);
+                reclen += n;
+            }
+        }
+
+        public int get(float[][] dst, int ns) {
+            if (eof)
                 return (-1);
-            for (int sm = 0; sm < ns; sm++) {
-                while (dp >= data[0].length) {
-                    try {
-                        if ((data = clip.decode()) == null)
-                            return ((sm > 0) ? sm : -1);
-                    } catch (IOException e) {
-                        return (-1);
-                    }
-                    dp = 0;
+            int sm = 0;
+            while (sm < ns) {
+                int n;
+                try {
+                    n = clip.decode(dst, sm, ns - sm);
+                } catch (IOException e) {
+                    return (-1);
                 }
-                for (int ch = 0; ch < nch; ch++)
-                    dst[ch][sm] = data[ch % clip.chn][dp];
-                dp++;
+                if (n < 0) {
+                    if (rec != null)
+                        recorded(null, 0, 0);
+                    eof = true;
+                    return ((sm > 0) ? sm : -1);
+                }
+                if (rec != null)
+                    recorded(dst, sm, n);
+                sm += n;
             }
             return (ns);
         }
     }
 
+    /* Plays already decoded samples, one array per channel. */
+    public static class SampleClip implements CS {
+        public final float[][] data;
+        private int dp = 0;
+
+        public SampleClip(float[][] data) {
+            this.data = data;
+        }
+
+        public int get(float[][] dst, int ns) {
+            int nch = dst.length;
+            int n = Math.min(ns, data[0].length - dp);
+            if (n <= 0)
+                return (-1);
+            for (int ch = 0; ch < nch; ch++)
+                System.arraycopy(data[ch % data.length], dp, dst[ch], 0, n);
+            dp += n;
+            return (n);
+        }
+    }
+
+    /* Decoded samples of short clips, so that sound effects which are
+     * played over and over are decoded only once. The cache is bounded
+     * by the memory its samples take, and evicts the least recently
+     * played clips first. Clips longer than the length limit are not
+     * cached at all, and keep being streamed. */
+    public static class PCMCache {
+        public final long budget;
+        public final int maxlen;
+        private final Map<Object, float[][]> clips = new LinkedHashMap<>(16, 0.75f, true);
+        private final Set<Object> streamed = Collections.newSetFromMap(new WeakHashMap<>());
+        private long used = 0;
+        private int hits, misses;
+
+        public PCMCache(long budget, int maxlen) {
+            this.budget = budget;
+            this.maxlen = maxlen;
+        }
+
+        private static long size(float[][] data) {
+            return ((long) data.length * data[0].length * 4);
+        }
+
+        static float[][] join(List<float[][]> parts, int len) {
+            int nch = parts.isEmpty() ? 1 : parts.get(0).length;
+            float[][] ret = new float[nch][len];
+            int off = 0;
+            for (float[][] part : parts) {
+                for (int ch = 0; ch < nch; ch++)
+                    System.arraycopy(part[ch], 0, ret[ch], off, part[ch].length);
+                off += part[0].length;
+            }
+            return (ret);
+        }
+
+        public synchronized float[][] get(Object key) {
+            float[][] ret = clips.get(key);
+            if (ret != null)
+                hits++;
+            else
+                misses++;
+            return (ret);
+        }
+
+        public synchronized void put(Object key, float[][] data) {
+            long sz = size(data);
+            if (sz > budget)
+                return;
+            float[][] prev = clips.put(key, data);
+            if (prev != null)
+                used -= size(prev);
+            used += sz;
+            for (Iterator<float[][]> i = clips.values().iterator(); (used > budget) && i.hasNext(); ) {
+                used -= size(i.next());
+                i.remove();
+            }
+        }
+
+        synchronized void stream(Object key) {
+            streamed.add(key);
+        }
+
+        public synchronized boolean streamed(Object key) {
+            return (streamed.contains(key));
+        }
+
+        public synchronized void clear() {
+            clips.clear();
+            used = 0;
+        }
+
+        public synchronized String stats() {
+            return (String.format("%d clips, %.1f/%.1f MB, %d hits, %d misses", clips.size(), used / 1048576.0, budget / 1048576.0, hits, misses));
+        }
+    }
+
+    public static final PCMCache pcmcache = new PCMCache(Utils.getprefi("sfxcache", 16) * 1048576L, 44100 * 4);
+
     public static class VolAdjust implements CS {
         public final CS bk;
         public double vol = 1.0, bal = 0.0;
-        private double[] cvol = {};
 
         public VolAdjust(CS bk, double vol) {
             this.bk = bk;
@@ -242,22 +383,24 @@ public class Audio {
             this(bk, 1.0);
         }
 
-        public int get(double[][] dst, int ns) {
+        public int get(float[][] dst, int ns) {
             int nch = dst.length;
             int ret = bk.get(dst, ns);
             if (ret < 0)
                 return (ret);
-            if (cvol.length != nch)
-                cvol = new double[nch];
-            for (int i = 0; i < cvol.length; i++)
-                cvol[i] = vol;
-            if (bal < 0)
-                cvol[1] *= 1.0 + bal;
-            if (bal > 0)
-                cvol[0] *= 1.0 - bal;
+            double vol = this.vol, bal = this.bal;
             for (int ch = 0; ch < nch; ch++) {
+                double cv = vol;
+                if ((ch == 1) && (bal < 0))
+                    cv *= 1.0 + bal;
+                if ((ch == 0) && (bal > 0))
+                    cv *= 1.0 - bal;
+                if (cv == 1.0)
+                    continue;
+                float fv = (float) cv;
+                float[] d = dst[ch];
                 for (int sm = 0; sm < ret; sm++)
-                    dst[ch][sm] *= cvol[ch % cvol.length];
+                    d[sm] *= fv;
             }
             return (ret);
         }
@@ -268,8 +411,8 @@ public class Audio {
         public double irate, orate;
         public double sp;
         private double ack;
-        private double[] lval = {0}, nval = {0};
-        private double[][] data = {};
+        private float[] lval = {0}, nval = {0};
+        private float[][] data = {};
         private int dp = 0, dl = 0;
 
         public Resampler(CS bk, double irate, double orate) {
@@ -286,14 +429,14 @@ public class Audio {
             this(bk, fmt.getSampleRate());
         }
 
-        public int get(double[][] dst, int ns) {
+        public int get(float[][] dst, int ns) {
             int nch = dst.length;
             if (nval.length != nch) {
-                nval = new double[nch];
-                lval = new double[nch];
+                nval = new float[nch];
+                lval = new float[nch];
             }
             if (data.length != nch)
-                data = new double[nch][512];
+                data = new float[nch][512];
             double esp = sp * irate / orate;
             for (int sm = 0; sm < ns; sm++) {
                 ack += esp;
@@ -310,8 +453,9 @@ public class Audio {
                     dp++;
                     ack -= 1.0;
                 }
+                float a = (float) ack;
                 for (int ch = 0; ch < nch; ch++)
-                    dst[ch][sm] = (lval[ch] * (1.0 - ack)) + (nval[ch] * ack);
+                    dst[ch][sm] = (lval[ch] * (1.0f - a)) + (nval[ch] * a);
             }
             return (ns);
         }
@@ -325,7 +469,7 @@ public class Audio {
             this.bk = bk;
         }
 
-        public int get(double[][] dst, int ns) {
+        public int get(float[][] dst, int ns) {
             int ret = bk.get(dst, ns);
             if ((ret < 0) && !eof) {
                 eof = true;
@@ -352,7 +496,7 @@ public class Audio {
     public static abstract class Repeater implements CS {
         private CS cur = null;
 
-        public int get(double[][] buf, int ns) {
+        public int get(float[][] buf, int ns) {
             while (true) {
                 if (cur == null) {
                     if ((cur = cons()) == null)
@@ -382,7 +526,7 @@ public class Audio {
             this(bk, 44100);
         }
 
-        public int get(double[][] buf, int ns) {
+        public int get(float[][] buf, int ns) {
             int nch = buf.length;
             int ret = bk.get(buf, ns);
             if (ret < 0) {
@@ -404,23 +548,23 @@ public class Audio {
         }
     }
 
-    private static class Player extends HackThread {
-        private final CS stream;
-        private final int nch;
-        private final Object queuemon = new Object();
-        private Collection<Runnable> queue = new LinkedList<Runnable>();
-        private volatile boolean reopen = false;
+    /* Converts a stream into the 16-bit little-endian samples of the
+     * output format. Besides feeding the player, it can render a mix
+     * into memory without any audio device. */
+    public static class Encoder {
+        public final CS stream;
+        public final int nch;
+        private float[][] val = {};
 
-        Player(CS stream) {
-            super("Haven audio player");
+        public Encoder(CS stream, int nch) {
             this.stream = stream;
-            nch = fmt.getChannels();
-            setDaemon(true);
+            this.nch = nch;
         }
 
-        private int fillbuf(byte[] dst, int off, int len) {
+        public int fill(byte[] dst, int off, int len, double vol) {
             int ns = len / (2 * nch);
-            double[][] val = new double[nch][ns];
+            float[][] val = this.val = scratch(this.val, nch, ns);
+            float sc = (float) (vol * 32767.0);
             int left = ns, wr = 0;
             while (left > 0) {
                 int ret = stream.get(val, left);
@@ -428,7 +572,7 @@ public class Audio {
                     return ((wr > 0) ? wr : -1);
                 for (int i = 0; i < ret; i++) {
                     for (int o = 0; o < nch; o++) {
-                        int iv = (int) (val[o][i] * volume * 32767.0);
+                        int iv = (int) (val[o][i] * sc);
                         if (iv < 0) {
                             if (iv < -32768)
                                 iv = -32768;
@@ -439,13 +583,43 @@ public class Audio {
                         }
                         dst[off++] = (byte) (iv & 0xff);
                         dst[off++] = (byte) ((iv & 0xff00) >> 8);
-                        wr += 2;
                     }
                 }
+                wr += ret * 2 * nch;
                 left -= ret;
             }
             return (wr);
         }
+    }
+
+    /* Renders at most the given number of sample frames of a stream,
+     * or less if it ends before that. */
+    public static byte[] render(CS stream, int ns) {
+        Encoder enc = new Encoder(stream, fmt.getChannels());
+        byte[] buf = new byte[ns * 2 * enc.nch];
+        int off = 0;
+        while (off < buf.length) {
+            int ret = enc.fill(buf, off, Math.min(buf.length - off, bufsize / 2), 1.0);
+            if (ret < 0)
+                break;
+            off += ret;
+        }
+        return ((off < buf.length) ? Arrays.copyOf(buf, off) : buf);
+    }
+
+    private static class Player extends HackThread {
+        private final CS stream;
+        private final Encoder enc;
+        private final Object queuemon = new Object();
+        private Collection<Runnable> queue = new LinkedList<Runnable>();
+        private volatile boolean reopen = false;
+
+        Player(CS stream) {
+            super("Haven audio player");
+            this.stream = stream;
+            this.enc = new Encoder(stream, fmt.getChannels());
+            setDaemon(true);
+        }
 
         public void run() {
             SourceDataLine line = null;
@@ -475,7 +649,7 @@ public class Audio {
                                     r.run();
                             }
                         }
-                        int ret = fillbuf(buf, 0, buf.length);
+                        int ret = enc.fill(buf, 0, buf.length, volume);
                         if (ret < 0)
                             return;
                         for (int off = 0; off < ret; off += line.write(buf, off, ret - off)) ;
@@ -586,16 +760,81 @@ public class Audio {
         });
     }
 
+    /* An endless voice that copies out of a decoded chunk the way
+     * VorbisClip does, for benchmarking. */
+    private static class Loop implements CS {
+        private final float[] chunk;
+        private int dp;
+
+        Loop(double freq) {
+            chunk = new float[1024];
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = (float) (Math.sin(i * freq * 2 * Math.PI / fmt.getSampleRate()) * 0.1);
+        }
+
+        public int get(float[][] dst, int ns) {
+            int sm = 0;
+            while (sm < ns) {
+                if (dp >= chunk.length)
+                    dp = 0;
+                int n = Math.min(ns - sm, chunk.length - dp);
+                for (int ch = 0; ch < dst.length; ch++)
+                    System.arraycopy(chunk, dp, dst[ch], sm, n);
+                dp += n;
+                sm += n;
+            }
+            return (ns);
+        }
+    }
+
+    /* Mixes the given number of panned voices offline, and reports
+     * how many milliseconds of voice audio are mixed per millisecond
+     * of CPU time. */
+    private static void bench(int voices) {
+        Mixer mix = new Mixer(true);
+        for (int i = 0; i < voices; i++) {
+            VolAdjust v = new VolAdjust(new Loop(220 + (i * 10)), 0.5);
+            v.bal = ((i % 3) - 1) * 0.5;
+            mix.add(v);
+        }
+        int ns = (int) fmt.getSampleRate(), rounds = 50;
+        for (int i = 0; i < rounds; i++)
+            render(mix, ns);
+        long st = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            render(mix, ns);
+        double ms = (System.nanoTime() - st) / 1e6;
+        System.out.printf("%d voices: %.1f ms per second of audio, %.0f voice-ms mixed per ms%n",
+                          voices, ms / rounds, voices * rounds * 1000.0 / ms);
+    }
+
     public static void main(String[] args) throws Exception {
         Collection<Monitor> clips = new LinkedList<Monitor>();
+        String out = null;
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-b")) {
                 bufsize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-v")) {
+                bench(Integer.parseInt(args[++i]));
+                return;
+            } else if (args[i].equals("-o")) {
+                out = args[++i];
             } else {
                 Monitor c = new Monitor(new PCMClip(new FileInputStream(args[i]), 2));
                 clips.add(c);
             }
         }
+        if (out != null) {
+            Mixer mix = new Mixer();
+            for (Monitor c : clips)
+                mix.add(c);
+            try (OutputStream fp = new FileOutputStream(out)) {
+                byte[] buf;
+                while ((buf = render(mix, 44100)).length > 0)
+                    fp.write(buf);
+            }
+            return;
+        }
         for (Monitor c : clips)
             play(c);
         for (Monitor c : clips)
@@ -608,6 +847,13 @@ public class Audio {
                 play(Resource.remote().load(args[1]));
             }
         });
+        Console.setscmd("sfxcache", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                if ((args.length > 1) && args[1].equals("clear"))
+                    pcmcache.clear();
+                cons.out.println(pcmcache.stats());
+            }
+        });
         Console.setscmd("sfxvol", new Console.Command() {
             public void run(Console cons, String[] args) {
                 setvolume(Double.parseDouble(args[1]));
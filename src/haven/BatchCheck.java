@@ -0,0 +1,123 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.util.function.*;
+import java.nio.*;
+
+import haven.render.*;
+import haven.render.sl.FragData;
+
+/* Draws an inventory-like screen of small icons into a Render that
+ * only counts what it is asked to do, with and without batching, and
+ * reports the number of draw calls and of atlas bytes uploaded per
+ * frame. New icons appear in some frames, which should only upload
+ * the rows they were packed into. */
+public class BatchCheck {
+    static class Counter implements Render {
+        int draws, updates;
+        long bytes;
+
+        public Environment env() {
+            return (null);
+        }
+
+        public void submit(Render sub) {
+        }
+
+        public void draw(Pipe pipe, Model data) {
+            draws++;
+        }
+
+        public void clear(Pipe pipe, FragData buf, FColor val) {
+        }
+
+        public void clear(Pipe pipe, double val) {
+        }
+
+        public <T extends DataBuffer> void update(T buf, DataBuffer.PartFiller<? super T> data, int from, int to) {
+            updates++;
+            bytes += to - from;
+        }
+
+        public <T extends DataBuffer> void update(T buf, DataBuffer.Filler<? super T> data) {
+            updates++;
+            bytes += buf.size();
+        }
+
+        public void pget(Pipe pipe, FragData buf, Area area, VectorFormat fmt, Consumer<ByteBuffer> callback) {
+        }
+
+        public void pget(Texture.Image img, VectorFormat fmt, Consumer<ByteBuffer> callback) {
+        }
+
+        public void timestamp(Consumer<Long> callback) {
+        }
+
+        public void fence(Runnable callback) {
+        }
+
+        public void dispose() {
+        }
+    }
+
+    static Tex icon() {
+        return (new TexI(TexI.mkbuf(new Coord(32, 32))));
+    }
+
+    public static void main(String[] args) {
+        List<Tex> icons = new ArrayList<>();
+        for (int i = 0; i < 60; i++)
+            icons.add(icon());
+        Tex big = new TexI(TexI.mkbuf(new Coord(300, 200)));
+        for (boolean b : new boolean[]{false, true}) {
+            GOut.batching = b;
+            for (int f = 0; f < 4; f++) {
+                if (f == 2)
+                    icons.add(icon());
+                TexAtlas.ui.frame();
+                Counter out = new Counter();
+                GOut g = new GOut(out, new BufPipe(), new Coord(800, 600));
+                g.image(big, Coord.z);
+                for (int i = 0; i < 5; i++) {
+                    GOut sub = g.reclip(new Coord(i * 100, 0), new Coord(100, 600));
+                    for (int j = 0; j < icons.size(); j++)
+                        sub.image(icons.get(j), new Coord((j % 3) * 33, (j / 3) * 33));
+                }
+                g.chcolor(255, 0, 0, 255);
+                for (Tex t : icons)
+                    g.image(t, new Coord(10, 10));
+                g.chcolor();
+                g.flush();
+                TexAtlas.ui.upload(out);
+                System.out.printf("batching=%s frame %d, %d icons: %d draws, %d atlas uploads of %,d bytes\n",
+                        b, f, icons.size(), out.draws, out.updates, out.bytes);
+            }
+        }
+    }
+}
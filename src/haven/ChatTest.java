@@ -0,0 +1,102 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven;
+
+import java.awt.Color;
+import java.util.*;
+
+/* Pumps messages through a chat history and reports how many are
+ * kept, the heap they use and the cost of appending and of locating
+ * and rendering the visible ones. */
+public class ChatTest {
+    static long heap() {
+        Runtime rt = Runtime.getRuntime();
+        long last = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long cur = rt.totalMemory() - rt.freeMemory();
+            if (cur >= last)
+                return (last);
+            last = cur;
+        }
+        return (last);
+    }
+
+    static ChatUI.Channel.Message msg(int i) {
+        return (new ChatUI.Channel.SimpleMessage("Some villager: message number " + i + " about the palisade and the trolls near the claim", Color.WHITE, 300));
+    }
+
+    public static void main(String[] args) {
+        int total = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int cap = (args.length > 1) ? Integer.parseInt(args[1]) : ChatUI.histlen;
+        /* Get class initialization out of the measurements. */
+        msg(-1).sz();
+        long h0 = heap();
+        ChatUI.Channel.History hist = new ChatUI.Channel.History(cap);
+        int evicted = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            if (hist.push(msg(i)) != null)
+                evicted++;
+        }
+        long t1 = System.nanoTime();
+        long h1 = heap();
+        System.out.printf("pushed %,d: %.1f us/msg, %,d kept, %,d evicted, height %,d, heap +%,d bytes%n",
+                total, (t1 - t0) / (total * 1e3), hist.size(), evicted, hist.height(), h1 - h0);
+        if ((hist.size() != Math.min(total, cap)) || (evicted != Math.max(total - cap, 0)))
+            throw (new AssertionError("history did not stay bounded"));
+        for (int i = 0; i < hist.size(); i++) {
+            if ((hist.index(hist.get(i)) != i) || ((i > 0) && (hist.top(i) < hist.top(i - 1))))
+                throw (new AssertionError("inconsistent history at " + i));
+        }
+
+        /* Jump the view around, rendering what is visible and
+         * releasing what was visible before, as Channel.draw does. */
+        int ih = 200, frames = 1000;
+        Random rnd = new Random(1);
+        List<ChatUI.Channel.Message> live = new ArrayList<>();
+        long vis = 0;
+        long t2 = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            int val = rnd.nextInt(Math.max(hist.height() - ih, 1));
+            for (ChatUI.Channel.Message m : live)
+                m.release();
+            live.clear();
+            for (int i = Math.max(hist.find(val), 0); (i < hist.size()) && (hist.top(i) - val < ih); i++) {
+                ChatUI.Channel.Message m = hist.get(i);
+                m.tex();
+                live.add(m);
+                vis++;
+            }
+        }
+        long t3 = System.nanoTime();
+        System.out.printf("view: %.1f us/frame, %.1f visible msgs/frame, re-rendering on every jump%n",
+                (t3 - t2) / (frames * 1e3), (double) vis / frames);
+        System.exit(0);
+    }
+}
@@ -137,42 +137,181 @@ public class ChatUI extends Widget {
         }
     }
 
+    public static int histlen = Utils.getprefi("chathist", 2000);
+
+    static {
+        Console.setscmd("chathist", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefi("chathist", histlen = Math.max(Integer.parseInt(args[1]), 1));
+            }
+        });
+    }
+
     public static abstract class Channel extends Widget {
-        public final List<Message> msgs = new LinkedList<Message>();
+        public final History msgs = new History(histlen);
         private final Scrollbar sb;
         private final IButton cb;
+        private final Set<Message> live = Collections.newSetFromMap(new IdentityHashMap<>());
         public int urgency = 0;
 
         public static abstract class Message {
             public final double time = Utils.ntime();
+            private long seq = -1;
 
             public abstract Text text();
 
             public abstract Tex tex();
 
             public abstract Coord sz();
+
+            /* Drops rendered state while the message is out of view. It
+             * should be possible to draw it again afterwards. */
+            public void release() {
+            }
         }
 
         public static class SimpleMessage extends Message {
-            private final Text t;
+            private final String text;
+            private final Color col;
+            private final int w;
+            private Text t = null;
+            private Coord sz = null;
 
             public SimpleMessage(String text, Color col, int w) {
-                if (col == null)
-                    this.t = fnd.render(RichText.Parser.quote(text), w);
-                else
-                    this.t = fnd.render(RichText.Parser.quote(text), w, TextAttribute.FOREGROUND, col);
+                this.text = RichText.Parser.quote(text);
+                this.col = col;
+                this.w = w;
             }
 
             public Text text() {
+                if (t == null) {
+                    if (col == null)
+                        t = fnd.render(text, w);
+                    else
+                        t = fnd.render(text, w, TextAttribute.FOREGROUND, col);
+                    sz = t.sz();
+                }
                 return (t);
             }
 
             public Tex tex() {
-                return (t.tex());
+                return (text().tex());
             }
 
             public Coord sz() {
-                return (t.sz());
+                if (sz == null) {
+                    if (col == null)
+                        sz = fnd.measure(text, w);
+                    else
+                        sz = fnd.measure(text, w, TextAttribute.FOREGROUND, col);
+                }
+                return (sz);
+            }
+
+            public void release() {
+                if (t != null) {
+                    t.dispose();
+                    t = null;
+                }
+            }
+        }
+
+        /* Message history of a bounded length, kept in a ring buffer
+         * along with the running sum of message heights, so that
+         * finding the message at some scroll position doesn't require
+         * walking the whole history. Message heights are sampled when
+         * added and updated by update(). */
+        public static class History extends AbstractList<Message> {
+            private final Message[] msgs;
+            private final long[] tops;
+            private int head = 0, n = 0;
+            private long end = 0, seq = 0;
+
+            public History(int cap) {
+                msgs = new Message[cap];
+                tops = new long[cap];
+            }
+
+            private int phys(int i) {
+                return ((head + i) % msgs.length);
+            }
+
+            public Message get(int i) {
+                if ((i < 0) || (i >= n))
+                    throw (new IndexOutOfBoundsException(Integer.toString(i)));
+                return (msgs[phys(i)]);
+            }
+
+            public int size() {
+                return (n);
+            }
+
+            /* Adds a message, returning the one that had to be evicted
+             * to make room for it, if any. */
+            public Message push(Message msg) {
+                Message ev = null;
+                if (n == msgs.length) {
+                    ev = msgs[head];
+                    msgs[head] = null;
+                    head = (head + 1) % msgs.length;
+                    n--;
+                }
+                int p = phys(n);
+                msgs[p] = msg;
+                tops[p] = end;
+                end += msg.sz().y;
+                msg.seq = seq++;
+                n++;
+                return (ev);
+            }
+
+            /* Returns the index of msg, or -1 if it is no longer in
+             * the history. */
+            public int index(Message msg) {
+                if ((msg.seq < 0) || (n == 0))
+                    return (-1);
+                long i = msg.seq - msgs[head].seq;
+                if ((i < 0) || (i >= n) || (msgs[phys((int) i)] != msg))
+                    return (-1);
+                return ((int) i);
+            }
+
+            public int top(int i) {
+                return ((int) (((i < n) ? tops[phys(i)] : end) - tops[head]));
+            }
+
+            public int height(int i) {
+                return (top(i + 1) - top(i));
+            }
+
+            public int height() {
+                return ((n == 0) ? 0 : (int) (end - tops[head]));
+            }
+
+            /* Returns the index of the message covering y, or -1 if
+             * there is none. */
+            public int find(int y) {
+                if ((y < 0) || (y >= height()))
+                    return (-1);
+                int l = 0, r = n;
+                while (r - l > 1) {
+                    int m = (l + r) / 2;
+                    if (top(m) <= y)
+                        l = m;
+                    else
+                        r = m;
+                }
+                return (l);
+            }
+
+            /* Picks up a changed message height. */
+            public void update(int i) {
+                int d = get(i).sz().y - height(i);
+                if (d == 0)
+                    return;
+                for (int o = i + 1; o < n; o++)
+                    tops[phys(o)] += d;
+                end += d;
             }
         }
 
@@ -186,17 +325,34 @@ public class ChatUI extends Widget {
 
         public void append(Message msg) {
             synchronized (msgs) {
-                msgs.add(msg);
-                int y = 0;
-                for (Message m : msgs)
-                    y += m.sz().y;
                 boolean b = sb.val >= sb.max;
-                sb.max = y - ih();
+                int h = msgs.height();
+                Message ev = msgs.push(msg);
+                if (ev != null) {
+                    evicted(ev);
+                    sb.val = Math.max(sb.val - (h + msg.sz().y - msgs.height()), 0);
+                }
+                sb.max = msgs.height() - ih();
                 if (b)
                     sb.val = sb.max;
             }
         }
 
+        private void evicted(Message msg) {
+            if (live.remove(msg))
+                msg.release();
+            if (((selstart != null) && (selstart.msg == msg)) || ((selend != null) && (selend.msg == msg)))
+                selstart = selend = null;
+            if (((selorig != null) && (selorig.msg == msg)) || ((lasthit != null) && (lasthit.msg == msg))) {
+                if (grab != null) {
+                    grab.remove();
+                    grab = null;
+                }
+                selorig = lasthit = null;
+                dragging = false;
+            }
+        }
+
         public void append(String line, Color col) {
             append(new SimpleMessage(line, col, iw()));
         }
@@ -224,29 +380,50 @@ public class ChatUI extends Widget {
             g.chcolor(0, 0, 0, 128);
             g.frect(Coord.z, sz);
             g.chcolor();
-            int y = 0;
-            boolean sel = false;
+            int ih = ih();
             synchronized (msgs) {
-                for (Message msg : msgs) {
-                    if ((selstart != null) && (msg == selstart.msg))
-                        sel = true;
-                    int y1 = y - sb.val;
-                    int y2 = y1 + msg.sz().y;
-                    if ((y2 > 0) && (y1 < ih())) {
-                        if (sel)
-                            drawsel(g, msg, y1);
-                        g.image(msg.tex(), new Coord(0, y1));
+                int ss = (selstart == null) ? -1 : msgs.index(selstart.msg);
+                int se = (selend == null) ? -1 : msgs.index(selend.msg);
+                int i = (sb.val < 0) ? 0 : msgs.find(sb.val);
+                if (i < 0)
+                    i = msgs.size();
+                for (int n = msgs.size(); i < n; i++) {
+                    int y1 = msgs.top(i) - sb.val;
+                    if (y1 >= ih)
+                        break;
+                    Message msg = msgs.get(i);
+                    if ((ss >= 0) && (i >= ss) && (i <= se))
+                        drawsel(g, msg, y1);
+                    g.image(msg.tex(), new Coord(0, y1));
+                    live.add(msg);
+                    msgs.update(i);
+                }
+                /* Keep the textures of about a screenful of messages
+                 * on either side, and let go of the rest. Selection
+                 * endpoints refer to the rendered parts of their
+                 * messages, so those are kept as well. */
+                for (Iterator<Message> it = live.iterator(); it.hasNext(); ) {
+                    Message msg = it.next();
+                    int mi = msgs.index(msg);
+                    if ((mi < 0) || (!held(msg) && ((msgs.top(mi + 1) < sb.val - ih) || (msgs.top(mi) > sb.val + (ih * 2))))) {
+                        msg.release();
+                        it.remove();
                     }
-                    if ((selend != null) && (msg == selend.msg))
-                        sel = false;
-                    y += msg.sz().y;
                 }
+                sb.max = msgs.height() - ih;
             }
-            sb.max = y - ih();
             super.draw(g);
             updurgency(0);
         }
 
+        private boolean held(Message msg) {
+            for (CharPos p : new CharPos[]{selstart, selend, selorig, lasthit}) {
+                if ((p != null) && (p.msg == msg))
+                    return (true);
+            }
+            return (false);
+        }
+
         public boolean mousewheel(Coord c, int amount) {
             sb.ch(amount * 15);
             return (true);
@@ -257,11 +434,8 @@ public class ChatUI extends Widget {
             if (sb != null) {
                 sb.move(new Coord(sz.x - (12 - marg.x), 34 - marg.y));
                 sb.resize(ih() - sb.c.y);
-                int y = 0;
-                for (Message m : msgs)
-                    y += m.sz().y;
                 boolean b = sb.val >= sb.max;
-                sb.max = y - ih();
+                sb.max = msgs.height() - ih();
                 if (b)
                     sb.val = sb.max;
             }
@@ -297,14 +471,11 @@ public class ChatUI extends Widget {
             public int compare(CharPos a, CharPos b) {
                 if (a.msg != b.msg) {
                     synchronized (msgs) {
-                        for (Message msg : msgs) {
-                            if (msg == a.msg)
-                                return (-1);
-                            else if (msg == b.msg)
-                                return (1);
-                        }
+                        int ai = msgs.index(a.msg), bi = msgs.index(b.msg);
+                        if ((ai < 0) || (bi < 0))
+                            throw (new IllegalStateException("CharPos message is no longer contained in the log"));
+                        return (ai - bi);
                     }
-                    throw (new IllegalStateException("CharPos message is no longer contained in the log"));
                 } else if (a.part != b.part) {
                     for (RichText.Part part = ((RichText) a.msg.text()).parts; part != null; part = part.next) {
                         if (part == a.part)
@@ -320,21 +491,16 @@ public class ChatUI extends Widget {
         };
 
         public Message messageat(Coord c, Coord hc) {
-            int y = -sb.val;
             synchronized (msgs) {
-                for (Message msg : msgs) {
-                    Coord sz = msg.sz();
-                    if ((c.y >= y) && (c.y < y + sz.y)) {
-                        if (hc != null) {
-                            hc.x = c.x;
-                            hc.y = c.y - y;
-                        }
-                        return (msg);
-                    }
-                    y += sz.y;
+                int i = msgs.find(c.y + sb.val);
+                if (i < 0)
+                    return (null);
+                if (hc != null) {
+                    hc.x = c.x;
+                    hc.y = c.y + sb.val - msgs.top(i);
                 }
+                return (msgs.get(i));
             }
-            return (null);
         }
 
         public CharPos charat(Coord c) {
@@ -424,7 +590,8 @@ public class ChatUI extends Widget {
             StringBuilder buf = new StringBuilder();
             synchronized (msgs) {
                 boolean sel = false;
-                for (Message msg : msgs) {
+                for (int mi = Math.max(msgs.index(start.msg), 0); mi < msgs.size(); mi++) {
+                    Message msg = msgs.get(mi);
                     if (!(msg.text() instanceof RichText))
                         continue;
                     RichText rt = (RichText) msg.text();
@@ -692,6 +859,7 @@ public class ChatUI extends Widget {
             public final Color col;
             private String cn;
             private Text r = null;
+            private Coord rsz = null;
 
             public NamedMessage(int from, String text, Color col, int w) {
                 this.from = from;
@@ -700,11 +868,16 @@ public class ChatUI extends Widget {
                 this.col = col;
             }
 
-            public Text text() {
+            private String name() {
                 BuddyWnd.Buddy b = getparent(GameUI.class).buddies.find(from);
-                String nm = (b == null) ? "???" : (b.name);
+                return ((b == null) ? "???" : (b.name));
+            }
+
+            public Text text() {
+                String nm = name();
                 if ((r == null) || !nm.equals(cn)) {
                     r = fnd.render(RichText.Parser.quote(String.format("%s: %s", nm, text)), w, TextAttribute.FOREGROUND, col);
+                    rsz = r.sz();
                     cn = nm;
                 }
                 return (r);
@@ -715,10 +888,16 @@ public class ChatUI extends Widget {
             }
 
             public Coord sz() {
-                if (r == null)
-                    return (text().sz());
-                else
-                    return (r.sz());
+                if (rsz == null)
+                    rsz = fnd.measure(RichText.Parser.quote(String.format("%s: %s", name(), text)), w, TextAttribute.FOREGROUND, col);
+                return (rsz);
+            }
+
+            public void release() {
+                if (r != null) {
+                    r.dispose();
+                    r = null;
+                }
             }
         }
 
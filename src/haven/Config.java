@@ -46,6 +46,8 @@ public class Config {
     public static boolean profile = getprop("haven.profile", "off").equals("on");
     public static boolean profilegpu = getprop("haven.profilegpu", "off").equals("on");
     public static boolean par = true;
+    public static boolean simthread = Utils.getprefb("simthread", false);
+    public static boolean animlod = Utils.getprefb("animlod", false);
     public static boolean fscache = getprop("haven.fscache", "on").equals("on");
     public static String resdir = getprop("haven.resdir", System.getenv("HAFEN_RESDIR"));
     public static boolean nopreload = getprop("haven.nopreload", "no").equals("yes");
@@ -196,6 +198,16 @@ public class Config {
                 par = Utils.parsebool(args[1]);
             }
         });
+        Console.setscmd("simthread", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefb("simthread", simthread = Utils.parsebool(args[1]));
+            }
+        });
+        Console.setscmd("animlod", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefb("animlod", animlod = Utils.parsebool(args[1]));
+            }
+        });
         Console.setscmd("profile", new Console.Command() {
             public void run(Console cons, String[] args) {
                 if (args[1].equals("none") || args[1].equals("off")) {
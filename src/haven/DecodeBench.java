@@ -0,0 +1,123 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.lang.management.ManagementFactory;
+
+/* Measures time and allocation per message for the hot decoding
+ * paths, each both the way they were decoded before the
+ * allocation-free Message entry points and through them. Allocation
+ * is read from the thread's allocation counter, so it needs a JVM
+ * that supports com.sun.management.ThreadMXBean. Run as
+ *   DecodeBench [MESSAGES] */
+public class DecodeBench {
+    static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    static final Message.StrTable names = new Message.StrTable();
+    static final byte[] ktm = "tm".getBytes(Utils.utf8);
+    static double sink;
+
+    interface Case {
+        void run(Message msg);
+    }
+
+    static class Real implements Message.ListVisitor {
+        double v;
+
+        public void real(double v) {this.v = v;}
+    }
+
+    static byte[] fin(Message msg) {
+        return (((MessageBuf) msg).fin());
+    }
+
+    static void bench(String nm, byte[][] msgs, int n, Case c) {
+        MessageBuf msg = new MessageBuf(new byte[0]);
+        long tid = Thread.currentThread().getId();
+        for (int r = 0; r < 3; r++) {
+            long a0 = threads.getThreadAllocatedBytes(tid);
+            long st = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                byte[] buf = msgs[i % msgs.length];
+                msg.rbuf = buf;
+                msg.rh = 0;
+                msg.rt = buf.length;
+                c.run(msg);
+            }
+            long et = System.nanoTime();
+            long a1 = threads.getThreadAllocatedBytes(tid);
+            /* Only the last round, after warmup, is reported. */
+            if (r == 2)
+                System.out.printf("%-16s %6.1f ns/msg %6.1f B/msg%n", nm, (et - st) / (double) n, (a1 - a0) / (double) n);
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+
+        /* OCache position deltas */
+        Coord2d posres = OCache.posres;
+        byte[][] mv = new byte[100][];
+        for (int i = 0; i < mv.length; i++)
+            mv[i] = fin(new MessageBuf().addcoord(new Coord(i * 1000, -i * 77)).adduint16(i));
+        bench("move old", mv, n, msg -> {Coord2d c = msg.coord().mul(posres); sink += c.x + msg.uint16();});
+        bench("move new", mv, n, msg -> {Coord2d c = msg.coordmul(posres); sink += c.x + msg.uint16();});
+
+        /* MCache.Grid.fill resource names */
+        String[] rn = {"gfx/tiles/grass", "gfx/tiles/water", "gfx/tiles/dirt", "gfx/tiles/swamp", "gfx/tiles/beech", "gfx/tiles/heath"};
+        byte[][] rm = new byte[rn.length][];
+        for (int i = 0; i < rn.length; i++)
+            rm[i] = fin(new MessageBuf().addstring(rn[i]).adduint16(3));
+        bench("resname old", rm, n, msg -> {String s = msg.string().intern(); sink += s.length() + msg.uint16();});
+        bench("resname new", rm, n, msg -> {String s = msg.string(names); sink += s.length() + msg.uint16();});
+
+        /* RemoteUI message names */
+        String[] un = {"tt", "num", "meter", "curs"};
+        byte[][] um = new byte[un.length][];
+        for (int i = 0; i < un.length; i++)
+            um[i] = fin(new MessageBuf().addstring(un[i]));
+        bench("uimsg name old", um, n, msg -> sink += msg.string().intern().length());
+        bench("uimsg name new", um, n, msg -> sink += msg.string(names).length());
+
+        /* Glob "tm" blobs */
+        byte[][] tm = {fin(new MessageBuf().addstring("tm").addlist(12345.5).adduint8(0))};
+        bench("glob tm old", tm, n, msg -> {
+                String t = msg.string().intern();
+                Object[] a = msg.list();
+                if (t == "tm")
+                    sink += ((Number) a[0]).doubleValue();
+            });
+        Real td = new Real();
+        bench("glob tm new", tm, n, msg -> {
+                if (msg.string(ktm)) {
+                    msg.list(td);
+                    sink += td.v;
+                }
+            });
+        if (Double.isNaN(sink))
+            System.out.println(sink);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven;
+
+import java.io.*;
+
+/* Frame-pacing statistics for the main loop. Phase times are kept in
+ * log-linear histograms over preallocated arrays, with a relative
+ * resolution of 1/SUB, so that recording allocates nothing and
+ * costs a few nanoseconds. */
+public class FrameStats {
+    public static final int SUBBITS = 5, SUB = 1 << SUBBITS, MAXBITS = 40;
+    public static final int NBUCKETS = (MAXBITS - SUBBITS + 2) * SUB;
+    public static final long MAXVAL = (1L << (MAXBITS + 1)) - 1;
+    public static final int DISPATCH = 0, STICK = 1, TICK = 2, DRAW = 3, SWAP = 4, WAIT = 5, FRAME = 6, LATENCY = 7;
+    public static final String[] names = {"dispatch", "stick", "tick", "draw", "swap", "wait", "frame", "latency"};
+    public final Histogram[] hist = new Histogram[names.length];
+    public volatile boolean on;
+    private long last, fstart, since = System.nanoTime();
+
+    public static class Histogram {
+        public final String name;
+        private final long[] counts = new long[NBUCKETS];
+        private long n, sum, min, max;
+
+        public Histogram(String name) {
+            this.name = name;
+            reset();
+        }
+
+        public static int bucket(long v) {
+            if (v < SUB)
+                return ((int) v);
+            int e = 63 - Long.numberOfLeadingZeros(v);
+            return (((e - SUBBITS + 1) << SUBBITS) + (int) ((v >> (e - SUBBITS)) - SUB));
+        }
+
+        /* Lowest value that falls into bucket b. */
+        public static long lo(int b) {
+            if (b < SUB)
+                return (b);
+            int e = (b >> SUBBITS) + SUBBITS - 1;
+            return (((long) (SUB + (b & (SUB - 1)))) << (e - SUBBITS));
+        }
+
+        public synchronized void add(long v) {
+            v = Math.max(Math.min(v, MAXVAL), 0);
+            counts[bucket(v)]++;
+            n++;
+            sum += v;
+            if (v < min)
+                min = v;
+            if (v > max)
+                max = v;
+        }
+
+        public synchronized void reset() {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = 0;
+            n = sum = max = 0;
+            min = Long.MAX_VALUE;
+        }
+
+        public synchronized long count() {
+            return (n);
+        }
+
+        public synchronized double mean() {
+            return ((n == 0) ? 0 : ((double) sum / n));
+        }
+
+        public synchronized long max() {
+            return (max);
+        }
+
+        /* Value at fraction p of the recorded values, taken as the
+         * middle of its bucket. */
+        public synchronized long quantile(double p) {
+            if (n == 0)
+                return (0);
+            long rank = Math.max(1, (long) Math.ceil(p * n)), acc = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if ((acc += counts[i]) >= rank)
+                    return (Math.max(Math.min((lo(i) + lo(i + 1) - 1) / 2, max), min));
+            }
+            return (max);
+        }
+
+        public synchronized void write(PrintWriter out) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0)
+                    out.printf("%s,%d,%d,%d\n", name, lo(i), lo(i + 1), counts[i]);
+            }
+        }
+    }
+
+    public FrameStats(boolean on) {
+        for (int i = 0; i < hist.length; i++)
+            hist[i] = new Histogram(names[i]);
+        this.on = on;
+    }
+
+    /* Phase timing is meant to be called from the main loop only;
+     * add() may be called from any thread. */
+    public void start() {
+        long now = System.nanoTime();
+        if (fstart != 0)
+            hist[FRAME].add(now - fstart);
+        fstart = last = now;
+    }
+
+    /* The first frame started after recording is turned back on is
+     * not recorded, lest the whole interval it was off for be taken
+     * as one frame. */
+    public void enable(boolean on) {
+        if (on && !this.on)
+            fstart = 0;
+        this.on = on;
+    }
+
+    public void lap(int phase) {
+        long now = System.nanoTime();
+        hist[phase].add(now - last);
+        last = now;
+    }
+
+    public void skip() {
+        last = System.nanoTime();
+    }
+
+    public void add(int phase, long ns) {
+        hist[phase].add(ns);
+    }
+
+    public void reset() {
+        for (Histogram h : hist)
+            h.reset();
+        fstart = 0;
+        since = System.nanoTime();
+    }
+
+    public void summary(PrintWriter out) {
+        out.printf("%d frames over %.1f s, times in ms:\n", hist[FRAME].count(), (System.nanoTime() - since) / 1e9);
+        for (Histogram h : hist) {
+            out.printf("%-8s n=%-7d mean=%-8.3f p50=%-8.3f p90=%-8.3f p99=%-8.3f p99.9=%-8.3f max=%.3f\n", h.name, h.count(), h.mean() / 1e6,
+                    h.quantile(0.5) / 1e6, h.quantile(0.9) / 1e6, h.quantile(0.99) / 1e6, h.quantile(0.999) / 1e6, h.max() / 1e6);
+        }
+    }
+
+    /* Writes the raw histograms as CSV, one row per non-empty
+     * bucket, covering values lo <= v < hi in nanoseconds. */
+    public void write(Writer dst) {
+        PrintWriter out = new PrintWriter(dst);
+        out.printf("# %d frames over %.3f s, %d buckets per octave\n", hist[FRAME].count(), (System.nanoTime() - since) / 1e9, SUB);
+        out.printf("phase,lo,hi,count\n");
+        for (Histogram h : hist)
+            h.write(out);
+        out.flush();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.io.*;
+
+/* Checks FrameStats' bucket mapping, quantile error and toggling, and
+ * measures what recording costs per frame when done as in
+ * JOGLPanel.run(). Run as
+ *   FrameStatsBench [FRAMES] */
+public class FrameStatsBench {
+    static void check() throws InterruptedException {
+        for (int b = 0; b < FrameStats.NBUCKETS - 1; b++) {
+            long lo = FrameStats.Histogram.lo(b), hi = FrameStats.Histogram.lo(b + 1);
+            if ((hi <= lo) || (FrameStats.Histogram.bucket(lo) != b) || (FrameStats.Histogram.bucket(hi - 1) != b))
+                throw (new AssertionError("bucket " + b));
+        }
+        if (FrameStats.Histogram.bucket(FrameStats.MAXVAL) != FrameStats.NBUCKETS - 1)
+            throw (new AssertionError("last bucket"));
+
+        Random rnd = new Random(1);
+        FrameStats.Histogram h = new FrameStats.Histogram("t");
+        long[] vals = new long[100000];
+        for (int i = 0; i < vals.length; i++)
+            h.add(vals[i] = (long) Math.exp(rnd.nextGaussian() + 15));
+        Arrays.sort(vals);
+        for (double q : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            long exact = vals[(int) Math.ceil(q * vals.length) - 1], got = h.quantile(q);
+            System.out.printf("q%.3f: exact %,d ns, histogram %,d ns, error %.2f%%\n", q, exact, got, 100.0 * (got - exact) / exact);
+        }
+
+        /* An interval spent with recording off must not show up as
+         * a frame. */
+        FrameStats fs = new FrameStats(true);
+        fs.start();
+        fs.start();
+        fs.enable(false);
+        Thread.sleep(200);
+        fs.enable(true);
+        fs.start();
+        fs.start();
+        if (fs.hist[FrameStats.FRAME].count() != 2)
+            throw (new AssertionError("frames after toggling: " + fs.hist[FrameStats.FRAME].count()));
+        if (fs.hist[FrameStats.FRAME].max() >= 100000000)
+            throw (new AssertionError("off interval recorded as a frame"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+        check();
+        FrameStats fs = new FrameStats(true);
+        for (int r = 0; r < 3; r++) {
+            long st = System.nanoTime();
+            for (int f = 0; f < frames; f++) {
+                fs.start();
+                fs.skip();
+                fs.lap(FrameStats.DISPATCH);
+                fs.lap(FrameStats.STICK);
+                fs.lap(FrameStats.TICK);
+                fs.skip();
+                fs.lap(FrameStats.DRAW);
+                fs.add(FrameStats.SWAP, 100000);
+                fs.add(FrameStats.LATENCY, 20000000);
+                fs.add(FrameStats.WAIT, 5000000);
+            }
+            double per = (System.nanoTime() - st) / (double) frames;
+            System.out.printf("%.0f ns per frame, %.4f%% of a 16.7 ms frame\n", per, per / 16.7e6 * 100);
+        }
+        PrintWriter out = new PrintWriter(System.out);
+        fs.summary(out);
+        out.flush();
+    }
+}
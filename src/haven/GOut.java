@@ -29,6 +29,7 @@ package haven;
 import java.awt.Color;
 import java.awt.image.*;
 import java.nio.*;
+import java.util.*;
 import java.util.function.*;
 
 import haven.render.*;
@@ -39,10 +40,36 @@ public class GOut {
     public static final VertexArray.Layout vf_pos = new VertexArray.Layout(new VertexArray.Layout.Input(Ortho2D.pos, new VectorFormat(2, NumberFormat.FLOAT32), 0, 0, 8));
     public static final VertexArray.Layout vf_tex = new VertexArray.Layout(new VertexArray.Layout.Input(Ortho2D.pos, new VectorFormat(2, NumberFormat.FLOAT32), 0, 0, 16),
             new VertexArray.Layout.Input(ColorTex.texc, new VectorFormat(2, NumberFormat.FLOAT32), 0, 8, 16));
+    /* Batched quads carry their color per vertex, so that differently
+     * tinted images, such as colored text, can share a draw. */
+    public static final VertexArray.Layout vf_ctex = new VertexArray.Layout(new VertexArray.Layout.Input(Ortho2D.pos, new VectorFormat(2, NumberFormat.FLOAT32), 0, 0, 32),
+            new VertexArray.Layout.Input(ColorTex.texc, new VectorFormat(2, NumberFormat.FLOAT32), 0, 8, 32),
+            new VertexArray.Layout.Input(VertexColor.color, new VectorFormat(4, NumberFormat.FLOAT32), 0, 16, 32));
+    public static boolean batching = Utils.getprefb("batch2d", true);
+    private static final int maxquads = 4096;
     public final Render out;
     public Coord ul, br, tx, sz;
     private final GOut root;
     private final Pipe def2d, cur2d;
+    private final Batch batch;
+
+    /* Quads from atlased textures waiting to be drawn together. Shared
+     * by all GOuts derived from the same root. */
+    private static class Batch {
+        final int cycle = TexAtlas.ui.cycle();
+        float[] data = new float[16 * 32];
+        Pipe st = null;
+        int nq = 0;
+        int quads = 0, draws = 0;
+    }
+
+    static {
+        Console.setscmd("batch2d", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefb("batch2d", batching = Utils.parsebool(args[1], true));
+            }
+        });
+    }
 
     protected GOut(GOut o) {
         this.out = o.out;
@@ -52,6 +79,7 @@ public class GOut {
         this.root = o.root;
         this.def2d = o.def2d;
         this.cur2d = def2d.copy();
+        this.batch = o.batch;
     }
 
     public GOut(Render out, Pipe def2d, Coord sz) {
@@ -61,6 +89,7 @@ public class GOut {
         this.root = this;
         this.def2d = def2d;
         this.cur2d = def2d.copy();
+        this.batch = new Batch();
     }
 
     public GOut root() {
@@ -165,8 +194,7 @@ public class GOut {
     }
 
     public void atext(String text, Coord c, double ax, double ay) {
-        Text t = Text.render(text);
-        Tex T = t.tex();
+        Tex T = Glyphs.usable() ? Text.std.layout(text, Color.WHITE) : Text.render(text).tex();
         aimage(T, c, ax, ay);
         T.dispose();
     }
@@ -175,8 +203,97 @@ public class GOut {
         atext(text, c, 0, 0);
     }
 
+    /* Adds part of an atlased texture to the current batch, flushing
+     * it first if the state has changed. Returns false if the texture
+     * cannot be batched right now, in which case the caller should
+     * draw it by itself. */
+    boolean batch(TexI tex, Coord dul, Coord dbr, Coord tul, Coord tbr) {
+        Batch b = this.batch;
+        if (!batching)
+            return (false);
+        TexAtlas.Entry ent = tex.atlased(b.cycle);
+        if ((ent == null) || !ent.ready(b.cycle))
+            return (false);
+        TexAtlas.Page pg = ent.page;
+        BaseColor bc = cur2d.get(BaseColor.slot);
+        VertexColor vc = cur2d.get(VertexColor.slot);
+        cur2d.put(BaseColor.slot, null);
+        cur2d.put(VertexColor.slot, VertexColor.instance);
+        cur2d.put(ColorTex.slot, pg.st());
+        if ((b.nq > 0) && ((b.nq >= maxquads) || !Pipe.equals(cur2d.states(), b.st.states())))
+            flush();
+        if (b.nq == 0)
+            b.st = cur2d.copy();
+        cur2d.put(ColorTex.slot, null);
+        cur2d.put(VertexColor.slot, vc);
+        cur2d.put(BaseColor.slot, bc);
+        if (b.data.length < (b.nq + 1) * 32)
+            b.data = Arrays.copyOf(b.data, b.data.length * 2);
+        float pz = TexAtlas.ui.pagesz;
+        float tl = (ent.x + tul.x) / pz, tu = (ent.y + tul.y) / pz;
+        float tr = (ent.x + tbr.x) / pz, tb = (ent.y + tbr.y) / pz;
+        FColor col = (bc == null) ? FColor.WHITE : bc.color;
+        float[] d = b.data;
+        int o = b.nq * 32;
+        vertex(d, o + 0, dbr.x, dul.y, tr, tu, col);
+        vertex(d, o + 8, dbr.x, dbr.y, tr, tb, col);
+        vertex(d, o + 16, dul.x, dul.y, tl, tu, col);
+        vertex(d, o + 24, dul.x, dbr.y, tl, tb, col);
+        b.nq++;
+        b.quads++;
+        return (true);
+    }
+
+    private static void vertex(float[] d, int o, float x, float y, float s, float t, FColor col) {
+        d[o + 0] = x;
+        d[o + 1] = y;
+        d[o + 2] = s;
+        d[o + 3] = t;
+        d[o + 4] = col.r;
+        d[o + 5] = col.g;
+        d[o + 6] = col.b;
+        d[o + 7] = col.a;
+    }
+
+    /* Draws any pending batched quads. Must be called before drawing
+     * to the underlying Render directly, and before submitting it. */
+    public void flush() {
+        Batch b = this.batch;
+        int nq = b.nq;
+        if (nq == 0)
+            return;
+        float[] data = Arrays.copyOf(b.data, nq * 32);
+        short[] idx = new short[nq * 6];
+        for (int i = 0, io = 0, vo = 0; i < nq; i++, io += 6, vo += 4) {
+            idx[io + 0] = (short) (vo + 0);
+            idx[io + 1] = (short) (vo + 1);
+            idx[io + 2] = (short) (vo + 2);
+            idx[io + 3] = (short) (vo + 1);
+            idx[io + 4] = (short) (vo + 3);
+            idx[io + 5] = (short) (vo + 2);
+        }
+        Pipe st = b.st;
+        b.nq = 0;
+        b.st = null;
+        b.draws++;
+        out.draw(st, new Model(Model.Mode.TRIANGLES,
+                new VertexArray(vf_ctex, new VertexArray.Buffer(data.length * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(data))),
+                new Model.Indices(idx.length, NumberFormat.UINT16, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(idx))));
+    }
+
+    /* Draws a model by itself, keeping order with batched quads. */
+    public void draw(Pipe st, Model mod) {
+        flush();
+        batch.draws++;
+        out.draw(st, mod);
+    }
+
+    public String batchstats() {
+        return (String.format("%,d quads, %,d draws, %d atlas pages", batch.quads, batch.draws, TexAtlas.ui.pages()));
+    }
+
     public void drawp(Model.Mode mode, float[] data, int n) {
-        out.draw(cur2d, new Model(mode, new VertexArray(vf_pos, new VertexArray.Buffer(data.length * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(data))), null, 0, n));
+        draw(cur2d, new Model(mode, new VertexArray(vf_pos, new VertexArray.Buffer(data.length * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(data))), null, 0, n));
     }
 
     public void drawp(Model.Mode mode, float[] data) {
@@ -184,7 +301,7 @@ public class GOut {
     }
 
     public void drawt(Model.Mode mode, float[] data, int n) {
-        out.draw(cur2d, new Model(mode, new VertexArray(vf_tex, new VertexArray.Buffer(data.length * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(data))), null, 0, n));
+        draw(cur2d, new Model(mode, new VertexArray(vf_tex, new VertexArray.Buffer(data.length * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(data))), null, 0, n));
     }
 
     public void drawt(Model.Mode mode, float[] data) {
@@ -427,6 +544,7 @@ public class GOut {
     }
 
     public void getpixel(Coord c, Consumer<Color> cb) {
+        flush();
         getpixel(out, cur2d, FragColor.fragcol, c.add(tx), cb);
     }
 
@@ -441,6 +559,7 @@ public class GOut {
     }
 
     public void getimage(Coord ul, Coord sz, Consumer<BufferedImage> cb) {
+        flush();
         getimage(out, cur2d, FragColor.fragcol, Area.sized(ul.add(tx), sz), cb);
     }
 
@@ -479,6 +598,7 @@ public class GOut {
     }
 
     public void getimage(Texture.Image<?> img, Consumer<BufferedImage> cb) {
+        flush();
         getimage(out, img, cb);
     }
 }
@@ -119,14 +119,7 @@ public class Glob {
 
     private double lastctick = 0;
 
-    public void ctick() {
-        double now = Utils.rtime();
-        double dt;
-        if (lastctick == 0)
-            dt = 0;
-        else
-            dt = Math.max(now - lastctick, 0.0);
-
+    private void tick(double dt) {
         synchronized (this) {
             ticklight(dt);
             for (Object o : wmap.values()) {
@@ -135,10 +128,100 @@ public class Glob {
             }
         }
 
-        oc.ctick(dt);
-        map.ctick(dt);
+        oc.simtick(dt);
+        map.simtick(dt);
+    }
+
+    private void settle() {
+        oc.settle();
+        map.settle();
+    }
 
-        lastctick = now;
+    public void ctick() {
+        simreq = 0;
+        synchronized (ticklock) {
+            double now = Utils.rtime();
+            double dt;
+            if (lastctick == 0)
+                dt = 0;
+            else
+                dt = Math.max(now - lastctick, 0.0);
+            tick(dt);
+            settle();
+            lastctick = now;
+        }
+    }
+
+    /* Optionally, the world is instead ticked at a fixed rate on a
+     * thread of its own, so that a heavy tick does not hold up
+     * frames. Moving objects then keep the positions of the last two
+     * ticks, which frames draw them interpolated between, one step
+     * behind the simulation (see Gob.drawc()). The frame loop calls
+     * simulate() in place of ctick() to keep the thread running,
+     * passing the UI lock it holds. Only Gob.simtick() runs without
+     * that lock; the structural changes of Gob.settle() are made
+     * holding it, so widgets see gobs change only while they are
+     * not running. */
+    public static final double simstep = 1.0 / 30.0;
+    private final Object ticklock = new Object();
+    private volatile Thread simthread = null;
+    private volatile double simreq = 0, simtime = 0;
+    private volatile Object simlock = null;
+
+    public void simulate(Object uilock) {
+        simlock = uilock;
+        simreq = Utils.rtime();
+        if (simthread == null) {
+            synchronized (ticklock) {
+                if (simthread == null) {
+                    Thread th = new HackThread(this::simloop, "Simulation thread");
+                    th.setDaemon(true);
+                    simthread = th;
+                    th.start();
+                }
+            }
+        }
+    }
+
+    public boolean simulating() {
+        return (simthread != null);
+    }
+
+    /* The time that the last simulation tick represents. */
+    public double simtime() {
+        return (simtime);
+    }
+
+    private void simloop() {
+        try {
+            double next = Utils.rtime();
+            while (true) {
+                double now = Utils.rtime();
+                if (now - simreq > 1.0)
+                    break;
+                if (now < next) {
+                    long nanos = (long) ((next - now) * 1e9);
+                    Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+                    continue;
+                }
+                synchronized (ticklock) {
+                    simtime = next;
+                    tick(simstep);
+                    lastctick = next;
+                }
+                synchronized (simlock) {
+                    settle();
+                }
+                next += simstep;
+                /* Rather than racing to catch up after a stall, drop
+                 * the lost time. */
+                if (now - next > 0.25)
+                    next = now;
+            }
+        } catch (InterruptedException e) {
+        } finally {
+            simthread = null;
+        }
     }
 
     public void gtick(Render g) {
@@ -164,18 +247,47 @@ public class Glob {
         return (rgtime);
     }
 
+    private static final byte[] blob_tm = "tm".getBytes(Utils.utf8);
+    private static final Message.StrTable blobnames = new Message.StrTable(64, "tm", "astro", "light", "sky", "wth");
+
+    private static class TimeDecoder implements Message.ListVisitor {
+        double tm;
+        int n;
+
+        public void integer(int v) {
+            if (n++ == 0)
+                tm = v;
+        }
+
+        public void real(double v) {
+            if (n++ == 0)
+                tm = v;
+        }
+    }
+
     public void blob(Message msg) {
         boolean inc = msg.uint8() != 0;
+        TimeDecoder tmdec = null;
         while (!msg.eom()) {
-            String t = msg.string().intern();
-            Object[] a = msg.list();
-            int n = 0;
-            if (t == "tm") {
-                time = ((Number) a[n++]).doubleValue();
+            /* Time updates are much more frequent than the others,
+             * so they are decoded without an argument array. */
+            if (msg.string(blob_tm)) {
+                if (tmdec == null)
+                    tmdec = new TimeDecoder();
+                tmdec.n = 0;
+                msg.list(tmdec);
+                if (tmdec.n < 1)
+                    throw (new Message.FormatError("Empty time update"));
+                time = tmdec.tm;
                 epoch = Utils.rtime();
                 if (!inc)
                     lastrep = 0;
-            } else if (t == "astro") {
+                continue;
+            }
+            String t = msg.string(blobnames);
+            Object[] a = msg.list();
+            int n = 0;
+            if (t == "astro") {
                 double dt = ((Number) a[n++]).doubleValue();
                 double mp = ((Number) a[n++]).doubleValue();
                 double yt = ((Number) a[n++]).doubleValue();
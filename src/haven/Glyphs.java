@@ -0,0 +1,368 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven;
+
+import java.util.*;
+import java.awt.*;
+import java.awt.font.*;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.text.AttributedCharacterIterator;
+import java.text.Bidi;
+
+import haven.render.BaseColor;
+
+/* Caches rasterized glyphs per font, so that text can be drawn as
+ * runs of small glyph images from the shared UI atlas instead of
+ * uploading every distinct string as a texture of its own. Glyphs
+ * are placed as AWT lays out the whole string, and text that needs
+ * complex layout is still rasterized as a whole. */
+public class Glyphs {
+    public static boolean enabled = Utils.getprefb("glyphtext", true);
+    public static int maxfonts = 64, maxglyphs = 1024;
+    private static final Map<Pair<Font, Boolean>, Glyphs> fonts = new LRU<>(maxfonts);
+    private static final TexI solid;
+    public final Font font;
+    public final boolean aa;
+    /* Whether glyphs of this font fit in atlas cells at all. */
+    public final boolean atlased;
+    private final FontRenderContext frc;
+    private final Map<Integer, Glyph> glyphs = new LRU<>(maxglyphs);
+
+    /* Fonts and glyph codes both come from arbitrary text, so only
+     * the most recently used ones are kept. Evicted glyphs stay valid
+     * for runs that still hold them. */
+    private static class LRU<K, V> extends LinkedHashMap<K, V> {
+        private final int size;
+
+        private LRU(int size) {
+            super(16, 0.75f, true);
+            this.size = size;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return (size() > size);
+        }
+    }
+
+    static {
+        BufferedImage img = TexI.mkbuf(new Coord(1, 1));
+        img.setRGB(0, 0, 0xffffffff);
+        solid = new TexI(img).eager();
+        Console.setscmd("glyphtext", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefb("glyphtext", enabled = Utils.parsebool(args[1], true));
+            }
+        });
+    }
+
+    public static class Glyph {
+        public final TexI tex;
+        public final Coord off;
+
+        private Glyph(TexI tex, Coord off) {
+            this.tex = tex;
+            this.off = off;
+        }
+    }
+
+    private Glyphs(Font font, boolean aa) {
+        this.font = font;
+        this.aa = aa;
+        Graphics2D g = TexI.mkbuf(new Coord(1, 1)).createGraphics();
+        if (aa)
+            Utils.AA(g);
+        this.frc = g.getFontRenderContext();
+        g.dispose();
+        LineMetrics lm = font.getLineMetrics("", frc);
+        this.atlased = Math.ceil(lm.getAscent() + lm.getDescent()) <= TexAtlas.ui.maxsz;
+    }
+
+    public static Glyphs get(Font font, boolean aa) {
+        Pair<Font, Boolean> key = new Pair<>(font, aa);
+        synchronized (fonts) {
+            Glyphs ret = fonts.get(key);
+            if (ret == null)
+                fonts.put(key, ret = new Glyphs(font, aa));
+            return (ret);
+        }
+    }
+
+    /* Whether text should be drawn from glyphs. Without batching,
+     * every glyph would be a draw call of its own. */
+    public static boolean usable() {
+        return (enabled && GOut.batching);
+    }
+
+    /* Whether text can be drawn from glyphs of this font, rather
+     * than needing to be shaped or reordered as a whole. */
+    public boolean fits(String text) {
+        if (!atlased)
+            return (false);
+        char[] cs = text.toCharArray();
+        return (!Font.textRequiresLayout(cs, 0, cs.length) && !Bidi.requiresBidi(cs, 0, cs.length));
+    }
+
+    private GlyphVector gv(String text) {
+        char[] cs = text.toCharArray();
+        return (font.layoutGlyphVector(frc, cs, 0, cs.length, Font.LAYOUT_LEFT_TO_RIGHT));
+    }
+
+    private Glyph render(int code) {
+        GlyphVector gv = font.createGlyphVector(frc, new int[]{code});
+        Rectangle b = gv.getPixelBounds(frc, 0, 0);
+        if ((b.width < 1) || (b.height < 1))
+            return (new Glyph(null, Coord.z));
+        BufferedImage img = TexI.mkbuf(new Coord(b.width, b.height));
+        Graphics2D g = img.createGraphics();
+        if (aa)
+            Utils.AA(g);
+        g.setColor(Color.WHITE);
+        g.drawGlyphVector(gv, -b.x, -b.y);
+        g.dispose();
+        return (new Glyph(new TexI(img).eager(), new Coord(b.x, b.y)));
+    }
+
+    /* Looks up a glyph by its glyph code in this font, not by
+     * character. */
+    public Glyph glyph(int code) {
+        synchronized (glyphs) {
+            Glyph ret = glyphs.get(code);
+            if (ret == null)
+                glyphs.put(code, ret = render(code));
+            return (ret);
+        }
+    }
+
+    public int size() {
+        synchronized (glyphs) {
+            return (glyphs.size());
+        }
+    }
+
+    public float advance(String text) {
+        GlyphVector gv = gv(text);
+        return ((float) gv.getGlyphPosition(gv.getNumGlyphs()).getX());
+    }
+
+    /* Adds the glyphs of text to the run, with the pen starting at
+     * (x, base). Returns the pen position after the last glyph. */
+    public float layout(Run run, String text, float x, int base, Color col) {
+        GlyphVector gv = gv(text);
+        int n = gv.getNumGlyphs();
+        for (int i = 0; i < n; i++) {
+            Glyph gl = glyph(gv.getGlyphCode(i));
+            if (gl.tex != null) {
+                Point2D pos = gv.getGlyphPosition(i);
+                run.add(gl.tex, new Coord((int) Math.round(x + pos.getX()) + gl.off.x, base + (int) Math.round(pos.getY()) + gl.off.y), gl.tex.sz(), col);
+            }
+        }
+        return (x + (float) gv.getGlyphPosition(n).getX());
+    }
+
+    /* Rasterizes text as a whole into the run, for text that does
+     * not fit. */
+    private float whole(Run run, String text, float x, int base, Color col) {
+        GlyphVector gv = gv(text);
+        float adv = (float) gv.getGlyphPosition(gv.getNumGlyphs()).getX();
+        Rectangle b = gv.getPixelBounds(frc, 0, 0);
+        if ((b.width < 1) || (b.height < 1))
+            return (x + adv);
+        BufferedImage img = TexI.mkbuf(new Coord(b.width, b.height));
+        Graphics2D g = img.createGraphics();
+        if (aa)
+            Utils.AA(g);
+        g.setColor(Color.WHITE);
+        g.drawGlyphVector(gv, -b.x, -b.y);
+        g.dispose();
+        TexI tex = new TexI(img);
+        run.own(tex);
+        run.add(tex, new Coord(Math.round(x) + b.x, base + b.y), tex.sz(), col);
+        return (x + adv);
+    }
+
+    public Run layout(String text, Color col, Coord sz, int base) {
+        Run run = new Run(sz);
+        if (fits(text))
+            layout(run, text, 0, base, col);
+        else
+            whole(run, text, 0, base, col);
+        return (run);
+    }
+
+    /* Whether all text parts can be drawn from glyphs. */
+    public static boolean fits(RichText.Part parts, boolean aa) {
+        for (RichText.Part p = parts; p != null; p = p.next) {
+            if (!(p instanceof RichText.TextPart))
+                continue;
+            RichText.TextPart tp = (RichText.TextPart) p;
+            AttributedCharacterIterator it = tp.ti();
+            StringBuilder buf = new StringBuilder();
+            while (it.getIndex() < it.getEndIndex()) {
+                int rl = it.getRunLimit();
+                Map<AttributedCharacterIterator.Attribute, Object> attrs = it.getAttributes();
+                buf.setLength(0);
+                for (char c = it.current(); it.getIndex() < rl; c = it.next())
+                    buf.append(c);
+                if (!get(Font.getFont(attrs), aa).fits(buf.toString()))
+                    return (false);
+            }
+        }
+        return (true);
+    }
+
+    /* Lays out already positioned rich text parts. */
+    public static Run layout(RichText.Part parts, Coord sz, boolean aa) {
+        Run run = new Run(sz);
+        for (RichText.Part p = parts; p != null; p = p.next) {
+            if (p instanceof RichText.TextPart) {
+                RichText.TextPart tp = (RichText.TextPart) p;
+                if (tp.start == tp.end)
+                    continue;
+                int base = p.y + p.baseline();
+                float x = p.x;
+                AttributedCharacterIterator it = tp.ti();
+                StringBuilder buf = new StringBuilder();
+                while (it.getIndex() < it.getEndIndex()) {
+                    int rl = it.getRunLimit();
+                    Map<AttributedCharacterIterator.Attribute, Object> attrs = it.getAttributes();
+                    buf.setLength(0);
+                    for (char c = it.current(); it.getIndex() < rl; c = it.next())
+                        buf.append(c);
+                    String text = buf.toString();
+                    Object fg = attrs.get(TextAttribute.FOREGROUND);
+                    Object bg = attrs.get(TextAttribute.BACKGROUND);
+                    Color col = (fg instanceof Color) ? (Color) fg : Color.WHITE;
+                    Glyphs gl = get(Font.getFont(attrs), aa);
+                    if (bg instanceof Color)
+                        run.add(solid, new Coord(Math.round(x), p.y), new Coord(Math.round(x + gl.advance(text)) - Math.round(x), p.height()), (Color) bg);
+                    float x2 = gl.layout(run, text, x, base, col);
+                    if (TextAttribute.UNDERLINE_ON.equals(attrs.get(TextAttribute.UNDERLINE))) {
+                        LineMetrics lm = gl.font.getLineMetrics(text, gl.frc);
+                        int uy = base + Math.round(lm.getUnderlineOffset());
+                        int uh = Math.max(Math.round(lm.getUnderlineThickness()), 1);
+                        run.add(solid, new Coord(Math.round(x), uy), new Coord(Math.round(x2) - Math.round(x), uh), col);
+                    }
+                    x = x2;
+                }
+            } else if (p instanceof RichText.Image) {
+                RichText.Image ip = (RichText.Image) p;
+                TexI tex = new TexI(ip.img);
+                run.own(tex);
+                run.add(tex, new Coord(p.x, p.y), tex.sz(), Color.WHITE);
+            }
+        }
+        return (run);
+    }
+
+    /* A laid out piece of text, drawn as individual quads. Texture
+     * coordinates of the run as a whole are in pixels of its nominal
+     * size, like those of a TexI. */
+    public static class Run implements Tex {
+        public final Coord sz;
+        private TexI[] tex = new TexI[16];
+        private int[] q = new int[16 * 4];
+        private Color[] col = new Color[16];
+        private int n = 0;
+        private java.util.List<TexI> owned = null;
+
+        public Run(Coord sz) {
+            this.sz = sz;
+        }
+
+        public void add(TexI tex, Coord ul, Coord sz, Color col) {
+            if ((sz.x < 1) || (sz.y < 1))
+                return;
+            if (n >= this.tex.length) {
+                this.tex = Arrays.copyOf(this.tex, n * 2);
+                this.q = Arrays.copyOf(this.q, n * 8);
+                this.col = Arrays.copyOf(this.col, n * 2);
+            }
+            this.tex[n] = tex;
+            this.q[(n * 4) + 0] = ul.x;
+            this.q[(n * 4) + 1] = ul.y;
+            this.q[(n * 4) + 2] = sz.x;
+            this.q[(n * 4) + 3] = sz.y;
+            this.col[n] = col;
+            n++;
+        }
+
+        private void own(TexI tex) {
+            if (owned == null)
+                owned = new ArrayList<>();
+            owned.add(tex);
+        }
+
+        public int quads() {
+            return (n);
+        }
+
+        public Coord sz() {
+            return (sz);
+        }
+
+        public void render(GOut g, Coord dul, Coord dbr, Coord tul, Coord tbr) {
+            int tw = tbr.x - tul.x, th = tbr.y - tul.y;
+            int dw = dbr.x - dul.x, dh = dbr.y - dul.y;
+            if ((tw < 1) || (th < 1))
+                return;
+            BaseColor bk = g.curstate(BaseColor.slot);
+            FColor base = (bk == null) ? FColor.WHITE : bk.color;
+            Color ccol = null;
+            for (int i = 0; i < n; i++) {
+                int qx = q[(i * 4) + 0], qy = q[(i * 4) + 1], qw = q[(i * 4) + 2], qh = q[(i * 4) + 3];
+                int x1 = Math.max(qx, tul.x), y1 = Math.max(qy, tul.y);
+                int x2 = Math.min(qx + qw, tbr.x), y2 = Math.min(qy + qh, tbr.y);
+                if ((x1 >= x2) || (y1 >= y2))
+                    continue;
+                if (col[i] != ccol) {
+                    ccol = col[i];
+                    g.usestate(new BaseColor(base.mul(new FColor(ccol))));
+                }
+                Coord gsz = tex[i].sz();
+                tex[i].render(g,
+                        new Coord(dul.x + ((x1 - tul.x) * dw) / tw, dul.y + ((y1 - tul.y) * dh) / th),
+                        new Coord(dul.x + ((x2 - tul.x) * dw) / tw, dul.y + ((y2 - tul.y) * dh) / th),
+                        new Coord(((x1 - qx) * gsz.x) / qw, ((y1 - qy) * gsz.y) / qh),
+                        new Coord(((x2 - qx) * gsz.x) / qw, ((y2 - qy) * gsz.y) / qh));
+            }
+            if (bk == null)
+                g.usestate(BaseColor.slot);
+            else
+                g.usestate(bk);
+        }
+
+        public void dispose() {
+            if (owned != null) {
+                for (TexI tex : owned)
+                    tex.dispose();
+                owned = null;
+            }
+        }
+    }
+}
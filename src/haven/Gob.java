@@ -44,6 +44,12 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
     private final Collection<SetupMod> setupmods = new ArrayList<>();
     private final Collection<ResAttr.Cell<?>> rdata = new LinkedList<ResAttr.Cell<?>>();
     private final Collection<ResAttr.Load> lrdata = new LinkedList<ResAttr.Load>();
+    /* Minimum interval between animation updates for each LOD
+     * level. Objects at SKIP are still drawn, but their animations
+     * are frozen until they come back into a visible band. */
+    public static final double[] lodrate = {0, 1.0 / 20, 1.0 / 6, Double.POSITIVE_INFINITY};
+    public static float lodrad = 8;
+    public int lod = LOD.FULL;
 
     public static class Overlay implements RenderTree.Node {
         public final int id;
@@ -53,6 +59,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
         public Sprite spr;
         public boolean delign = false;
         private Collection<RenderTree.Slot> slots = null;
+        private boolean done = false;
         private boolean added = false;
 
         public Overlay(Gob gob, int id, Indir<Resource> res, Message sdt) {
@@ -206,9 +213,37 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
         this(glob, c, -1);
     }
 
+    /* Minimum interval between skeletal animation updates at the
+     * current LOD level; see Skeleton.TrackMod.tick. */
+    public double animrate() {
+        return (lodrate[lod]);
+    }
+
     public void ctick(double dt) {
+        simtick(dt);
+        settle();
+    }
+
+    /* Advances attributes and overlay sprites without changing which
+     * attributes or overlays the gob has, so that it may run off the
+     * UI thread; see Glob.simulate(). */
+    public void simtick(double dt) {
         for (GAttrib a : attr.values())
             a.ctick(dt);
+        for (Overlay ol : ols) {
+            if (ol.slots != null)
+                ol.done = ol.spr.tick(dt);
+        }
+        if (glob.simulating())
+            snapshot();
+    }
+
+    /* Makes the structural changes left by simtick(): resolving
+     * attributes, initializing and removing overlays, and removing
+     * virtual gobs that have run out of them. Widgets read that
+     * state under the UI lock, so this is always called holding
+     * it. */
+    public void settle() {
         loadrattr();
         for (Iterator<Overlay> i = ols.iterator(); i.hasNext(); ) {
             Overlay ol = i.next();
@@ -217,12 +252,9 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
                     ol.init();
                 } catch (Loading e) {
                 }
-            } else {
-                boolean done = ol.spr.tick(dt);
-                if ((!ol.delign || (ol.spr instanceof Sprite.CDel)) && done) {
-                    ol.remove0();
-                    i.remove();
-                }
+            } else if ((!ol.delign || (ol.spr instanceof Sprite.CDel)) && ol.done) {
+                ol.remove0();
+                i.remove();
             }
         }
         updstate();
@@ -284,6 +316,58 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
         this.a = a;
     }
 
+    /* Position of a moving object as of the last two simulation
+     * ticks, when the world is simulated on its own thread. */
+    private static class Snapshot {
+        final Coord3f c, pc;
+        final double t, pt;
+
+        Snapshot(Coord3f c, double t, Snapshot prev) {
+            this.c = c;
+            this.t = t;
+            this.pc = (prev == null) ? c : prev.c;
+            this.pt = (prev == null) ? t : prev.t;
+        }
+
+        Coord3f at(double t) {
+            if ((t >= this.t) || (this.t <= pt))
+                return (c);
+            if (t <= pt)
+                return (pc);
+            float a = (float) ((t - pt) / (this.t - pt));
+            return (pc.add(c.sub(pc).mul(a)));
+        }
+    }
+
+    private volatile Snapshot snap = null;
+
+    private void snapshot() {
+        Moving m = getattr(Moving.class);
+        if (m == null) {
+            snap = null;
+            return;
+        }
+        try {
+            snap = new Snapshot(m.getc(), glob.simtime(), snap);
+        } catch (Loading l) {
+        }
+    }
+
+    /* Where to draw the gob. This interpolates one step behind the
+     * simulation, and so is only for placing the gob in the render
+     * tree; everything else uses the live position from getc(). */
+    Coord3f drawc() {
+        Moving m = getattr(Moving.class);
+        Snapshot s = this.snap;
+        if ((m == null) || (s == null) || !glob.simulating() || (s.t < glob.simtime() - (Glob.simstep * 2)))
+            return (getc());
+        Coord3f ret = s.at(Utils.rtime() - Glob.simstep);
+        DrawOffset df = getattr(DrawOffset.class);
+        if (df != null)
+            ret = ret.add(df.off);
+        return (ret);
+    }
+
     public Coord3f getc() {
         Moving m = getattr(Moving.class);
         Coord3f ret = (m != null) ? m.getc() : getrc();
@@ -599,6 +683,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
     }
 
     private static final ClassResolver<Gob> ctxr = new ClassResolver<Gob>()
+            .add(Gob.class, g -> g)
             .add(Glob.class, g -> g.glob)
             .add(Session.class, g -> g.glob.sess);
 
@@ -637,7 +722,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
                     Pipe.Op flwxf = (flw == null) ? null : flw.xf();
                     Pipe.Op tilestate = null;
                     if (flwxf == null) {
-                        Coord3f oc = Gob.this.getc();
+                        Coord3f oc = Gob.this.drawc();
                         Coord3f rc = new Coord3f(oc);
                         rc.y = -rc.y;
                         this.flw = null;
@@ -716,8 +801,23 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner {
             return (new Placement());
         }
 
+        private void updlod() {
+            if (!Config.animlod) {
+                Gob.this.lod = LOD.FULL;
+                return;
+            }
+            int lod = LOD.FULL;
+            for (RenderTree.Slot slot : slots) {
+                lod = LOD.level(slot.state(), Coord3f.o, lodrad);
+                break;
+            }
+            Gob.this.lod = lod;
+            LOD.count(lod);
+        }
+
         public void autotick(double dt) {
             synchronized (Gob.this) {
+                updlod();
                 Placement np;
                 try {
                     np = new Placement();
@@ -42,6 +42,7 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
     public final boolean vsync = true;
     public final CPUProfile uprof = new CPUProfile(300), rprof = new CPUProfile(300);
     public final GPUProfile gprof = new GPUProfile(300);
+    public final FrameStats fstats = new FrameStats(Utils.getprefb("framestats", false));
     private boolean bgmode = false;
     private boolean aswap;
     private int fps, framelag;
@@ -207,9 +208,13 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
 
     private class BufferSwap implements BGL.Request {
         final int frameno;
+        final FrameStats stats;
+        final long intime;
 
-        BufferSwap(int frameno) {
+        BufferSwap(int frameno, FrameStats stats, long intime) {
             this.frameno = frameno;
+            this.stats = stats;
+            this.intime = intime;
         }
 
         public void run(GL3 gl) {
@@ -218,8 +223,14 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
             if (iswap != aswap)
                 gl.setSwapInterval((aswap = iswap) ? 1 : 0);
             JOGLPanel.this.swapBuffers();
-            ridletime += System.nanoTime() - start;
+            long end = System.nanoTime();
+            ridletime += end - start;
             framelag = JOGLPanel.this.frameno - frameno;
+            if (stats != null) {
+                stats.add(FrameStats.SWAP, end - start);
+                if (intime != 0)
+                    stats.add(FrameStats.LATENCY, end - intime);
+            }
         }
     }
 
@@ -401,6 +412,7 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
     }
 
     private long prevfree = 0, framealloc = 0;
+    private String bstats = "";
 
     @SuppressWarnings("deprecation")
     private void drawstats(UI ui, GOut g, GLRender buf) {
@@ -413,14 +425,20 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
         prevfree = free;
         FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Mem: %,011d/%,011d/%,011d/%,011d (%,d)", free, total - free, total, rt.maxMemory(), framealloc);
         FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "State slots: %d", State.Slot.numslots());
-        FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "GL progs: %d", buf.env.numprogs());
+        FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "GL progs: %d (%d pending)", buf.env.numprogs(), buf.env.pendingprogs());
         FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "V-Mem: %s", buf.env.memstats());
+        FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "GL calls: %s", buf.env.shadowstats());
+        FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Staging: %s", buf.env.stagingstats());
+        FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "2D: %s", bstats);
+        FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Retained UI: %s", Widget.rstats());
         MapView map = ui.root.findchild(MapView.class);
         if ((map != null) && (map.back != null)) {
             FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Camera: %s", map.camstats());
             FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Mapview: %s", map.stats());
             // FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Click: Map: %s, Obj: %s", map.clmaplist.stats(), map.clobjlist.stats());
         }
+        if (ui.rcvr instanceof RemoteUI)
+            FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "UI msgs: %s", ((RemoteUI) ui.rcvr).stats());
         if (ui.sess != null)
             FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Async: L %s, D %s", ui.sess.glob.loader.stats(), Defer.gstats());
         else
@@ -434,6 +452,7 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
         buf.clear(wnd, FragColor.fragcol, FColor.BLACK);
         Pipe state = wnd.copy();
         state.prep(new FrameInfo());
+        TexAtlas.ui.frame();
         GOut g = new GOut(buf, state, new Coord(getSize()));
         ;
         synchronized (ui) {
@@ -443,6 +462,9 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
             drawstats(ui, g, buf);
         drawtooltip(ui, g);
         drawcursor(ui, g);
+        g.flush();
+        TexAtlas.ui.upload(buf);
+        bstats = g.batchstats();
     }
 
     public void run() {
@@ -470,6 +492,8 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
                     SyncMode syncmode = prefs.syncmode.val;
                     CPUProfile.Frame curf = Config.profile ? uprof.new Frame() : null;
                     GPUProfile.Frame curgf = Config.profilegpu ? gprof.new Frame(buf) : null;
+                    FrameStats fs = fstats.on ? fstats : null;
+                    if (fs != null) fs.start();
                     buf.submit(new ProfileTick(rprofc, "wait"));
                     Fence curframe = new Fence();
                     if (syncmode == SyncMode.FRAME)
@@ -484,23 +508,30 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
                             fwaited += Utils.rtime() - now;
                         }
                         if (curf != null) curf.tick("dwait");
+                        if (fs != null) fs.skip();
                     }
 
                     int cfno = frameno++;
                     synchronized (ui) {
                         ed.dispatch(ui);
                         if (curf != null) curf.tick("dsp");
+                        if (fs != null) fs.lap(FrameStats.DISPATCH);
 
                         if (ui.sess != null) {
-                            ui.sess.glob.ctick();
+                            if (Config.simthread)
+                                ui.sess.glob.simulate(ui);
+                            else
+                                ui.sess.glob.ctick();
                             ui.sess.glob.gtick(buf);
                         }
                         if (curf != null) curf.tick("stick");
+                        if (fs != null) fs.lap(FrameStats.STICK);
                         ui.tick();
                         ui.gtick(buf);
                         if ((ui.root.sz.x != (shape.br.x - shape.ul.x)) || (ui.root.sz.y != (shape.br.y - shape.ul.y)))
                             ui.root.resize(new Coord(shape.br.x - shape.ul.x, shape.br.y - shape.ul.y));
                         if (curf != null) curf.tick("tick");
+                        if (fs != null) fs.lap(FrameStats.TICK);
                         buf.submit(new ProfileTick(rprofc, "tick"));
                         if (curgf != null) curgf.tick(buf, "tick");
                     }
@@ -513,13 +544,15 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
                             fwaited += Utils.rtime() - now;
                         }
                         if (curf != null) curf.tick("dwait");
+                        if (fs != null) fs.skip();
                     }
 
                     display(ui, buf);
                     if (curf != null) curf.tick("draw");
+                    if (fs != null) fs.lap(FrameStats.DRAW);
                     if (curgf != null) curgf.tick(buf, "draw");
                     buf.submit(new ProfileTick(rprofc, "gl"));
-                    buf.submit(new BufferSwap(cfno));
+                    buf.submit(new BufferSwap(cfno, fs, ed.dispatched));
                     if (curgf != null) curgf.tick(buf, "swap");
                     buf.submit(new ProfileTick(rprofc, "swap"));
                     if (curgf != null) curgf.fin(buf);
@@ -566,6 +599,7 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
                     }
                     framep = (framep + 1) % frames.length;
                     if (curf != null) curf.tick("wait");
+                    if (fs != null) fs.add(FrameStats.WAIT, (long) (fwaited * 1e9));
 
                     if (curf != null) curf.fin();
                     prevframe = curframe;
@@ -623,6 +657,22 @@ public class JOGLPanel extends GLCanvas implements Runnable, UIPanel, Console.Di
         cmdmap.put("gldebug", (cons, args) -> {
             debuggl = Utils.parsebool(args[1]);
         });
+        cmdmap.put("framestats", (cons, args) -> {
+            if (args.length < 2) {
+                fstats.summary(cons.out);
+            } else if (args[1].equals("reset")) {
+                fstats.reset();
+            } else if (args[1].equals("dump")) {
+                if (args.length < 3)
+                    throw (new Exception("usage: framestats dump FILE"));
+                try (java.io.Writer out = new java.io.OutputStreamWriter(new java.io.FileOutputStream(args[2]), Utils.utf8)) {
+                    fstats.write(out);
+                }
+            } else {
+                fstats.enable(Utils.parsebool(args[1]));
+                Utils.setprefb("framestats", fstats.on);
+            }
+        });
     }
 
     public Map<String, Console.Command> findcmds() {
@@ -40,6 +40,8 @@ public class MCache {
     public static final Coord cmaps = new Coord(100, 100);
     public static final Coord cutsz = new Coord(25, 25);
     public static final Coord cutn = cmaps.div(cutsz);
+    /* Map and tileset resource names recur in every grid. */
+    private static final Message.StrTable resnames = new Message.StrTable();
     public final Resource.Spec[] nsets = new Resource.Spec[256];
     @SuppressWarnings("unchecked")
     private final Reference<Resource>[] sets = new Reference[256];
@@ -210,14 +212,20 @@ public class MCache {
                     slot.add(mat);
             }
 
-            void tick(double dt) {
-                for (Gob fo : all)
-                    fo.ctick(dt);
+            void tick(Consumer<Gob> task) {
+                for (Gob fo : all) {
+                    synchronized (fo) {
+                        task.accept(fo);
+                    }
+                }
             }
 
             void gtick(Render g) {
-                for (Gob fo : all)
-                    fo.gtick(g);
+                for (Gob fo : all) {
+                    synchronized (fo) {
+                        fo.gtick(g);
+                    }
+                }
             }
         }
 
@@ -327,10 +335,10 @@ public class MCache {
             }
         }
 
-        public void tick(double dt) {
+        public void tick(Consumer<Gob> task) {
             for (Flavobjs fol : fo) {
                 if (fol != null)
-                    fol.tick(dt);
+                    fol.tick(task);
             }
         }
 
@@ -373,7 +381,7 @@ public class MCache {
         }
 
         public void fill(Message msg) {
-            String mmname = msg.string().intern();
+            String mmname = msg.string(resnames);
             if (mmname.equals(""))
                 mnm = null;
             else
@@ -385,13 +393,13 @@ public class MCache {
                     break;
                 pfl[pidx] = msg.uint8();
             }
-            Message blob = new ZMessage(msg);
+            ZMessage blob = new ZMessage(msg, tiles.length * 3);
             id = blob.int64();
             while (true) {
                 int tileid = blob.uint8();
                 if (tileid == 255)
                     break;
-                String resnm = blob.string();
+                String resnm = blob.string(resnames);
                 int resver = blob.uint16();
                 nsets[tileid] = new Resource.Spec(Resource.remote(), resnm, resver);
             }
@@ -407,8 +415,8 @@ public class MCache {
                     break;
                 int fl = pfl[pidx];
                 int type = blob.uint8();
-                Coord c1 = new Coord(blob.uint8(), blob.uint8());
-                Coord c2 = new Coord(blob.uint8(), blob.uint8());
+                int x1 = blob.uint8(), y1 = blob.uint8();
+                int x2 = blob.uint8(), y2 = blob.uint8();
                 int ol;
                 if (type == 0) {
                     if ((fl & 1) == 1)
@@ -430,12 +438,13 @@ public class MCache {
                 } else {
                     throw (new RuntimeException("Unknown plot type " + type));
                 }
-                for (int y = c1.y; y <= c2.y; y++) {
-                    for (int x = c1.x; x <= c2.x; x++) {
+                for (int y = y1; y <= y2; y++) {
+                    for (int x = x1; x <= x2; x++) {
                         this.ol[x + (y * cmaps.x)] |= ol;
                     }
                 }
             }
+            blob.release();
             invalidate();
             seq++;
         }
@@ -445,13 +454,21 @@ public class MCache {
         this.sess = sess;
     }
 
-    public void ctick(double dt) {
+    private void fotick(Consumer<Gob> task) {
         Collection<Grid> copy;
         synchronized (grids) {
             copy = new ArrayList<>(grids.values());
         }
         for (Grid g : copy)
-            g.tick(dt);
+            g.tick(task);
+    }
+
+    public void simtick(double dt) {
+        fotick(fo -> fo.simtick(dt));
+    }
+
+    public void settle() {
+        fotick(Gob::settle);
     }
 
     public void gtick(Render g) {
@@ -39,6 +39,9 @@ import static haven.MCache.cmaps;
 
 public class MapFile {
     public static boolean debug = false;
+    /* Compression level for stored grids and segments. Lower levels
+     * save several times faster for slightly larger files. */
+    public static int zlevel = Utils.getprefi("mapzlevel", 9);
     public final ResCache store;
     public final String filename;
     public final Collection<Long> knownsegs = new HashSet<>();
@@ -561,7 +564,7 @@ public class MapFile {
 
         public void save(Message fp) {
             fp.adduint8(2);
-            ZMessage z = new ZMessage(fp);
+            ZMessage z = new ZMessage(fp).level(zlevel);
             z.addint64(id);
             z.addint64(mtime);
             z.adduint8(tilesets.length);
@@ -606,6 +609,7 @@ public class MapFile {
                     for (int i = 0, no = z.uint8(); i < no; i++)
                         tilesets.add(new TileInfo(new Resource.Spec(Resource.remote(), z.string(), z.uint16()), z.uint8()));
                     byte[] tiles = z.bytes(cmaps.x * cmaps.y);
+                    z.release();
                     return (new Grid(id, tilesets.toArray(new TileInfo[0]), tiles, mtime));
                 } else {
                     throw (new Message.FormatError(String.format("Unknown grid data version for %x: %d", id, ver)));
@@ -750,7 +754,7 @@ public class MapFile {
 
         public void save(Message fp) {
             fp.adduint8(1);
-            ZMessage z = new ZMessage(fp);
+            ZMessage z = new ZMessage(fp).level(zlevel);
             z.addint64(seg);
             z.addint32(lvl);
             z.addcoord(sc);
@@ -808,6 +812,7 @@ public class MapFile {
                     for (int i = 0, no = z.uint8(); i < no; i++)
                         tilesets.add(new TileInfo(new Resource.Spec(Resource.remote(), z.string(), z.uint16()), z.uint8()));
                     byte[] tiles = z.bytes(cmaps.x * cmaps.y);
+                    z.release();
                     return (new ZoomGrid(seg, lvl, sc, tilesets.toArray(new TileInfo[0]), tiles, mtime));
                 } else {
                     throw (new Message.FormatError(String.format("Unknown zoomgrid data version for (%d, %d) in %x@%d: %d", sc.x, sc.y, seg, lvl, ver)));
@@ -1020,6 +1025,7 @@ public class MapFile {
                     throw (new Message.FormatError(String.format("Segment ID mismatch: expected %x, got %x", id, storedid)));
                 for (int i = 0, no = z.int32(); i < no; i++)
                     seg.map.put(z.coord(), z.int64());
+                z.release();
                 return (seg);
             } else {
                 throw (new Message.FormatError("Unknown segment data version: " + ver));
@@ -1038,7 +1044,7 @@ public class MapFile {
         }
         try (StreamMessage out = new StreamMessage(fp)) {
             out.adduint8(1);
-            ZMessage z = new ZMessage(out);
+            ZMessage z = new ZMessage(out).level(zlevel);
             z.addint64(seg.id);
             z.addint32(seg.map.size());
             for (Map.Entry<Coord, Long> e : seg.map.entrySet())
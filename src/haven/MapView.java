@@ -43,6 +43,7 @@ import haven.render.sl.Type;
 
 public class MapView extends PView implements DTarget, Console.Directory {
     public static boolean clickdb = false;
+    public static boolean cpupick = Utils.getprefb("cpupick", false), pickcheck = false;
     public long plgob = -1;
     public Coord2d cc;
     private final Glob glob;
@@ -858,6 +859,7 @@ public class MapView extends PView implements DTarget, Console.Directory {
         String ret = String.format("Tree %s", tree.stats());
         if (back != null)
             ret = String.format("%s, Inst %s, Draw %s", ret, instancer.stats(), back.stats());
+        ret = String.format("%s, LOD %s", ret, LOD.stats());
         return (ret);
     }
 
@@ -1224,6 +1226,26 @@ public class MapView extends PView implements DTarget, Console.Directory {
             });
         }
 
+        public ClickData raycast(RayPick ray, float maxt) {
+            Slot<? extends Rendered> hit = null;
+            float ht = maxt;
+            try (Locked lk = lock()) {
+                for (Slot<? extends Rendered> slot : slots.keySet()) {
+                    Rendered r = slot.obj();
+                    if (!(r instanceof FastMesh))
+                        continue;
+                    float t = ray.mesh(Homo3D.locxf(slot.state()), (FastMesh) r, ht);
+                    if (t <= ht) {
+                        hit = slot;
+                        ht = t;
+                    }
+                }
+                if (hit == null)
+                    return (null);
+                return (new ClickData(hit.state().get(Clickable.slot), (RenderTree.Slot) hit.cast(RenderTree.Node.class)));
+            }
+        }
+
         public void dispose() {
             if (instancer != null) {
                 instancer = null;
@@ -1320,6 +1342,41 @@ public class MapView extends PView implements DTarget, Console.Directory {
         clobjlist.get(out, c, cb);
     }
 
+    private RayPick raypick(Coord c) {
+        return (RayPick.unproject(camera.proj.fin(Matrix4f.id), camera.view.fin(Matrix4f.id), Area.sized(Coord.z, sz), c));
+    }
+
+    private Coord2d cpumapclick(RayPick ray, float[] tbuf) {
+        if (ray == null)
+            return (null);
+        float t = ray.terrain(glob.map, 1);
+        if (Float.isNaN(t))
+            return (null);
+        if (tbuf != null)
+            tbuf[0] = t;
+        return (ray.mapc(t));
+    }
+
+    private ClickData cpugobclick(RayPick ray, float maxt) {
+        if (ray == null)
+            return (null);
+        return (clobjlist.raycast(ray, maxt));
+    }
+
+    private void pickcheck(Coord pc, Coord2d gmc, ClickData gcd) {
+        RayPick ray = raypick(pc);
+        float[] tbuf = {1};
+        Coord2d cmc = cpumapclick(ray, tbuf);
+        ClickData ccd = cpugobclick(ray, tbuf[0]);
+        boolean mapok = (gmc == null) ? (cmc == null) : ((cmc != null) && (cmc.dist(gmc) < 1.0));
+        boolean objok = (gcd == null) ? (ccd == null) : ((ccd != null) && (ccd.slot == gcd.slot));
+        if (!mapok || !objok) {
+            Debug.log.printf("pickcheck: mismatch at %s: map %s/%s, obj %s/%s\n", pc, gmc, cmc,
+                    (gcd == null) ? null : gcd.slot.obj(), (ccd == null) ? null : ccd.slot.obj());
+            Debug.log.flush();
+        }
+    }
+
     public void delay(Delayed d) {
         synchronized (delayed) {
             delayed.add(d);
@@ -1463,8 +1520,10 @@ public class MapView extends PView implements DTarget, Console.Directory {
 
     public void draw(GOut g) {
         Loader.Future<Plob> placing = this.placing;
-        if ((placing != null) && placing.done())
+        if ((placing != null) && placing.done()) {
+            g.flush();
             placing.get().gtick(g.out);
+        }
         glob.map.sendreqs();
         if ((olftimer != 0) && (olftimer < Utils.rtime()))
             unflashol();
@@ -1495,6 +1554,7 @@ public class MapView extends PView implements DTarget, Console.Directory {
 
     public void tick(double dt) {
         super.tick(dt);
+        LOD.cycle();
         camload = null;
         try {
             if ((shake = shake * Math.pow(100, -dt)) < 0.01)
@@ -1715,6 +1775,14 @@ public class MapView extends PView implements DTarget, Console.Directory {
         }
 
         public void run() {
+            if (cpupick) {
+                Coord2d mc = cpumapclick(raypick(pc), null);
+                if (mc != null)
+                    hit(pc, mc);
+                else
+                    nohit(pc);
+                return;
+            }
             Environment env = ui.env;
             Render out = env.render();
             Pipe.Op basic = clickbasic(MapView.this.sz);
@@ -1754,6 +1822,17 @@ public class MapView extends PView implements DTarget, Console.Directory {
         }
 
         public void run() {
+            if (cpupick) {
+                RayPick ray = raypick(pc);
+                float[] tbuf = {1};
+                mapcl = cpumapclick(ray, tbuf);
+                objcl = (mapcl == null) ? null : cpugobclick(ray, tbuf[0]);
+                if (mapcl != null)
+                    hit(pc, mapcl, objcl);
+                else
+                    nohit(pc);
+                return;
+            }
             Environment env = ui.env;
             Render out = env.render();
             Pipe.Op basic = clickbasic(MapView.this.sz);
@@ -1784,6 +1863,8 @@ public class MapView extends PView implements DTarget, Console.Directory {
                  * latency, and it shouldn't really be a problem. */
                 new HackThread(() -> {
                     synchronized (ui) {
+                        if (pickcheck)
+                            pickcheck(pc, mapcl, objcl);
                         if (mapcl != null) {
                             if (objcl == null)
                                 hit(pc, mapcl, null);
@@ -2116,6 +2197,24 @@ public class MapView extends PView implements DTarget, Console.Directory {
                 }
             }
         });
+        cmdmap.put("pickbench", new Console.Command() {
+            public void run(Console cons, String[] args) throws Exception {
+                int n = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+                java.util.Random rnd = new java.util.Random(0);
+                int hits = 0;
+                double st = Utils.rtime();
+                for (int i = 0; i < n; i++) {
+                    RayPick ray = raypick(new Coord(rnd.nextInt(sz.x), rnd.nextInt(sz.y)));
+                    float[] tbuf = {1};
+                    if (cpumapclick(ray, tbuf) != null)
+                        hits++;
+                    if (cpugobclick(ray, tbuf[0]) != null)
+                        hits++;
+                }
+                double el = Utils.rtime() - st;
+                cons.out.printf("%d picks in %.3f s (%.1f picks/s, %d hits)\n", n, el, n / el, hits);
+            }
+        });
         cmdmap.put("whyload", new Console.Command() {
             public void run(Console cons, String[] args) throws Exception {
                 Loading l = lastload;
@@ -2142,5 +2241,15 @@ public class MapView extends PView implements DTarget, Console.Directory {
                 clickdb = Utils.parsebool(args[1], false);
             }
         });
+        Console.setscmd("cpupick", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefb("cpupick", cpupick = Utils.parsebool(args[1], false));
+            }
+        });
+        Console.setscmd("pickcheck", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                pickcheck = Utils.parsebool(args[1], false);
+            }
+        });
     }
 }
@@ -151,21 +151,127 @@ public abstract class Message {
     }
 
     public String string() {
+        int l = strlen();
+        String ret = new String(rbuf, rh, l, Utils.utf8);
+        rh += l + 1;
+        return (ret);
+    }
+
+    /* Strings that name things, such as resources or widget
+     * messages, come from a small set that the server sends over and
+     * over again. A StrTable maps their encoded bytes directly to a
+     * canonical, interned String, so that decoding a known name
+     * neither allocates nor needs a call to String.intern(). */
+    public static class StrTable {
+        private final int max;
+        private byte[][] keys = new byte[64][];
+        private String[] vals = new String[64];
+        private int n = 0;
+
+        public StrTable(int max, String... known) {
+            this.max = max;
+            for (String str : known) {
+                byte[] key = str.getBytes(Utils.utf8);
+                get(key, 0, key.length);
+            }
+        }
+
+        public StrTable(String... known) {
+            this(4096, known);
+        }
+
+        private static int hash(byte[] buf, int off, int len) {
+            int h = len;
+            for (int i = 0; i < len; i++)
+                h = (h * 31) + buf[off + i];
+            return (h ^ (h >>> 16));
+        }
+
+        private static boolean eq(byte[] key, byte[] buf, int off, int len) {
+            if (key.length != len)
+                return (false);
+            for (int i = 0; i < len; i++) {
+                if (key[i] != buf[off + i])
+                    return (false);
+            }
+            return (true);
+        }
+
+        private void put(byte[] key, String val) {
+            int m = keys.length - 1;
+            int i = hash(key, 0, key.length) & m;
+            while (keys[i] != null)
+                i = (i + 1) & m;
+            keys[i] = key;
+            vals[i] = val;
+        }
+
+        private void rehash() {
+            byte[][] okeys = keys;
+            String[] ovals = vals;
+            keys = new byte[okeys.length * 2][];
+            vals = new String[ovals.length * 2];
+            for (int i = 0; i < okeys.length; i++) {
+                if (okeys[i] != null)
+                    put(okeys[i], ovals[i]);
+            }
+        }
+
+        public synchronized String get(byte[] buf, int off, int len) {
+            int m = keys.length - 1;
+            for (int i = hash(buf, off, len) & m; keys[i] != null; i = (i + 1) & m) {
+                if (eq(keys[i], buf, off, len))
+                    return (vals[i]);
+            }
+            String ret = new String(buf, off, len, Utils.utf8).intern();
+            if (n < max) {
+                if ((n + 1) * 2 > keys.length)
+                    rehash();
+                put(Arrays.copyOfRange(buf, off, off + len), ret);
+                n++;
+            }
+            return (ret);
+        }
+
+        public synchronized int size() {
+            return (n);
+        }
+    }
+
+    private int strlen() {
         int l = 0;
         while (true) {
             if (l >= rt - rh) {
                 if (!underflow(256))
                     throw (new EOF("Found no NUL (at length " + l + ")"));
             }
-            if (rbuf[l + rh] == 0) {
-                String ret = new String(rbuf, rh, l, Utils.utf8);
-                rh += l + 1;
-                return (ret);
-            }
+            if (rbuf[l + rh] == 0)
+                return (l);
             l++;
         }
     }
 
+    public String string(StrTable tab) {
+        int l = strlen();
+        String ret = tab.get(rbuf, rh, l);
+        rh += l + 1;
+        return (ret);
+    }
+
+    /* Compares the next string against a pre-encoded key without
+     * decoding it, and consumes it only if it matches. */
+    public boolean string(byte[] key) {
+        int l = strlen();
+        if (!StrTable.eq(key, rbuf, rh, l))
+            return (false);
+        rh += l + 1;
+        return (true);
+    }
+
+    public void skipstring() {
+        rh += strlen() + 1;
+    }
+
     public void skip(int n) {
         while (n > 0) {
             if (rh >= rt) {
@@ -218,6 +324,19 @@ public abstract class Message {
         return (new Coord(int32(), int32()));
     }
 
+    public Coord coord(Coord into) {
+        into.x = int32();
+        into.y = int32();
+        return (into);
+    }
+
+    /* Decodes an integer coordinate directly into world units,
+     * without going through an intermediate Coord. */
+    public Coord2d coordmul(Coord2d scale) {
+        int x = int32(), y = int32();
+        return (new Coord2d(x * scale.x, y * scale.y));
+    }
+
     public Color color() {
         return (new Color(uint8(), uint8(), uint8(), uint8()));
     }
@@ -269,8 +388,29 @@ public abstract class Message {
         return (uint32() / 0xffffffffp0);
     }
 
+    /* Arguments are decoded into a per-thread scratch buffer and
+     * copied out once their number is known, so that decoding a list
+     * allocates little more than the returned array. Nested lists
+     * use the part of the buffer after their parent's arguments. */
+    private static class ListBuf {
+        Object[] b = new Object[64];
+
+        int put(int n, Object v) {
+            if (n >= b.length)
+                b = Arrays.copyOf(b, b.length * 2);
+            b[n] = v;
+            return (n + 1);
+        }
+    }
+
+    private static final ThreadLocal<ListBuf> listbuf = ThreadLocal.withInitial(ListBuf::new);
+
     public Object[] list() {
-        ArrayList<Object> ret = new ArrayList<Object>();
+        return (list(listbuf.get(), 0));
+    }
+
+    private Object[] list(ListBuf ret, int base) {
+        int n = base;
         list:
         while (true) {
             if (eom())
@@ -280,61 +420,156 @@ public abstract class Message {
                 case T_END:
                     break list;
                 case T_INT:
-                    ret.add(int32());
+                    n = ret.put(n, int32());
                     break;
                 case T_STR:
-                    ret.add(string());
+                    n = ret.put(n, string());
                     break;
                 case T_COORD:
-                    ret.add(coord());
+                    n = ret.put(n, coord());
                     break;
                 case T_UINT8:
-                    ret.add(uint8());
+                    n = ret.put(n, uint8());
                     break;
                 case T_UINT16:
-                    ret.add(uint16());
+                    n = ret.put(n, uint16());
                     break;
                 case T_INT8:
-                    ret.add(int8());
+                    n = ret.put(n, int8());
                     break;
                 case T_INT16:
-                    ret.add(int16());
+                    n = ret.put(n, int16());
                     break;
                 case T_COLOR:
-                    ret.add(color());
+                    n = ret.put(n, color());
                     break;
                 case T_TTOL:
-                    ret.add(list());
+                    n = ret.put(n, list(ret, n));
                     break;
                 case T_NIL:
-                    ret.add(null);
+                    n = ret.put(n, null);
                     break;
                 case T_UID:
-                    ret.add(int64());
+                    n = ret.put(n, int64());
                     break;
                 case T_BYTES:
                     int len = uint8();
                     if ((len & 128) != 0)
                         len = int32();
-                    ret.add(bytes(len));
+                    n = ret.put(n, bytes(len));
                     break;
                 case T_FLOAT32:
-                    ret.add(float32());
+                    n = ret.put(n, float32());
                     break;
                 case T_FLOAT64:
-                    ret.add(float64());
+                    n = ret.put(n, float64());
                     break;
                 case T_FCOORD32:
-                    ret.add(new Coord2d(float32(), float32()));
+                    n = ret.put(n, new Coord2d(float32(), float32()));
                     break;
                 case T_FCOORD64:
-                    ret.add(new Coord2d(float64(), float64()));
+                    n = ret.put(n, new Coord2d(float64(), float64()));
+                    break;
+                default:
+                    throw (new FormatError("Encountered unknown type " + t + " in TTO list."));
+            }
+        }
+        Object[] args = Arrays.copyOfRange(ret.b, base, n);
+        Arrays.fill(ret.b, base, n, null);
+        return (args);
+    }
+
+    /* Receives the values of a list as they are decoded, instead of
+     * having them boxed into an array. All integer types are passed
+     * to integer(), and both float types to real(). For strings,
+     * byte arrays and sublists, the message is positioned at the value,
+     * which the visitor must consume completely; the defaults skip
+     * it. */
+    public interface ListVisitor {
+        public static final ListVisitor skip = new ListVisitor() {};
+
+        public default void nil() {}
+        public default void integer(int v) {}
+        public default void uid(long v) {}
+        public default void real(double v) {}
+        public default void coord(int x, int y) {}
+        public default void fcoord(double x, double y) {}
+        public default void color(int r, int g, int b, int a) {}
+        public default void string(Message msg) {msg.skipstring();}
+        public default void bytes(Message msg, int len) {msg.skip(len);}
+        public default void list(Message msg) {msg.list(skip);}
+    }
+
+    public void list(ListVisitor v) {
+        while (!eom()) {
+            int t = uint8();
+            switch (t) {
+                case T_END:
+                    return;
+                case T_INT:
+                    v.integer(int32());
+                    break;
+                case T_STR:
+                    v.string(this);
+                    break;
+                case T_COORD: {
+                    int x = int32(), y = int32();
+                    v.coord(x, y);
+                    break;
+                }
+                case T_UINT8:
+                    v.integer(uint8());
+                    break;
+                case T_UINT16:
+                    v.integer(uint16());
+                    break;
+                case T_INT8:
+                    v.integer(int8());
+                    break;
+                case T_INT16:
+                    v.integer(int16());
                     break;
+                case T_COLOR: {
+                    int r = uint8(), g = uint8(), b = uint8(), a = uint8();
+                    v.color(r, g, b, a);
+                    break;
+                }
+                case T_TTOL:
+                    v.list(this);
+                    break;
+                case T_NIL:
+                    v.nil();
+                    break;
+                case T_UID:
+                    v.uid(int64());
+                    break;
+                case T_BYTES: {
+                    int len = uint8();
+                    if ((len & 128) != 0)
+                        len = int32();
+                    v.bytes(this, len);
+                    break;
+                }
+                case T_FLOAT32:
+                    v.real(float32());
+                    break;
+                case T_FLOAT64:
+                    v.real(float64());
+                    break;
+                case T_FCOORD32: {
+                    double x = float32(), y = float32();
+                    v.fcoord(x, y);
+                    break;
+                }
+                case T_FCOORD64: {
+                    double x = float64(), y = float64();
+                    v.fcoord(x, y);
+                    break;
+                }
                 default:
                     throw (new FormatError("Encountered unknown type " + t + " in TTO list."));
             }
         }
-        return (ret.toArray());
     }
 
     public abstract void overflow(int min);
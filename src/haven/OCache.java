@@ -108,21 +108,29 @@ public class OCache implements Iterable<Gob> {
         }
     }
 
-    public void ctick(double dt) {
+    private void each(Consumer<Gob> task) {
         ArrayList<Gob> copy = new ArrayList<Gob>();
         synchronized (this) {
             for (Gob g : this)
                 copy.add(g);
         }
-        Consumer<Gob> task = g -> {
+        Consumer<Gob> locked = g -> {
             synchronized (g) {
-                g.ctick(dt);
+                task.accept(g);
             }
         };
         if (!Config.par)
-            copy.forEach(task);
+            copy.forEach(locked);
         else
-            copy.parallelStream().forEach(task);
+            copy.parallelStream().forEach(locked);
+    }
+
+    public void simtick(double dt) {
+        each(g -> g.simtick(dt));
+    }
+
+    public void settle() {
+        each(Gob::settle);
     }
 
     public void gtick(Render g) {
@@ -221,7 +229,7 @@ public class OCache implements Iterable<Gob> {
     }
 
     public Delta move(Message msg) {
-        Coord2d c = msg.coord().mul(posres);
+        Coord2d c = msg.coordmul(posres);
         int ia = msg.uint16();
         return (gob -> move(gob, c, (ia / 65536.0) * Math.PI * 2));
     }
@@ -258,8 +266,8 @@ public class OCache implements Iterable<Gob> {
     }
 
     public Delta linbeg(Message msg) {
-        Coord2d s = msg.coord().mul(posres);
-        Coord2d v = msg.coord().mul(posres);
+        Coord2d s = msg.coordmul(posres);
+        Coord2d v = msg.coordmul(posres);
         return (gob -> linbeg(gob, s, v));
     }
 
@@ -536,7 +544,7 @@ public class OCache implements Iterable<Gob> {
         if (oid == 0xffffffffl) {
             return (gob -> homostop(gob));
         } else {
-            Coord2d tgtc = msg.coord().mul(posres);
+            Coord2d tgtc = msg.coordmul(posres);
             double v = msg.int32() * 0x1p-10 * 11;
             return (gob -> homing(gob, oid, tgtc, v));
         }
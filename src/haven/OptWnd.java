@@ -572,6 +572,7 @@ public class OptWnd extends Window {
 
     public OptWnd(boolean gopts) {
         super(Coord.z, "Options", true);
+        retain = true;
         main = add(new Panel());
         camera = add(new CameraPanel(main));
         userinterface = add(new UIPanel(main));
@@ -33,6 +33,10 @@ import haven.RenderContext.PostProcessor;
 import haven.render.Texture2D.Sampler2D;
 
 public abstract class PView extends Widget {
+    /* Deliver render-tree changes to the render lists once per frame
+     * instead of as they are made. Applies to views created after it
+     * is changed. */
+    public static boolean rtjournal = Utils.getprefb("rtjournal", false);
     public final RenderTree tree;
     public final RenderTree.Slot conf;
     public final RenderTree.Slot basic;
@@ -51,7 +55,7 @@ public abstract class PView extends Widget {
 
     public PView(Coord sz) {
         super(sz);
-        tree = new RenderTree();
+        tree = new RenderTree(rtjournal);
         tree.add(list2d, Render2D.class);
         tree.add(ticklist, TickList.TickNode.class);
         conf = tree.add((RenderTree.Node) null);
@@ -240,11 +244,15 @@ public abstract class PView extends Widget {
         }
         Iterator<PostProcessor> post = copy.iterator();
         PostProcessor next = post.hasNext() ? post.next() : null;
-        resolveout(g, next).image(new TexRaw(fragsamp, true), Coord.z);
+        GOut rout = resolveout(g, next);
+        rout.image(new TexRaw(fragsamp, true), Coord.z);
+        rout.flush();
         while (next != null) {
             PostProcessor cur = next;
             next = post.hasNext() ? post.next() : null;
-            cur.run(resolveout(g, next), cur.buf);
+            GOut out = resolveout(g, next);
+            cur.run(out, cur.buf);
+            out.flush();
         }
     }
 
@@ -280,6 +288,7 @@ public abstract class PView extends Widget {
     }
 
     public void draw(GOut g) {
+        g.flush();
         if ((back == null) || !back.compatible(g.out.env())) {
             if (env != null) {
                 envdispose();
@@ -288,6 +297,7 @@ public abstract class PView extends Widget {
             env = g.out.env();
             envsetup();
         }
+        tree.flush();
         lights();
         FColor cc = clearcolor();
         if (cc != null)
@@ -386,4 +396,12 @@ public abstract class PView extends Widget {
         public void update(Pipe group, int[] statemask) {
         }
     }
+
+    static {
+        Console.setscmd("rtjournal", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefb("rtjournal", rtjournal = Utils.parsebool(args[1], false));
+            }
+        });
+    }
 }
@@ -35,12 +35,15 @@ import haven.Skeleton.Pose;
 
 public class PoseMorph implements Morpher.Factory {
     public final Pose pose;
-    private float[][] offs;
-    private int seq = -1;
+    public static int parbatch = 4096;
+    private float[] offs, poffs;
+    private boolean[] dirty = null;
+    private int seq = -1, lseq = -1;
 
     public PoseMorph(Pose pose) {
         this.pose = pose;
-        offs = new float[pose.skel().blist.length][16];
+        offs = new float[pose.skel().blist.length * 16];
+        poffs = new float[offs.length];
     }
 
     public static boolean boned(FastMesh mesh) {
@@ -77,9 +80,86 @@ public class PoseMorph implements Morpher.Factory {
     private void update() {
         if (seq == pose.seq)
             return;
+        float[] prev = offs;
+        float[] cur = pose.palette(poffs);
+        int nb = pose.skel().blist.length;
+        boolean[] dirty = (this.dirty == null) ? new boolean[nb] : this.dirty;
+        for (int b = 0, x = 0; b < nb; b++, x += 16) {
+            boolean d = false;
+            for (int i = 0; i < 16; i++) {
+                if (cur[x + i] != prev[x + i]) {
+                    d = true;
+                    break;
+                }
+            }
+            dirty[b] = d;
+        }
+        this.dirty = dirty;
+        poffs = prev;
+        offs = cur;
+        lseq = seq;
         seq = pose.seq;
-        for (int i = 0; i < offs.length; i++)
-            pose.boneoff(i, offs[i]);
+    }
+
+    /* Per-target state of skinned output, kept so that only vertices
+     * influenced by bones that moved need to be re-skinned. */
+    private static class Skinned {
+        final float[] out;
+        final int[] vstamp;
+        int seq = Integer.MIN_VALUE, stamp = 0;
+
+        Skinned(int num) {
+            out = new float[num * 3];
+            vstamp = new int[num];
+        }
+    }
+
+    /* One skinning cache per morphed attribute of the buffer,
+     * keyed by its source data. */
+    private static Map<FloatBuffer, Skinned> skincache(MorphedBuf vb) {
+        Map<FloatBuffer, Skinned> ret = new IdentityHashMap<>(2);
+        for (VertexBuf.AttribData buf : vb.bufs) {
+            if (!(buf instanceof MorphedMesh.MorphData) || !(buf instanceof VertexBuf.FloatData))
+                continue;
+            MorphedMesh.MorphType type = ((MorphedMesh.MorphData) buf).morphtype();
+            if ((type == MorphedMesh.MorphType.POS) || (type == MorphedMesh.MorphType.DIR))
+                ret.put(((VertexBuf.FloatData) buf).data, new Skinned(vb.num));
+        }
+        return (ret);
+    }
+
+    /* Writes absolutely from the start of dst, leaving its position
+     * untouched, as Morpher implementations are expected to. */
+    private static void put(FloatBuffer dst, float[] data) {
+        FloatBuffer d = dst.duplicate();
+        d.position(0);
+        d.put(data);
+    }
+
+    private static int[][] bverts(BoneData ba, int num, int nb) {
+        int apv = ba.elfmt.nc;
+        int[] n = new int[nb];
+        for (int v = 0; v < num; v++) {
+            for (int o = 0; o < apv; o++) {
+                int bi = ba.data.get((v * apv) + o);
+                if (bi < 0)
+                    break;
+                n[bi]++;
+            }
+        }
+        int[][] ret = new int[nb][];
+        for (int b = 0; b < nb; b++)
+            ret[b] = new int[n[b]];
+        Arrays.fill(n, 0);
+        for (int v = 0; v < num; v++) {
+            for (int o = 0; o < apv; o++) {
+                int bi = ba.data.get((v * apv) + o);
+                if (bi < 0)
+                    break;
+                ret[bi][n[bi]++] = v;
+            }
+        }
+        return (ret);
     }
 
     public static class BoneData extends VertexBuf.IntData implements MorphedMesh.MorphData {
@@ -179,6 +259,11 @@ public class PoseMorph implements Morpher.Factory {
         }
         return (new Morpher() {
             private int pseq = -1;
+            private final BoneData ba = vb.buf(BoneData.class);
+            private final FloatBuffer wl = vb.buf(WeightData.class).data;
+            private final int[][] bverts = bverts(ba, vb.num, pose.skel().blist.length);
+            private final Map<FloatBuffer, Skinned> skinned = skincache(vb);
+            private final Skinned chained = new Skinned(vb.num);
 
             public boolean update() {
                 if (pseq == pose.seq)
@@ -188,68 +273,100 @@ public class PoseMorph implements Morpher.Factory {
                 return (true);
             }
 
-            public void morphp(FloatBuffer dst, FloatBuffer src) {
-                BoneData ba = vb.buf(BoneData.class);
+
+            private void skin(float[] out, FloatBuffer src, int from, int to, boolean pos) {
                 int apv = ba.elfmt.nc;
                 IntBuffer bl = ba.data;
-                FloatBuffer wl = vb.buf(WeightData.class).data;
-                int vo = 0, ao = 0;
-                for (int i = 0; i < vb.num; i++) {
-                    float opx = src.get(vo), opy = src.get(vo + 1), opz = src.get(vo + 2);
-                    float npx = 0, npy = 0, npz = 0;
+                float[] xf = offs;
+                for (int i = from; i < to; i++) {
+                    int vo = i * 3, ao = i * apv;
+                    float ox = src.get(vo), oy = src.get(vo + 1), oz = src.get(vo + 2);
+                    float nx = 0, ny = 0, nz = 0;
                     float rw = 1;
                     for (int o = 0; o < apv; o++) {
                         int bi = bl.get(ao + o);
                         if (bi < 0)
                             break;
                         float bw = wl.get(ao + o);
-                        float[] xf = offs[bi];
-                        npx += ((xf[0] * opx) + (xf[4] * opy) + (xf[8] * opz) + xf[12]) * bw;
-                        npy += ((xf[1] * opx) + (xf[5] * opy) + (xf[9] * opz) + xf[13]) * bw;
-                        npz += ((xf[2] * opx) + (xf[6] * opy) + (xf[10] * opz) + xf[14]) * bw;
+                        int x = bi << 4;
+                        float tx = 0, ty = 0, tz = 0;
+                        if (pos) {
+                            tx = xf[x + 12];
+                            ty = xf[x + 13];
+                            tz = xf[x + 14];
+                        }
+                        nx += ((xf[x + 0] * ox) + (xf[x + 4] * oy) + (xf[x + 8] * oz) + tx) * bw;
+                        ny += ((xf[x + 1] * ox) + (xf[x + 5] * oy) + (xf[x + 9] * oz) + ty) * bw;
+                        nz += ((xf[x + 2] * ox) + (xf[x + 6] * oy) + (xf[x + 10] * oz) + tz) * bw;
                         rw -= bw;
                     }
-                    npx += opx * rw;
-                    npy += opy * rw;
-                    npz += opz * rw;
-                    dst.put(vo, npx);
-                    dst.put(vo + 1, npy);
-                    dst.put(vo + 2, npz);
-                    vo += 3;
-                    ao += apv;
+                    out[vo] = nx + (ox * rw);
+                    out[vo + 1] = ny + (oy * rw);
+                    out[vo + 2] = nz + (oz * rw);
                 }
             }
 
-            public void morphd(FloatBuffer dst, FloatBuffer src) {
-                BoneData ba = vb.buf(BoneData.class);
-                int apv = ba.elfmt.nc;
-                IntBuffer bl = ba.data;
-                FloatBuffer wl = vb.buf(WeightData.class).data;
-                int vo = 0, ao = 0;
-                for (int i = 0; i < vb.num; i++) {
-                    float onx = src.get(vo), ony = src.get(vo + 1), onz = src.get(vo + 2);
-                    float nnx = 0, nny = 0, nnz = 0;
-                    float rw = 1;
-                    for (int o = 0; o < apv; o++) {
-                        int bi = bl.get(ao + o);
-                        if (bi < 0)
-                            break;
-                        float bw = wl.get(ao + o);
-                        float[] xf = offs[bi];
-                        nnx += ((xf[0] * onx) + (xf[4] * ony) + (xf[8] * onz)) * bw;
-                        nny += ((xf[1] * onx) + (xf[5] * ony) + (xf[9] * onz)) * bw;
-                        nnz += ((xf[2] * onx) + (xf[6] * ony) + (xf[10] * onz)) * bw;
-                        rw -= bw;
+            private void skinall(float[] out, FloatBuffer src, boolean pos) {
+                int num = vb.num;
+                if (!Config.par || (num < parbatch * 2)) {
+                    skin(out, src, 0, num, pos);
+                } else {
+                    int nb = (num + parbatch - 1) / parbatch;
+                    java.util.stream.IntStream.range(0, nb).parallel()
+                            .forEach(b -> skin(out, src, b * parbatch, Math.min((b + 1) * parbatch, num), pos));
+                }
+            }
+
+            private void morph(FloatBuffer dst, FloatBuffer src, boolean pos) {
+                Skinned sk = skinned.get(src);
+                if (sk == null) {
+                    /* The source is not one of the buffer's own
+                     * attributes, as when chained after another
+                     * Morpher, so it cannot be assumed unchanged. */
+                    synchronized (chained) {
+                        skinall(chained.out, src, pos);
+                        put(dst, chained.out);
                     }
-                    nnx += onx * rw;
-                    nny += ony * rw;
-                    nnz += onz * rw;
-                    dst.put(vo, nnx);
-                    dst.put(vo + 1, nny);
-                    dst.put(vo + 2, nnz);
-                    vo += 3;
-                    ao += apv;
+                    return;
                 }
+                synchronized (sk) {
+                    if (sk.seq != seq) {
+                        boolean full = (sk.seq != lseq) || (dirty == null);
+                        if (!full) {
+                            int nv = 0;
+                            for (int b = 0; b < bverts.length; b++) {
+                                if (dirty[b])
+                                    nv += bverts[b].length;
+                            }
+                            full = nv * 2 > vb.num;
+                        }
+                        if (full) {
+                            skinall(sk.out, src, pos);
+                        } else {
+                            int stamp = ++sk.stamp;
+                            for (int b = 0; b < bverts.length; b++) {
+                                if (!dirty[b])
+                                    continue;
+                                for (int v : bverts[b]) {
+                                    if (sk.vstamp[v] != stamp) {
+                                        sk.vstamp[v] = stamp;
+                                        skin(sk.out, src, v, v + 1, pos);
+                                    }
+                                }
+                            }
+                        }
+                        sk.seq = seq;
+                    }
+                    put(dst, sk.out);
+                }
+            }
+
+            public void morphp(FloatBuffer dst, FloatBuffer src) {
+                morph(dst, src, true);
+            }
+
+            public void morphd(FloatBuffer dst, FloatBuffer src) {
+                morph(dst, src, false);
             }
         });
     }
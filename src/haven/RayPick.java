@@ -0,0 +1,185 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.nio.*;
+import haven.render.*;
+
+import static haven.MCache.tilesz;
+
+/* CPU-side replacement for the ID-buffer readback used for clicking
+ * in MapView. Rays are expressed in world (render) coordinates, that
+ * is, with the Y axis inverted relative to map coordinates, and
+ * parametrized such that t = 0 is on the near plane and t = 1 is on
+ * the far plane. */
+public class RayPick {
+    public static final int refine = 8;
+    public final Coord3f o, d;
+
+    public RayPick(Coord3f o, Coord3f d) {
+        this.o = o;
+        this.d = d;
+    }
+
+    public static RayPick unproject(Matrix4f prj, Matrix4f cam, Area view, Coord sc) {
+        Matrix4f inv = prj.mul(cam).invert();
+        if (inv == null)
+            return (null);
+        Coord sz = view.sz();
+        /* Sample the pixel center, just like a fragment would. */
+        float nx = (((2.0f * (sc.x - view.ul.x)) + 1.0f) / sz.x) - 1.0f;
+        float ny = 1.0f - (((2.0f * (sc.y - view.ul.y)) + 1.0f) / sz.y);
+        float[] n = inv.mul4(new float[]{nx, ny, -1, 1});
+        float[] f = inv.mul4(new float[]{nx, ny, 1, 1});
+        Coord3f nc = new Coord3f(n[0] / n[3], n[1] / n[3], n[2] / n[3]);
+        Coord3f fc = new Coord3f(f[0] / f[3], f[1] / f[3], f[2] / f[3]);
+        return (new RayPick(nc, fc.sub(nc)));
+    }
+
+    public Coord3f at(float t) {
+        return (new Coord3f(o.x + (d.x * t), o.y + (d.y * t), o.z + (d.z * t)));
+    }
+
+    public Coord2d mapc(float t) {
+        return (new Coord2d(o.x + (d.x * t), -(o.y + (d.y * t))));
+    }
+
+    /* Returns the terrain height difference at t, or NaN if the map
+     * is not available there. */
+    private float above(MCache map, float t) {
+        float x = o.x + (d.x * t), y = o.y + (d.y * t), z = o.z + (d.z * t);
+        try {
+            return (z - (float) map.getcz(x, -y));
+        } catch (Loading l) {
+            return (Float.NaN);
+        }
+    }
+
+    /* Marches along the ray in steps of a fraction of a tile until
+     * it passes below the terrain, and then bisects for the crossing
+     * point. Returns NaN if the terrain is not hit before maxt. */
+    public float terrain(MCache map, float maxt) {
+        float len = d.abs();
+        if (len <= 0)
+            return (Float.NaN);
+        float step = (float) (tilesz.x / 4) / len;
+        float pt = 0, pd = above(map, 0);
+        for (float t = step; pt < maxt; pt = t, t += step) {
+            if (t > maxt)
+                t = maxt;
+            float cd = above(map, t);
+            if (!Float.isNaN(cd) && (cd <= 0)) {
+                if (Float.isNaN(pd))
+                    return (t);
+                float a = pt, b = t;
+                for (int i = 0; i < refine; i++) {
+                    float m = (a + b) * 0.5f;
+                    float md = above(map, m);
+                    if (Float.isNaN(md) || (md > 0))
+                        a = m;
+                    else
+                        b = m;
+                }
+                return (b);
+            }
+            pd = cd;
+        }
+        return (Float.NaN);
+    }
+
+    private static float slab(float o, float d, float lo, float hi, float[] iv) {
+        if (d == 0)
+            return (((o < lo) || (o > hi)) ? -1 : 1);
+        float t1 = (lo - o) / d, t2 = (hi - o) / d;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
+        }
+        if (t1 > iv[0]) iv[0] = t1;
+        if (t2 < iv[1]) iv[1] = t2;
+        return (iv[1] - iv[0]);
+    }
+
+    /* Intersects the (object-space) ray o + d * t with the given
+     * axis-aligned box. Returns the entry parameter, or NaN on a
+     * miss. */
+    public static float box(Coord3f o, Coord3f d, Coord3f nb, Coord3f pb, float maxt) {
+        float[] iv = {0, maxt};
+        if ((slab(o.x, d.x, nb.x, pb.x, iv) < 0) ||
+                (slab(o.y, d.y, nb.y, pb.y, iv) < 0) ||
+                (slab(o.z, d.z, nb.z, pb.z, iv) < 0))
+            return (Float.NaN);
+        return (iv[0]);
+    }
+
+    private static float tri(Coord3f o, Coord3f d, FloatBuffer v, int a, int b, int c) {
+        float ax = v.get(a), ay = v.get(a + 1), az = v.get(a + 2);
+        float e1x = v.get(b) - ax, e1y = v.get(b + 1) - ay, e1z = v.get(b + 2) - az;
+        float e2x = v.get(c) - ax, e2y = v.get(c + 1) - ay, e2z = v.get(c + 2) - az;
+        float px = (d.y * e2z) - (d.z * e2y), py = (d.z * e2x) - (d.x * e2z), pz = (d.x * e2y) - (d.y * e2x);
+        float det = (e1x * px) + (e1y * py) + (e1z * pz);
+        if ((det > -1e-9f) && (det < 1e-9f))
+            return (Float.NaN);
+        float id = 1.0f / det;
+        float sx = o.x - ax, sy = o.y - ay, sz = o.z - az;
+        float u = ((sx * px) + (sy * py) + (sz * pz)) * id;
+        if ((u < 0) || (u > 1))
+            return (Float.NaN);
+        float qx = (sy * e1z) - (sz * e1y), qy = (sz * e1x) - (sx * e1z), qz = (sx * e1y) - (sy * e1x);
+        float w = ((d.x * qx) + (d.y * qy) + (d.z * qz)) * id;
+        if ((w < 0) || ((u + w) > 1))
+            return (Float.NaN);
+        return (((e2x * qx) + (e2y * qy) + (e2z * qz)) * id);
+    }
+
+    /* Intersects the ray with a mesh placed by the world transform
+     * xf, first against its bounding box and then against each of
+     * its triangles. Morphed meshes are tested in their bind pose. */
+    public float mesh(Matrix4f xf, FastMesh m, float maxt) {
+        Matrix4f inv = xf.invert();
+        if (inv == null)
+            return (Float.NaN);
+        Coord3f lo = inv.mul4(o);
+        Coord3f ld = inv.mul4(o.add(d)).sub(lo);
+        Coord3f nb = m.nbounds(), pb = m.pbounds();
+        if ((nb == null) || Float.isNaN(box(lo, ld, nb, pb, maxt)))
+            return (Float.NaN);
+        VertexBuf.VertexData vbuf = m.vert.buf(VertexBuf.VertexData.class);
+        if (vbuf == null)
+            return (Float.NaN);
+        FloatBuffer v = vbuf.data;
+        ShortBuffer ind = m.indb;
+        float ret = Float.NaN;
+        for (int i = 0; i < m.num * 3; i += 3) {
+            float t = tri(lo, ld, v, (ind.get(i) & 0xffff) * 3, (ind.get(i + 1) & 0xffff) * 3, (ind.get(i + 2) & 0xffff) * 3);
+            if ((t >= 0) && (t <= maxt) && !(t >= ret))
+                ret = t;
+        }
+        return (ret);
+    }
+}
@@ -26,9 +26,69 @@
 
 package haven;
 
+import java.util.*;
+
 public class RemoteUI implements UI.Receiver, UI.Runner {
+    /* Longest time, in milliseconds, that UI messages are applied
+     * for while holding the UI lock. Whatever remains after that is
+     * left until the UI has ticked again, so that a burst of messages
+     * is spread over several frames instead of stalling one. */
+    public static int slicetime = Utils.getprefi("uislice", 4);
+    /* Widget types and message names, decoded straight to their
+     * interned forms. */
+    private static final Message.StrTable names = new Message.StrTable();
+    /* Widget messages that only replace state, by the widget type
+     * they are sent to, so that when several of them for the same
+     * widget are queued back to back, only the last one needs to be
+     * applied. Types have to opt in, since the same message name can
+     * carry keyed updates to other widgets, like "tt" to the fight
+     * move list. */
+    private static final Map<String, Set<String>> coalesce = new HashMap<>();
     Session sess, ret;
     UI ui;
+    private final ArrayDeque<Pending> backlog = new ArrayDeque<>();
+    private final Map<Integer, String> wtypes = new HashMap<>();
+    private int napplied, ncoalesced, nslices;
+    private int maxbacklog;
+    private double maxslice, statsince = Utils.rtime();
+    private String stats = "";
+
+    public static void coalesce(String type, String... msgs) {
+        synchronized (coalesce) {
+            coalesce.computeIfAbsent(type, k -> new HashSet<>()).addAll(Arrays.asList(msgs));
+        }
+    }
+
+    public static boolean coalesces(String type, String msg) {
+        synchronized (coalesce) {
+            Set<String> msgs = coalesce.get(type);
+            return ((msgs != null) && msgs.contains(msg));
+        }
+    }
+
+    static {
+        coalesce("item", "tt", "num", "meter");
+        coalesce("buff", "tt", "tip");
+        coalesce("gameui", "prog");
+        coalesce("im", "set");
+        Console.setscmd("uislice", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefi("uislice", slicetime = Math.max(Integer.parseInt(args[1]), 0));
+            }
+        });
+    }
+
+    private static class Pending {
+        final int type, id;
+        String name;
+        int parent;
+        Object[] pargs, cargs;
+
+        Pending(int type, int id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
 
     public RemoteUI(Session sess) {
         this.sess = sess;
@@ -50,35 +110,96 @@ public class RemoteUI implements UI.Receiver, UI.Runner {
         }
     }
 
+    /* Decodes queued messages outside of the UI lock. Widget types are
+     * resolved here as well, since resource-defined ones may have to
+     * wait for their resource to load. */
+    private void fetch() throws InterruptedException {
+        PMessage msg;
+        while ((msg = sess.getuimsg()) != null) {
+            Pending p = new Pending(msg.type, msg.uint16());
+            if (msg.type == RMessage.RMSG_NEWWDG) {
+                p.name = msg.string(names);
+                p.parent = msg.uint16();
+                p.pargs = msg.list();
+                p.cargs = msg.list();
+                Widget.gettype2(p.name);
+                wtypes.put(p.id, p.name);
+            } else if (msg.type == RMessage.RMSG_WDGMSG) {
+                p.name = msg.string(names);
+                p.cargs = msg.list();
+                Pending last = backlog.peekLast();
+                if ((last != null) && (last.type == RMessage.RMSG_WDGMSG) && (last.id == p.id) &&
+                        (last.name == p.name) && coalesces(wtypes.get(p.id), p.name)) {
+                    backlog.pollLast();
+                    ncoalesced++;
+                }
+            } else if (msg.type == RMessage.RMSG_DSTWDG) {
+                wtypes.remove(p.id);
+            } else if (msg.type == RMessage.RMSG_ADDWDG) {
+                p.parent = msg.uint16();
+                p.pargs = msg.list();
+            }
+            backlog.add(p);
+        }
+        maxbacklog = Math.max(maxbacklog, backlog.size());
+    }
+
+    private void apply(Pending p) throws InterruptedException {
+        if (p.type == RMessage.RMSG_NEWWDG) {
+            ui.newwidget(p.id, p.name, p.parent, p.pargs, p.cargs);
+        } else if (p.type == RMessage.RMSG_WDGMSG) {
+            ui.uimsg(p.id, p.name, p.cargs);
+        } else if (p.type == RMessage.RMSG_DSTWDG) {
+            ui.destroy(p.id);
+        } else if (p.type == RMessage.RMSG_ADDWDG) {
+            ui.addwidget(p.id, p.parent, p.pargs);
+        }
+    }
+
+    /* Applies queued messages until the time slice runs out. Must be
+     * called with the UI locked. */
+    private void slice() throws InterruptedException {
+        double st = Utils.rtime(), end = st + (slicetime / 1000.0);
+        Pending p;
+        while ((p = backlog.poll()) != null) {
+            apply(p);
+            napplied++;
+            if (Utils.rtime() >= end)
+                break;
+        }
+        maxslice = Math.max(maxslice, Utils.rtime() - st);
+        nslices++;
+    }
+
+    private void updstats() {
+        double now = Utils.rtime();
+        if (now - statsince >= 1) {
+            stats = String.format("%d msgs/s (%d coalesced), %d slices, backlog %d, worst slice %.1f ms",
+                    napplied, ncoalesced, nslices, maxbacklog, maxslice * 1000);
+            napplied = ncoalesced = nslices = maxbacklog = 0;
+            maxslice = 0;
+            statsince = now;
+        }
+    }
+
+    public String stats() {
+        return (stats);
+    }
+
     public Session run(UI ui) throws InterruptedException {
         this.ui = ui;
         ui.setreceiver(this);
         while (true) {
-            PMessage msg;
-            synchronized (ui) {
-                while ((msg = sess.getuimsg()) != null) {
-                    if (msg.type == RMessage.RMSG_NEWWDG) {
-                        int id = msg.uint16();
-                        String type = msg.string();
-                        int parent = msg.uint16();
-                        Object[] pargs = msg.list();
-                        Object[] cargs = msg.list();
-                        ui.newwidget(id, type, parent, pargs, cargs);
-                    } else if (msg.type == RMessage.RMSG_WDGMSG) {
-                        int id = msg.uint16();
-                        String name = msg.string();
-                        ui.uimsg(id, name, msg.list());
-                    } else if (msg.type == RMessage.RMSG_DSTWDG) {
-                        int id = msg.uint16();
-                        ui.destroy(id);
-                    } else if (msg.type == RMessage.RMSG_ADDWDG) {
-                        int id = msg.uint16();
-                        int parent = msg.uint16();
-                        Object[] pargs = msg.list();
-                        ui.addwidget(id, parent, pargs);
-                    }
+            fetch();
+            while (!backlog.isEmpty()) {
+                synchronized (ui) {
+                    slice();
+                    if (!backlog.isEmpty())
+                        ui.waittick(0.1);
                 }
+                fetch();
             }
+            updstats();
             synchronized (sess) {
                 if (ret != null) {
                     sess.close();
@@ -86,7 +207,7 @@ public class RemoteUI implements UI.Receiver, UI.Runner {
                 }
                 if (!sess.alive())
                     return (null);
-                sess.wait();
+                sess.wait(1000);
             }
         }
     }
@@ -0,0 +1,208 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.lang.reflect.*;
+
+/* Replays a burst of UI messages, like those of a large container
+ * opening, through RemoteUI against a UI stand-in whose handlers take
+ * a fixed time, and reports the worst time the frame loop had to
+ * wait for the UI lock at each slice time. Also checks that only
+ * opted-in replacement messages are coalesced, and that keyed ones,
+ * like the fight move list's "tt", are all applied. Run as
+ *   ReplayCheck [ITEMS] */
+public class ReplayCheck {
+    static sun.misc.Unsafe unsafe;
+    static final int fmgid = 60000, nmoves = 5;
+
+    static void spin(long ns) {
+        long e = System.nanoTime() + ns;
+        while (System.nanoTime() < e);
+    }
+
+    public static class TestUI extends UI {
+        int applied;
+        final List<String> msgs = new ArrayList<>();
+
+        private TestUI() {super(null, null, null);}
+
+        public void newwidget(int id, String type, int parent, Object[] pargs, Object... cargs) {
+            spin(200000);
+            applied++;
+        }
+
+        public void uimsg(int id, String msg, Object... args) {
+            spin(20000);
+            msgs.add(id + ":" + msg + ":" + args[0]);
+            applied++;
+        }
+
+        public void destroy(int id) {applied++;}
+        public void addwidget(int id, int parent, Object[] pargs) {applied++;}
+
+        public void tick() {
+            synchronized (this) {
+                try {
+                    Field f = UI.class.getDeclaredField("tickno");
+                    f.setAccessible(true);
+                    f.setInt(this, f.getInt(this) + 1);
+                } catch (ReflectiveOperationException e) {
+                    throw (new RuntimeException(e));
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    static PMessage fin(PMessage msg) {
+        return (new PMessage(msg.type, msg.fin()));
+    }
+
+    static PMessage newwdg(int id, String type, Object... cargs) {
+        PMessage msg = new PMessage(RMessage.RMSG_NEWWDG);
+        msg.adduint16(id);
+        msg.addstring(type);
+        msg.adduint16(0);
+        msg.addlist(new Object[] {Coord.z});
+        msg.addlist(cargs);
+        return (fin(msg));
+    }
+
+    static PMessage wdgmsg(int id, String name, Object... args) {
+        PMessage msg = new PMessage(RMessage.RMSG_WDGMSG);
+        msg.adduint16(id);
+        msg.addstring(name);
+        msg.addlist(args);
+        return (fin(msg));
+    }
+
+    static List<PMessage> burst(int items) {
+        List<PMessage> ret = new ArrayList<>();
+        ret.add(newwdg(fmgid, "fmg"));
+        for (int i = 0; i < nmoves; i++)
+            ret.add(wdgmsg(fmgid, "tt", i, "move " + i));
+        for (int i = 0; i < items; i++) {
+            ret.add(newwdg(i + 1, "item", i));
+            for (int o = 0; o < 3; o++)
+                ret.add(wdgmsg(i + 1, "tt", "tooltip " + o));
+            ret.add(wdgmsg(i + 1, "chres", i));
+        }
+        return (ret);
+    }
+
+    @SuppressWarnings("unchecked")
+    static void run(int slice, int items) throws Exception {
+        RemoteUI.slicetime = slice;
+        Session sess = (Session) unsafe.allocateInstance(Session.class);
+        Field qf = Session.class.getDeclaredField("uimsgs");
+        qf.setAccessible(true);
+        LinkedList<PMessage> q = new LinkedList<>();
+        qf.set(sess, q);
+        Field sf = Session.class.getDeclaredField("state");
+        sf.setAccessible(true);
+        sf.set(sess, "conn");
+        TestUI ui = (TestUI) unsafe.allocateInstance(TestUI.class);
+        Field mf = TestUI.class.getDeclaredField("msgs");
+        mf.setAccessible(true);
+        mf.set(ui, new ArrayList<String>());
+        RemoteUI rui = (RemoteUI) unsafe.allocateInstance(RemoteUI.class);
+        rui.sess = sess;
+        Field bf = RemoteUI.class.getDeclaredField("backlog");
+        bf.setAccessible(true);
+        ArrayDeque<?> backlog = new ArrayDeque<>();
+        bf.set(rui, backlog);
+        Field wf = RemoteUI.class.getDeclaredField("wtypes");
+        wf.setAccessible(true);
+        wf.set(rui, new HashMap<Integer, String>());
+        Field stf = RemoteUI.class.getDeclaredField("stats");
+        stf.setAccessible(true);
+        stf.set(rui, "");
+
+        List<PMessage> burst = burst(items);
+        Thread th = new Thread(() -> {
+                try {
+                    rui.run(ui);
+                } catch (InterruptedException e) {
+                }
+        });
+        th.start();
+        Thread.sleep(100);
+        long st = System.nanoTime();
+        synchronized (q) {
+            q.addAll(burst);
+        }
+        synchronized (sess) {
+            sess.notifyAll();
+        }
+        double worst = 0;
+        int frames = 0;
+        while (true) {
+            long a = System.nanoTime();
+            synchronized (ui) {
+                worst = Math.max(worst, (System.nanoTime() - a) / 1e6);
+                ui.tick();
+            }
+            frames++;
+            Thread.sleep(16);
+            synchronized (ui) {
+                if ((ui.applied > 0) && backlog.isEmpty() && q.isEmpty())
+                    break;
+            }
+        }
+        double total = (System.nanoTime() - st) / 1e6;
+        th.interrupt();
+        th.join();
+
+        int moves = 0, tts = 0;
+        for (String m : ui.msgs) {
+            if (m.startsWith(fmgid + ":tt:"))
+                moves++;
+            else if (m.contains(":tt:"))
+                tts++;
+        }
+        if (moves != nmoves)
+            throw (new AssertionError("fight move tooltips coalesced: " + moves + " of " + nmoves + " applied"));
+        if (tts != items)
+            throw (new AssertionError("item tooltips not coalesced: " + tts + " applied for " + items + " items"));
+        for (int i = 0; i < items; i++) {
+            if (!ui.msgs.contains((i + 1) + ":tt:tooltip 2"))
+                throw (new AssertionError("last tooltip of item " + (i + 1) + " not applied"));
+        }
+        System.out.printf("slice %6d ms: %d of %d msgs applied, %d frames, worst frame lock wait %.1f ms, total %.0f ms%n",
+                          slice, ui.applied, burst.size(), frames, worst, total);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int items = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        Field uf = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+        uf.setAccessible(true);
+        unsafe = (sun.misc.Unsafe) uf.get(null);
+        for (int slice : new int[] {100000, 4, 2})
+            run(slice, items);
+    }
+}
@@ -1616,8 +1616,11 @@ public class Resource implements Serializable {
         }
 
         public haven.Audio.CS stream() {
+            float[][] pcm = haven.Audio.pcmcache.get(this);
+            if (pcm != null)
+                return (new haven.Audio.SampleClip(pcm));
             try {
-                return (new haven.Audio.VorbisClip(new dolda.xiphutil.VorbisStream(new ByteArrayInputStream(coded))));
+                return (new haven.Audio.VorbisClip(new dolda.xiphutil.VorbisStream(new ByteArrayInputStream(coded))).record(haven.Audio.pcmcache, this));
             } catch (IOException e) {
                 throw (new RuntimeException(e));
             }
@@ -50,9 +50,18 @@ public class RichText extends Text {
         stdf = new Foundry(std);
     }
 
-    private RichText(String text, BufferedImage img, Part parts) {
+    private final boolean aa;
+
+    private RichText(String text, BufferedImage img, Part parts, boolean aa) {
         super(text, img);
         this.parts = parts;
+        this.aa = aa;
+    }
+
+    protected Tex mktex() {
+        if (Glyphs.usable() && Glyphs.fits(parts, aa))
+            return (Glyphs.layout(parts, sz(), aa));
+        return (super.mktex());
     }
 
     private static class RState {
@@ -684,24 +693,39 @@ public class RichText extends Text {
             return (sz);
         }
 
-        public RichText render(String text, int width, Object... extra) {
+        private Part parts(String text, int width, Object... extra) {
             Map<? extends Attribute, ?> extram = null;
             if (extra.length > 0) {
                 extram = fillattrs(extra);
             }
             Part fp = parser.parse(text, extram);
             fp.prepare(rs);
-            fp = layout(fp, width);
+            return (layout(fp, width));
+        }
+
+        private static Coord imgsz(Part fp) {
             Coord sz = bounds(fp);
             if (sz.x < 1) sz = sz.add(1, 0);
             if (sz.y < 1) sz = sz.add(0, 1);
+            return (sz);
+        }
+
+        /* Returns the size that render() would produce, without
+         * rasterizing anything. */
+        public Coord measure(String text, int width, Object... extra) {
+            return (imgsz(parts(text, width, extra)));
+        }
+
+        public RichText render(String text, int width, Object... extra) {
+            Part fp = parts(text, width, extra);
+            Coord sz = imgsz(fp);
             BufferedImage img = TexI.mkbuf(sz);
             Graphics2D g = img.createGraphics();
             if (aa)
                 Utils.AA(g);
             for (Part p = fp; p != null; p = p.next)
                 p.render(g);
-            return (new RichText(text, img, fp));
+            return (new RichText(text, img, fp, aa));
         }
 
         public RichText render(String text) {
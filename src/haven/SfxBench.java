@@ -0,0 +1,89 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.lang.management.*;
+import dolda.xiphutil.*;
+
+/* Measures the CPU time of playing sound effects 1000 times, with and
+ * without the decoded PCM cache, the same way Resource.Audio streams
+ * them. Plays are picked at random among the given Ogg Vorbis files,
+ * so passing short effects along with a long clip exercises the
+ * length threshold, above which clips keep streaming. Run as
+ *   SfxBench [-n PLAYS] FILE... */
+public class SfxBench {
+    static Audio.CS stream(byte[] coded, Audio.PCMCache cache) throws IOException {
+        if (cache != null) {
+            float[][] pcm = cache.get(coded);
+            if (pcm != null)
+                return (new Audio.SampleClip(pcm));
+            return (new Audio.VorbisClip(new VorbisStream(new ByteArrayInputStream(coded))).record(cache, coded));
+        }
+        return (new Audio.VorbisClip(new VorbisStream(new ByteArrayInputStream(coded))));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int plays = 1000;
+        List<byte[]> clips = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n"))
+                plays = Integer.parseInt(args[++i]);
+            else
+                clips.add(Files.readAllBytes(Paths.get(args[i])));
+        }
+        if (clips.isEmpty()) {
+            System.err.println("usage: SfxBench [-n PLAYS] FILE...");
+            System.exit(1);
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        float[][] buf = new float[2][1024];
+        /* The first round is warmup. */
+        for (int r = 0; r < 2; r++) {
+            for (boolean cached : new boolean[] {false, true}) {
+                Audio.PCMCache cache = cached ? new Audio.PCMCache(16 << 20, 44100 * 4) : null;
+                Random rnd = new Random(1);
+                long frames = 0;
+                long st = threads.getCurrentThreadCpuTime();
+                for (int i = 0; i < plays; i++) {
+                    Audio.CS cs = stream(clips.get(rnd.nextInt(clips.size())), cache);
+                    int n;
+                    while ((n = cs.get(buf, buf[0].length)) >= 0)
+                        frames += n;
+                }
+                double ms = (threads.getCurrentThreadCpuTime() - st) / 1e6;
+                if (r == 1) {
+                    System.out.printf("%s: %.0f ms CPU for %d plays (%.2f ms/play, %.1f s audio)%s%n",
+                                      cached ? "cached" : "uncached", ms, plays, ms / plays, frames / 44100.0,
+                                      cached ? (" [" + cache.stats() + "]") : "");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+
+/* Measures frame-build time variance with the world ticked in the
+ * frame loop (seq) or on the simulation thread (sim), headlessly.
+ * Every gob has an attribute whose tick costs COST ns, with a 25 ms
+ * spike every 15 ticks, and 50 of them move at a constant speed.
+ * Each frame, holding a stand-in UI lock as JOGLPanel does, reads
+ * the movers' draw positions and spins 3 ms for drawing, paced at
+ * 60 fps. It also adds a virtual gob, which the next settle removes,
+ * and checks that this never happens while the lock is held. Run as
+ *   SimBench seq|sim [GOBS [COST]] */
+public class SimBench {
+    static volatile long sink;
+
+    static void spin(long ns) {
+        long end = System.nanoTime() + ns;
+        while (System.nanoTime() < end)
+            sink++;
+    }
+
+    static class Mover extends Moving {
+        double x, v = 11.0;
+
+        Mover(Gob gob) {
+            super(gob);
+        }
+
+        public Coord3f getc() {
+            return (new Coord3f((float) x, 0, 0));
+        }
+
+        public double getv() {
+            return (v);
+        }
+
+        public void ctick(double dt) {
+            x += v * dt;
+        }
+    }
+
+    static class Heavy extends GAttrib {
+        static int tickno;
+        final long cost;
+
+        Heavy(Gob gob, long cost) {
+            super(gob);
+            this.cost = cost;
+        }
+
+        public void ctick(double dt) {
+            spin(cost);
+            if ((gob.id == 1) && ((++tickno % 15) == 0))
+                spin(25000000);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if ((args.length < 1) || !(args[0].equals("seq") || args[0].equals("sim"))) {
+            System.err.println("usage: SimBench seq|sim [GOBS [COST]]");
+            System.exit(1);
+        }
+        boolean sim = args[0].equals("sim");
+        int ngob = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+        long cost = (args.length > 2) ? Long.parseLong(args[2]) : 3000;
+        Config.par = false;
+        Glob glob = new Glob(null);
+        Object uilock = new Object();
+        List<Gob> movers = new ArrayList<>();
+        for (int i = 1; i <= ngob; i++) {
+            Gob gob = new Gob(glob, Coord2d.z, i);
+            gob.setattr(new Heavy(gob, cost));
+            if (i <= 50) {
+                gob.setattr(new Mover(gob));
+                movers.add(gob);
+            }
+            glob.oc.add(gob);
+        }
+        int frames = 600, warm = 60, lost = 0;
+        double[] build = new double[frames - warm], speed = new double[frames - warm];
+        double then = Utils.rtime(), lastt = 0;
+        float lastx = Float.NaN;
+        for (int f = 0; f < frames; f++) {
+            long st = System.nanoTime();
+            float x;
+            synchronized (uilock) {
+                if (sim)
+                    glob.simulate(uilock);
+                else
+                    glob.ctick();
+                Gob virt = new Gob(glob, Coord2d.z, -1 - f);
+                glob.oc.add(virt);
+                x = 0;
+                for (Gob gob : movers)
+                    x = gob.drawc().x;
+                spin(3000000);
+                if (glob.oc.getgob(virt.id) != virt)
+                    lost++;
+            }
+            double now = Utils.rtime();
+            if (f >= warm) {
+                build[f - warm] = (System.nanoTime() - st) / 1e6;
+                speed[f - warm] = (x - lastx) / (now - lastt);
+            }
+            lastx = x;
+            lastt = now;
+            if (then + (1.0 / 60) > now) {
+                then += 1.0 / 60;
+                long nanos = (long) ((then - now) * 1e9);
+                Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+            } else {
+                then = now;
+            }
+        }
+        double[] bs = build.clone();
+        Arrays.sort(bs);
+        System.out.printf("%s: frame build mean %.2f ms, sd %.2f, p50 %.2f, p99 %.2f, max %.2f\n", args[0],
+                mean(build), sd(build), bs[bs.length / 2], bs[(int) (bs.length * 0.99)], bs[bs.length - 1]);
+        System.out.printf("mover speed seen by frames %.1f +- %.1f (true 11.0)\n", mean(speed), sd(speed));
+        System.out.printf("virtual gobs removed while the UI lock was held: %d\n", lost);
+        System.exit((lost == 0) ? 0 : 1);
+    }
+
+    static double mean(double[] v) {
+        double sum = 0;
+        for (double x : v)
+            sum += x;
+        return (sum / v.length);
+    }
+
+    static double sd(double[] v) {
+        double m = mean(v), sum = 0;
+        for (double x : v)
+            sum += (x - m) * (x - m);
+        return (Math.sqrt(sum / v.length));
+    }
+}
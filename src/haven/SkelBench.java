@@ -0,0 +1,181 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.nio.*;
+
+/* Measures the CPU cost of skeletal animation per character: ticking
+ * a TrackMod, building the pose and its bone palette, for 1, 100 and
+ * 1000 characters playing one animation at random phases, with and
+ * without the shared pose samples; and the throughput of skinning a
+ * mesh with PoseMorph under an idle animation moving a few leaf
+ * bones versus one moving the whole body. Run as
+ *   SkelBench [TICKS [BONES [VERTICES]]] */
+public class SkelBench {
+    static Skeleton skel(int nb) {
+        List<Skeleton.Bone> bones = new ArrayList<>();
+        for (int i = 0; i < nb; i++) {
+            Skeleton.Bone b = new Skeleton.Bone("b" + i, new Coord3f(0, 0, (i == 0) ? 0 : 0.2f), new Coord3f(0, 0, 1), 0);
+            if (i > 0)
+                b.parent = bones.get((i - 1) / 2);
+            bones.add(b);
+        }
+        return (new Skeleton(bones));
+    }
+
+    /* Tracks for an animation of the given length moving only the
+     * bones for which `moving' holds, in the shape of the frames
+     * of real resources. */
+    static Skeleton.Track[] tracks(Skeleton skel, float len, int nf, java.util.function.IntPredicate moving) {
+        Random rnd = new Random(skel.blist.length);
+        Skeleton.Track[] ret = new Skeleton.Track[skel.blist.length];
+        for (int b = 0; b < ret.length; b++) {
+            Skeleton.Track.Frame[] frames;
+            if (moving.test(b)) {
+                frames = new Skeleton.Track.Frame[nf];
+                for (int f = 0; f < nf; f++) {
+                    float ang = (rnd.nextFloat() - 0.5f) * 0.5f;
+                    frames[f] = new Skeleton.Track.Frame(len * f / nf, new float[]{0, 0, rnd.nextFloat() * 0.01f},
+                            new float[]{(float) Math.cos(ang / 2), (float) Math.sin(ang / 2), 0, 0});
+                }
+            } else {
+                frames = new Skeleton.Track.Frame[]{new Skeleton.Track.Frame(0, new float[3], new float[]{1, 0, 0, 0})};
+            }
+            ret[b] = new Skeleton.Track(skel.blist[b].name, frames);
+        }
+        return (ret);
+    }
+
+    static class Char {
+        final Skeleton.Pose pose;
+        final Skeleton.TrackMod mod;
+        float[] pal = null;
+
+        Char(Skeleton skel, Skeleton.Track[] tracks, float len, Skeleton.Samples samples) {
+            pose = skel.new Pose(skel.bindpose);
+            mod = skel.new TrackMod(Skeleton.ModOwner.nil, tracks, new Skeleton.FxTrack[0], len, WrapMode.LOOP);
+            mod.samples = samples;
+            mod.age();
+        }
+
+        void tick(float dt) {
+            mod.tick(dt);
+            pose.reset();
+            mod.apply(pose);
+            pose.gbuild();
+            pal = pose.palette(pal);
+        }
+    }
+
+    static double animate(Skeleton skel, int n, int ticks, boolean shared) {
+        float len = 2;
+        Skeleton.Track[] tracks = tracks(skel, len, 48, b -> true);
+        Skeleton.Samples samples = shared ? Skeleton.Samples.forlen(len) : null;
+        Char[] chars = new Char[n];
+        for (int i = 0; i < n; i++)
+            chars[i] = new Char(skel, tracks, len, samples);
+        float dt = 1.0f / 60;
+        for (int t = 0; t < Math.max(ticks / 4, 10); t++) {
+            for (Char ch : chars)
+                ch.tick(dt);
+        }
+        long st = System.nanoTime();
+        for (int t = 0; t < ticks; t++) {
+            for (Char ch : chars)
+                ch.tick(dt);
+        }
+        return ((System.nanoTime() - st) / 1000.0 / ((double) ticks * n));
+    }
+
+    /* Every vertex is weighted between one bone and its parent, in
+     * the way of real character meshes. */
+    static FastMesh mesh(Skeleton skel, int nv) {
+        int nb = skel.blist.length;
+        Random rnd = new Random(nv);
+        FloatBuffer pos = Utils.wfbuf(nv * 3), nrm = Utils.wfbuf(nv * 3), bw = Utils.wfbuf(nv * 2);
+        IntBuffer ba = Utils.wibuf(nv * 2);
+        String[] names = new String[nb];
+        for (int b = 0; b < nb; b++)
+            names[b] = skel.blist[b].name;
+        for (int v = 0; v < nv; v++) {
+            for (int i = 0; i < 3; i++) {
+                pos.put((v * 3) + i, rnd.nextFloat());
+                nrm.put((v * 3) + i, (i == 2) ? 1 : 0);
+            }
+            Skeleton.Bone b = skel.blist[v % nb];
+            ba.put(v * 2, b.idx);
+            ba.put((v * 2) + 1, (b.parent == null) ? -1 : b.parent.idx);
+            bw.put(v * 2, (b.parent == null) ? 1.0f : 0.7f);
+            bw.put((v * 2) + 1, (b.parent == null) ? 0.0f : 0.3f);
+        }
+        VertexBuf vb = new VertexBuf(new VertexBuf.VertexData(pos), new VertexBuf.NormalData(nrm), new VertexBuf.TexelData(Utils.wfbuf(nv * 2)),
+                new PoseMorph.BoneData(2, ba, names), new PoseMorph.WeightData(2, bw));
+        return (new FastMesh(vb, new short[]{0, 1, 2}));
+    }
+
+    static double skin(Skeleton skel, int nv, int ticks, boolean idle) {
+        float len = 2;
+        int nb = skel.blist.length;
+        Skeleton.Track[] tracks = tracks(skel, len, 48, idle ? (b -> b >= nb - 3) : (b -> true));
+        Char ch = new Char(skel, tracks, len, null);
+        PoseMorph pm = new PoseMorph(ch.pose);
+        MorphedMesh mm = new MorphedMesh(mesh(skel, nv), pm);
+        MorphedMesh.Morpher m = pm.create((MorphedMesh.MorphedBuf) mm.vert);
+        FloatBuffer psrc = mm.vert.buf(VertexBuf.VertexData.class).data, nsrc = mm.vert.buf(VertexBuf.NormalData.class).data;
+        FloatBuffer pdst = Utils.wfbuf(nv * 3), ndst = Utils.wfbuf(nv * 3);
+        float dt = 1.0f / 60;
+        long st = 0;
+        for (int t = -Math.max(ticks / 4, 10); t < ticks; t++) {
+            if (t == 0)
+                st = System.nanoTime();
+            ch.tick(dt);
+            if (m.update()) {
+                m.morphp(pdst, psrc);
+                m.morphd(ndst, nsrc);
+            }
+        }
+        return (((double) nv * ticks) / ((System.nanoTime() - st) / 1e6));
+    }
+
+    public static void main(String[] args) {
+        int ticks = (args.length > 0) ? Integer.parseInt(args[0]) : 600;
+        int nb = (args.length > 1) ? Integer.parseInt(args[1]) : 48;
+        int nv = (args.length > 2) ? Integer.parseInt(args[2]) : 20000;
+        Skeleton skel = skel(nb);
+        System.out.printf("%d bones, %d ticks\n", nb, ticks);
+        System.out.printf("%6s %12s %12s\n", "chars", "us/char", "us/char-shr");
+        for (int n : new int[]{1, 100, 1000}) {
+            int nt = Math.max(ticks / Math.max(n / 100, 1), 20);
+            double ind = animate(skel, n, nt, false);
+            double shr = animate(skel, n, nt, true);
+            System.out.printf("%6d %12.2f %12.2f\n", n, ind, shr);
+        }
+        System.out.printf("skinning %d vertices: %.0f vert/ms idle, %.0f vert/ms full-body\n", nv,
+                skin(skel, nv, ticks, true), skin(skel, nv, ticks, false));
+    }
+}
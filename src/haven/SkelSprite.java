@@ -183,6 +183,29 @@ public class SkelSprite extends Sprite implements Sprite.CUpd, Skeleton.HasPose
         this.mmorph = MorphedMesh.combine(this.manims);
     }
 
+    /* Sprites whose owners are not themselves mod owners still
+     * pass context lookups through, so that poses can find the Gob
+     * they are ultimately attached to. */
+    private Skeleton.ModOwner modowner() {
+        if (owner instanceof Skeleton.ModOwner)
+            return ((Skeleton.ModOwner) owner);
+        if (owner == null)
+            return (Skeleton.ModOwner.nil);
+        return (new Skeleton.ModOwner() {
+            public double getv() {
+                return (0);
+            }
+
+            public Coord3f getc() {
+                return (Coord3f.o);
+            }
+
+            public <T> T context(Class<T> cl) {
+                return (owner.context(cl));
+            }
+        });
+    }
+
     private Map<Skeleton.ResPose, PoseMod> modids = new HashMap<Skeleton.ResPose, PoseMod>();
 
     private void chposes(int mask, boolean old) {
@@ -192,7 +215,7 @@ public class SkelSprite extends Sprite implements Sprite.CUpd, Skeleton.HasPose
         }
         Collection<PoseMod> poses = new LinkedList<PoseMod>();
         stat = true;
-        Skeleton.ModOwner mo = (owner instanceof Skeleton.ModOwner) ? (Skeleton.ModOwner) owner : Skeleton.ModOwner.nil;
+        Skeleton.ModOwner mo = modowner();
         Map<Skeleton.ResPose, PoseMod> newids = new HashMap<Skeleton.ResPose, PoseMod>();
         for (Skeleton.ResPose p : res.layers(Skeleton.ResPose.class)) {
             if ((p.id < 0) || ((mask & (1 << p.id)) != 0)) {
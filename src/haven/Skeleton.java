@@ -34,6 +34,7 @@ import haven.render.*;
 public class Skeleton {
     public final Map<String, Bone> bones = new HashMap<String, Bone>();
     public final Bone[] blist; /* Topologically sorted */
+    private final int[] parents;
     public final Pose bindpose;
 
     public Skeleton(Collection<Bone> bones) {
@@ -67,6 +68,9 @@ public class Skeleton {
             if (!f)
                 throw (new RuntimeException("Cyclical bone hierarchy"));
         }
+        parents = new int[blist.length];
+        for (int i = 0; i < blist.length; i++)
+            parents[i] = (blist[i].parent == null) ? -1 : blist[i].parent.idx;
         bindpose = mkbindpose();
     }
 
@@ -238,8 +242,8 @@ public class Skeleton {
         public void gbuild() {
             int nb = blist.length;
             for (int i = 0; i < nb; i++) {
-                Bone b = blist[i];
-                if (b.parent == null) {
+                int pi = parents[i];
+                if (pi < 0) {
                     gpos[i][0] = lpos[i][0];
                     gpos[i][1] = lpos[i][1];
                     gpos[i][2] = lpos[i][2];
@@ -248,7 +252,6 @@ public class Skeleton {
                     grot[i][2] = lrot[i][2];
                     grot[i][3] = lrot[i][3];
                 } else {
-                    int pi = b.parent.idx;
                     qqmul(grot[i], grot[pi], lrot[i]);
                     vqrot(gpos[i], lpos[i], grot[pi]);
                     vvadd(gpos[i], gpos[i], gpos[pi]);
@@ -341,33 +344,46 @@ public class Skeleton {
 	*/
 
         public void boneoff(int bone, float[] offtrans) {
-            /* It would be nice if these "new float"s get
-             * stack-allocated. */
-            float[] rot = new float[4], xlate = new float[3];
+            boneoff(bone, offtrans, 0, new float[4], new float[3]);
+        }
+
+        private void boneoff(int bone, float[] offtrans, int o, float[] rot, float[] xlate) {
             rot = qqmul(rot, grot[bone], qinv(rot, bindpose.grot[bone]));
             xlate = vvadd(xlate, gpos[bone], vqrot(xlate, vinv(xlate, bindpose.gpos[bone]), rot));
-            offtrans[3] = 0;
-            offtrans[7] = 0;
-            offtrans[11] = 0;
-            offtrans[15] = 1;
-            offtrans[12] = xlate[0];
-            offtrans[13] = xlate[1];
-            offtrans[14] = xlate[2];
+            offtrans[o + 3] = 0;
+            offtrans[o + 7] = 0;
+            offtrans[o + 11] = 0;
+            offtrans[o + 15] = 1;
+            offtrans[o + 12] = xlate[0];
+            offtrans[o + 13] = xlate[1];
+            offtrans[o + 14] = xlate[2];
             /* I must admit I don't /quite/ understand why the
              * rotation needs to be inverted... */
             float w = -rot[0], x = rot[1], y = rot[2], z = rot[3];
             float xw = x * w * 2, xx = x * x * 2, xy = x * y * 2, xz = x * z * 2;
             float yw = y * w * 2, yy = y * y * 2, yz = y * z * 2;
             float zw = z * w * 2, zz = z * z * 2;
-            offtrans[0] = 1 - (yy + zz);
-            offtrans[5] = 1 - (xx + zz);
-            offtrans[10] = 1 - (xx + yy);
-            offtrans[1] = xy - zw;
-            offtrans[2] = xz + yw;
-            offtrans[4] = xy + zw;
-            offtrans[6] = yz - xw;
-            offtrans[8] = xz - yw;
-            offtrans[9] = yz + xw;
+            offtrans[o + 0] = 1 - (yy + zz);
+            offtrans[o + 5] = 1 - (xx + zz);
+            offtrans[o + 10] = 1 - (xx + yy);
+            offtrans[o + 1] = xy - zw;
+            offtrans[o + 2] = xz + yw;
+            offtrans[o + 4] = xy + zw;
+            offtrans[o + 6] = yz - xw;
+            offtrans[o + 8] = xz - yw;
+            offtrans[o + 9] = yz + xw;
+        }
+
+        /* Writes the offset transforms of all bones into one
+         * contiguous matrix palette, 16 floats per bone. */
+        public float[] palette(float[] dst) {
+            int nb = blist.length;
+            if ((dst == null) || (dst.length < nb * 16))
+                dst = new float[nb * 16];
+            float[] rot = new float[4], xlate = new float[3];
+            for (int i = 0; i < nb; i++)
+                boneoff(i, dst, i << 4, rot, xlate);
+            return (dst);
         }
 	
 	/* XXXRENDER
@@ -651,6 +667,75 @@ public class Skeleton {
         }
     }
 
+    /* Sampled poses of one animation, shared between all TrackMods
+     * playing it on the same skeleton and indexed by time quantized
+     * to 1/samplerate seconds. */
+    public static class Samples {
+        public static final float samplerate = 60;
+        public static final int maxslots = 1200;
+        public static boolean enabled = true;
+        private final Sample[] slots;
+
+        private static class Sample {
+            final float[] pos, rot;
+
+            Sample(PoseMod mod) {
+                int nb = mod.lpos.length;
+                pos = new float[nb * 3];
+                rot = new float[nb * 4];
+                for (int i = 0; i < nb; i++) {
+                    vset3(pos, i * 3, mod.lpos[i]);
+                    qset4(rot, i * 4, mod.lrot[i]);
+                }
+            }
+
+            void load(PoseMod mod) {
+                int nb = mod.lpos.length;
+                for (int i = 0, po = 0, ro = 0; i < nb; i++, po += 3, ro += 4) {
+                    float[] lp = mod.lpos[i], lr = mod.lrot[i];
+                    lp[0] = pos[po];
+                    lp[1] = pos[po + 1];
+                    lp[2] = pos[po + 2];
+                    lr[0] = rot[ro];
+                    lr[1] = rot[ro + 1];
+                    lr[2] = rot[ro + 2];
+                    lr[3] = rot[ro + 3];
+                }
+            }
+
+            private static void vset3(float[] d, int o, float[] s) {
+                d[o] = s[0];
+                d[o + 1] = s[1];
+                d[o + 2] = s[2];
+            }
+
+            private static void qset4(float[] d, int o, float[] s) {
+                d[o] = s[0];
+                d[o + 1] = s[1];
+                d[o + 2] = s[2];
+                d[o + 3] = s[3];
+            }
+        }
+
+        public Samples(float len) {
+            slots = new Sample[(int) Math.ceil(len * samplerate) + 1];
+        }
+
+        public static Samples forlen(float len) {
+            if (Math.ceil(len * samplerate) >= maxslots)
+                return (null);
+            return (new Samples(len));
+        }
+
+        static {
+            Console.setscmd("animcache", new Console.Command() {
+                public void run(Console cons, String[] args) {
+                    enabled = Utils.parsebool(args[1], true);
+                }
+            });
+        }
+    }
+
     public class TrackMod extends PoseMod {
         public final Track[] tracks;
         public final FxTrack[] effects;
@@ -663,10 +748,16 @@ public class Skeleton {
         protected boolean speedmod = false;
         protected double nspeed = 0.0;
         private boolean back = false;
+        private float lodacc = 0;
+        private Gob lodgob = null;
+        private boolean lodinit = false;
+        private final int[] cursor;
+        protected Samples samples = null;
 
         public TrackMod(ModOwner owner, Track[] tracks, FxTrack[] effects, float len, WrapMode mode) {
             super(owner);
             this.tracks = tracks;
+            this.cursor = new int[tracks.length];
             this.effects = effects;
             this.len = len;
             this.mode = mode;
@@ -686,9 +777,64 @@ public class Skeleton {
             this(ModOwner.nil, tracks, new FxTrack[0], len, mode);
         }
 
+        private boolean inframe(Track t, int c, float time) {
+            float nt = (c < t.frames.length - 1) ? (t.frames[c + 1].time) : len;
+            return ((t.frames[c].time <= time) && (nt >= time));
+        }
+
+        /* Animations mostly advance monotonically by less than a
+         * frame per tick, so check the last used frame and its
+         * successor before falling back to a binary search. */
+        private int frame(Track t, int c, float time) {
+            int nf = t.frames.length;
+            if (c < nf) {
+                if (inframe(t, c, time))
+                    return (c);
+                if ((c + 1 < nf) && inframe(t, c + 1, time))
+                    return (c + 1);
+            }
+            int l = 0, r = nf;
+            int n = 0;
+            while (true) {
+                if (++n > 100)
+                    throw (new RuntimeException("Cannot find track frame in " + this + " for time " + time));
+                /* c should never be able to be >= frames.length */
+                c = l + ((r - l) >> 1);
+                float ct = t.frames[c].time;
+                float nt = (c < nf - 1) ? (t.frames[c + 1].time) : len;
+                if (ct > time)
+                    r = c;
+                else if (nt < time)
+                    l = c + 1;
+                else
+                    return (c);
+            }
+        }
+
         public void aupdate(float time) {
             if (time > len)
                 time = len;
+            Samples samples = Samples.enabled ? this.samples : null;
+            int q = -1;
+            if (samples != null) {
+                q = Math.round(time * Samples.samplerate);
+                if ((q >= 0) && (q < samples.slots.length)) {
+                    Samples.Sample s = samples.slots[q];
+                    if (s != null) {
+                        s.load(this);
+                        return;
+                    }
+                    time = Math.min(q / Samples.samplerate, len);
+                } else {
+                    q = -1;
+                }
+            }
+            sample(time);
+            if (q >= 0)
+                samples.slots[q] = new Samples.Sample(this);
+        }
+
+        private void sample(float time) {
             reset();
             for (int i = 0; i < tracks.length; i++) {
                 Track t = tracks[i];
@@ -698,27 +844,9 @@ public class Skeleton {
                     qset(lrot[i], t.frames[0].rot);
                     vset(lpos[i], t.frames[0].trans);
                 } else {
-                    Track.Frame cf, nf;
-                    float ct, nt;
-                    int l = 0, r = t.frames.length;
-                    int n = 0;
-                    while (true) {
-                        if (++n > 100)
-                            throw (new RuntimeException("Cannot find track frame in " + this + " for time " + time));
-                        /* c should never be able to be >= frames.length */
-                        int c = l + ((r - l) >> 1);
-                        ct = t.frames[c].time;
-                        nt = (c < t.frames.length - 1) ? (t.frames[c + 1].time) : len;
-                        if (ct > time) {
-                            r = c;
-                        } else if (nt < time) {
-                            l = c + 1;
-                        } else {
-                            cf = t.frames[c];
-                            nf = t.frames[(c + 1) % t.frames.length];
-                            break;
-                        }
-                    }
+                    int c = cursor[i] = frame(t, cursor[i], time);
+                    Track.Frame cf = t.frames[c], nf = t.frames[(c + 1) % t.frames.length];
+                    float ct = cf.time, nt = (c < t.frames.length - 1) ? nf.time : len;
                     float d;
                     if (nt == ct)
                         d = 0;
@@ -736,6 +864,24 @@ public class Skeleton {
             cbl.add(l);
         }
 
+        /* The Gob this mod ultimately animates, if any, so that
+         * poses owned by overlay or equipment sprites are throttled
+         * along with their object. */
+        private Gob gob() {
+            if (!lodinit) {
+                if (owner instanceof Gob) {
+                    lodgob = (Gob) owner;
+                } else {
+                    try {
+                        lodgob = owner.context(Gob.class);
+                    } catch (OwnerContext.NoContext e) {
+                    }
+                }
+                lodinit = true;
+            }
+            return (lodgob);
+        }
+
         private void playfx(float ot, float nt) {
             if (!(owner instanceof Gob))
                 return;
@@ -757,6 +903,18 @@ public class Skeleton {
         }
 
         public boolean tick(float dt) {
+            Gob gob = gob();
+            if (gob != null) {
+                /* Distant objects advance their tracks less often,
+                 * by the accumulated time. */
+                double rate = gob.animrate();
+                if (rate > 0) {
+                    if ((lodacc += dt) < rate)
+                        return (false);
+                    dt = lodacc;
+                    lodacc = 0;
+                }
+            }
             if (speedmod)
                 dt *= owner.getv() / nspeed;
             float nt = time + (back ? -dt : dt);
@@ -1031,7 +1189,28 @@ public class Skeleton {
             this.effects = fx.toArray(new FxTrack[0]);
         }
 
+        private final Map<Skeleton, Track[]> remaps = new CacheMap<>(CacheMap.RefType.WEAK);
+        private final Map<Track[], Samples> samples = new CacheMap<>(CacheMap.RefType.WEAK);
+
         private Track[] iaIaCthulhuFhtagn(Skeleton skel) {
+            synchronized (remaps) {
+                Track[] ret = remaps.get(skel);
+                if (ret == null)
+                    remaps.put(skel, ret = remap(skel));
+                return (ret);
+            }
+        }
+
+        private Samples samples(Track[] tracks) {
+            synchronized (samples) {
+                Samples ret = samples.get(tracks);
+                if ((ret == null) && ((ret = Samples.forlen(len)) != null))
+                    samples.put(tracks, ret);
+                return (ret);
+            }
+        }
+
+        private Track[] remap(Skeleton skel) {
             Track[] remap = new Track[skel.blist.length];
             for (Track t : tracks) {
                 Skeleton.Bone b = skel.bones.get(t.bone);
@@ -1045,6 +1224,7 @@ public class Skeleton {
         public class ResMod extends TrackMod {
             public ResMod(ModOwner owner, Skeleton skel, WrapMode mode) {
                 skel.super(owner, iaIaCthulhuFhtagn(skel), ResPose.this.effects, ResPose.this.len, mode);
+                this.samples = samples(this.tracks);
                 if (ResPose.this.nspeed > 0) {
                     this.speedmod = true;
                     this.nspeed = ResPose.this.nspeed;
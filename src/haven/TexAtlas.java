@@ -0,0 +1,242 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven;
+
+import java.util.*;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.*;
+import java.nio.ByteBuffer;
+
+import haven.render.*;
+import haven.render.Texture2D.Sampler2D;
+import haven.render.DataBuffer;
+
+/* Packs small UI images into shared texture pages so that GOut can
+ * draw runs of them with a single draw call. Pages are filled with a
+ * simple shelf packer, and when all pages are full the least recently
+ * used one is cleared and reused. Pages are kept on the CPU side, and
+ * only the rows that changed are uploaded to their textures. */
+public class TexAtlas {
+    public static final TexAtlas ui = new TexAtlas(512, 8, 64);
+    public final int pagesz, maxpages, maxsz;
+    private final List<Page> pages = new ArrayList<>();
+    private int cycle = 0;
+
+    public TexAtlas(int pagesz, int maxpages, int maxsz) {
+        this.pagesz = pagesz;
+        this.maxpages = maxpages;
+        this.maxsz = maxsz;
+    }
+
+    private static class Shelf {
+        final int y, h;
+        int x = 0;
+
+        Shelf(int y, int h) {
+            this.y = y;
+            this.h = h;
+        }
+    }
+
+    public class Page {
+        private final byte[] data = new byte[pagesz * pagesz * 4];
+        private final BufferedImage img;
+        private final List<Shelf> shelves = new ArrayList<>();
+        private int top = 0;
+        private int epoch = 0;
+        /* Rows changed since the last upload. */
+        private int dirty0 = 0, dirty1 = pagesz;
+        private int lastuse;
+        private ColorTex st = null;
+
+        private Page() {
+            WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(data, data.length), pagesz, pagesz, 4 * pagesz, 4, new int[]{0, 1, 2, 3}, null);
+            img = new BufferedImage(TexI.glcm, raster, false, null);
+        }
+
+        private void dirty(int y0, int y1) {
+            dirty0 = Math.min(dirty0, y0);
+            dirty1 = Math.max(dirty1, y1);
+        }
+
+        private Entry alloc(BufferedImage src, Coord sz) {
+            /* One pixel of padding to keep filtering from bleeding
+             * between neighbours. */
+            int w = sz.x + 2, h = sz.y + 2;
+            Shelf sh = null;
+            for (Shelf s : shelves) {
+                if ((s.h >= h) && (s.h <= h + (h / 2) + 2) && (s.x + w <= pagesz)) {
+                    sh = s;
+                    break;
+                }
+            }
+            if (sh == null) {
+                if ((top + h > pagesz) || (w > pagesz))
+                    return (null);
+                shelves.add(sh = new Shelf(top, h));
+                top += h;
+            }
+            Entry ent = new Entry(this, sh.x + 1, sh.y + 1, sz);
+            sh.x += w;
+            Graphics2D g = img.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(src, ent.x, ent.y, null);
+            g.dispose();
+            dirty(ent.y, ent.y + sz.y);
+            return (ent);
+        }
+
+        private void clear() {
+            shelves.clear();
+            top = 0;
+            Arrays.fill(data, (byte) 0);
+            epoch++;
+            dirty(0, pagesz);
+        }
+
+        public ColorTex st() {
+            synchronized (TexAtlas.this) {
+                if (st == null) {
+                    byte[] snap = data.clone();
+                    Texture2D tex = new Texture2D(pagesz, pagesz, DataBuffer.Usage.STATIC, new VectorFormat(4, NumberFormat.UNORM8), new VectorFormat(4, NumberFormat.UNORM8),
+                            (img, env) -> {
+                                if (img.level != 0)
+                                    return (null);
+                                FillBuffer buf = env.fillbuf(img);
+                                buf.pull(ByteBuffer.wrap(snap));
+                                return (buf);
+                            });
+                    Sampler2D smp = new Sampler2D(tex);
+                    smp.magfilter(Texture.Filter.NEAREST).minfilter(Texture.Filter.NEAREST);
+                    st = new ColorTex(smp);
+                    dirty0 = pagesz;
+                    dirty1 = 0;
+                }
+                return (st);
+            }
+        }
+
+        private void upload(Render out) {
+            if ((st == null) || (dirty0 >= dirty1))
+                return;
+            int rs = pagesz * 4, from = dirty0 * rs, to = dirty1 * rs;
+            ByteBuffer rows = ByteBuffer.wrap(Arrays.copyOfRange(data, from, to));
+            out.update(st.data.tex.image(0), (img, env, f, t) -> {
+                FillBuffer buf = env.fillbuf(img, f, t);
+                buf.pull(rows);
+                return (buf);
+            }, from, to);
+            dirty0 = pagesz;
+            dirty1 = 0;
+        }
+    }
+
+    public class Entry {
+        public final Page page;
+        public final int x, y;
+        public final Coord sz;
+        private final int epoch;
+
+        private Entry(Page page, int x, int y, Coord sz) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.sz = sz;
+            this.epoch = page.epoch;
+        }
+
+        /* Whether the region still holds the image it was allocated
+         * for. */
+        public boolean valid() {
+            return (page.epoch == epoch);
+        }
+
+        /* Whether the region can be drawn from during the given
+         * cycle, which keeps its page from being reused during it. */
+        public boolean ready(int cycle) {
+            synchronized (TexAtlas.this) {
+                if (!valid())
+                    return (false);
+                page.lastuse = cycle;
+                return (true);
+            }
+        }
+    }
+
+    /* The current cycle, which pages drawn from are marked with. */
+    public synchronized int cycle() {
+        return (cycle);
+    }
+
+    /* Starts a new cycle; called once at the start of every frame. */
+    public synchronized void frame() {
+        cycle++;
+    }
+
+    /* Uploads the rows of all pages that changed during the frame.
+     * Texture updates are applied before anything in the frame is
+     * drawn, which is also why pages in use in the current cycle are
+     * never cleared. */
+    public synchronized void upload(Render out) {
+        for (Page pg : pages)
+            pg.upload(out);
+    }
+
+    public synchronized Entry add(BufferedImage img) {
+        Coord sz = Utils.imgsz(img);
+        if ((sz.x > maxsz) || (sz.y > maxsz) || (sz.x < 1) || (sz.y < 1))
+            return (null);
+        for (Page pg : pages) {
+            Entry ent = pg.alloc(img, sz);
+            if (ent != null)
+                return (ent);
+        }
+        Page pg;
+        if (pages.size() < maxpages) {
+            pages.add(pg = new Page());
+        } else {
+            pg = pages.get(0);
+            for (Page p : pages) {
+                if (p.lastuse < pg.lastuse)
+                    pg = p;
+            }
+            /* Never throw out a page that is in use in the current
+             * cycle. */
+            if (pg.lastuse == cycle)
+                return (null);
+            pg.clear();
+        }
+        pg.lastuse = cycle;
+        return (pg.alloc(img, sz));
+    }
+
+    public synchronized int pages() {
+        return (pages.size());
+    }
+}
@@ -59,6 +59,9 @@ public class TexI implements Tex {
     }
 
     private ColorTex st = null;
+    private TexAtlas.Entry aent = null;
+    private int acycle = -1, auses = 0;
+    private boolean atlasable = true;
 
     public ColorTex st() {
         ColorTex st = this.st;
@@ -87,21 +90,57 @@ public class TexI implements Tex {
     }
 
     public TexI magfilter(Texture.Filter filter) {
+        atlasable = false;
         st().data.magfilter(filter);
         return (this);
     }
 
     public TexI minfilter(Texture.Filter filter) {
+        atlasable = false;
         st().data.minfilter(filter);
         return (this);
     }
 
     public TexI wrapmode(Texture.Wrapping mode) {
+        atlasable = false;
         st().data.wrapmode(mode);
         return (this);
     }
 
+    /* Small textures that get drawn in more than one frame are copied
+     * into the shared UI atlas, so that GOut can batch them. */
+    TexAtlas.Entry atlased(int cycle) {
+        synchronized (this) {
+            if (!atlasable)
+                return (null);
+            if ((aent != null) && aent.valid())
+                return (aent);
+            if (cycle != acycle) {
+                acycle = cycle;
+                auses++;
+            }
+            if (auses < 2)
+                return (null);
+            if ((aent = TexAtlas.ui.add(back)) == null) {
+                if ((sz.x > TexAtlas.ui.maxsz) || (sz.y > TexAtlas.ui.maxsz))
+                    atlasable = false;
+            }
+            return (aent);
+        }
+    }
+
+    /* Lets the texture go into the atlas on first use, for images that
+     * are known to be reused, such as glyphs. */
+    TexI eager() {
+        synchronized (this) {
+            auses = Math.max(auses, 1);
+        }
+        return (this);
+    }
+
     public void render(GOut g, Coord dul, Coord dbr, Coord tul, Coord tbr) {
+        if (g.batch(this, dul, dbr, tul, tbr))
+            return;
         float tl = (float) tul.x / (float) tdim.x;
         float tu = (float) tul.y / (float) tdim.y;
         float tr = (float) tbr.x / (float) tdim.x;
@@ -123,6 +162,7 @@ public class TexI implements Tex {
                 st.data.dispose();
                 st = null;
             }
+            aent = null;
         }
     }
 
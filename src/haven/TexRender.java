@@ -135,7 +135,7 @@ public abstract class TexRender implements Tex, Disposable {
                 dul.x, dbr.y, tl, tb,
         };
         g.usestate(draw);
-        g.out.draw(g.state(), new Model(Model.Mode.TRIANGLE_STRIP, new VertexArray(vf_tex2d, new VertexArray.Buffer(data.length * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(data))), null, 0, 4));
+        g.draw(g.state(), new Model(Model.Mode.TRIANGLE_STRIP, new VertexArray(vf_tex2d, new VertexArray.Buffer(data.length * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(data))), null, 0, 4));
         g.usestate(ColorTex.slot);
     }
 
@@ -50,10 +50,20 @@ public class Text {
 
     public static class Line extends Text {
         private final FontMetrics m;
+        private final Foundry fnd;
+        private final Color col;
 
-        private Line(String text, BufferedImage img, FontMetrics m) {
+        private Line(String text, BufferedImage img, FontMetrics m, Foundry fnd, Color col) {
             super(text, img);
             this.m = m;
+            this.fnd = fnd;
+            this.col = col;
+        }
+
+        protected Tex mktex() {
+            if (Glyphs.usable() && fnd.fits(text))
+                return (fnd.layout(text, col, sz()));
+            return (super.mktex());
         }
 
         public Coord base() {
@@ -176,7 +186,24 @@ public class Text {
             FontMetrics m = g.getFontMetrics();
             g.drawString(text, 0, m.getAscent());
             g.dispose();
-            return (new Line(text, img, m));
+            return (new Line(text, img, m, this, c));
+        }
+
+        public boolean fits(String text) {
+            return (Glyphs.get(font, aa).fits(text));
+        }
+
+        /* Lays out text as glyphs from the atlas, without rasterizing
+         * it as a whole, unless it does not fit. */
+        public Glyphs.Run layout(String text, Color c, Coord sz) {
+            return (Glyphs.get(font, aa).layout(text, c, sz, m.getAscent()));
+        }
+
+        public Glyphs.Run layout(String text, Color c) {
+            Coord sz = strsize(text);
+            if (sz.x < 1)
+                sz = sz.add(1, 0);
+            return (layout(text, c, sz));
         }
 
         public Line render(String text) {
@@ -278,10 +305,23 @@ public class Text {
 
     public Tex tex() {
         if (tex == null)
-            tex = new TexI(img);
+            tex = mktex();
         return (tex);
     }
 
+    protected Tex mktex() {
+        return (new TexI(img));
+    }
+
+    /* Releases the texture, if any. The text can still be drawn
+     * afterwards, and will then get a new one. */
+    public void dispose() {
+        if (tex != null) {
+            tex.dispose();
+            tex = null;
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         String cmd = args[0].intern();
         if (cmd == "render") {
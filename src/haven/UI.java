@@ -40,7 +40,7 @@ public class UI {
     public static int MOD_SHIFT = 1, MOD_CTRL = 2, MOD_META = 4, MOD_SUPER = 8;
     public RootWidget root;
     private final LinkedList<Grab> keygrab = new LinkedList<Grab>(), mousegrab = new LinkedList<Grab>();
-    private final Map<Integer, Widget> widgets = new TreeMap<Integer, Widget>();
+    private final Map<Integer, Widget> widgets = new HashMap<Integer, Widget>();
     private final Map<Widget, Integer> rwidgets = new HashMap<Widget, Integer>();
     Environment env;
     Receiver rcvr;
@@ -49,6 +49,7 @@ public class UI {
     public boolean modshift, modctrl, modmeta, modsuper;
     public Object lasttip;
     double lastevent, lasttick;
+    private int tickno = 0;
     public Widget mouseon;
     public Console cons = new WidgetConsole();
     private Collection<AfterDraw> afterdraws = new LinkedList<AfterDraw>();
@@ -192,6 +193,23 @@ public class UI {
             gprefs.save();
             gprefsdirty = false;
         }
+        synchronized (this) {
+            tickno++;
+            notifyAll();
+        }
+    }
+
+    /* Waits for the next tick, for at most timeout seconds. Must be
+     * called with the UI locked, which is released while waiting. */
+    public void waittick(double timeout) throws InterruptedException {
+        int t = tickno;
+        double end = Utils.rtime() + timeout;
+        while (tickno == t) {
+            double left = end - Utils.rtime();
+            if (left <= 0)
+                break;
+            wait(Math.max((long) (left * 1000), 1));
+        }
     }
 
     public void gtick(Render out) {
@@ -314,10 +332,14 @@ public class UI {
             rcvr.rcvmsg(id, msg, args);
     }
 
+    /* Message names are expected to be interned already, which the
+     * message string table does for names decoded from the server. */
     public void uimsg(int id, String msg, Object... args) {
         Widget wdg = getwidget(id);
-        if (wdg != null)
-            wdg.uimsg(msg.intern(), args);
+        if (wdg != null) {
+            wdg.redraw();
+            wdg.uimsg(msg, args);
+        }
         else
             throw (new UIException("Uimsg to non-existent widget " + id, msg, args));
     }
@@ -336,8 +358,18 @@ public class UI {
         return (g.toArray(new Grab[0]));
     }
 
+    /* Keyboard input goes to the focused widget, which may well be
+     * inside a retained widget not under the mouse. */
+    private void redrawfocus() {
+        Widget f = root;
+        while (f.focused != null)
+            f = f.focused;
+        f.redraw();
+    }
+
     public void keydown(KeyEvent ev) {
         setmods(ev);
+        redrawfocus();
         for (Grab g : c(keygrab)) {
             if (g.wdg.keydown(ev))
                 return;
@@ -352,6 +384,7 @@ public class UI {
 
     public void keyup(KeyEvent ev) {
         setmods(ev);
+        redrawfocus();
         for (Grab g : c(keygrab)) {
             if (g.wdg.keyup(ev))
                 return;
@@ -51,6 +51,15 @@ public interface UIPanel extends Runnable {
         public final Queue<InputEvent> events = new LinkedList<>();
         public MouseEvent mousemv = null;
         private KeyEvent lastpress = null;
+        private long intime = 0;
+        /* Arrival time, in System.nanoTime(), of the earliest input
+         * handled by the last dispatch, or zero if there was none. */
+        public long dispatched = 0;
+
+        private void arrived() {
+            if (intime == 0)
+                intime = System.nanoTime();
+        }
 
         public void dispatch(UI ui) {
             Collection<InputEvent> copy;
@@ -60,6 +69,8 @@ public interface UIPanel extends Runnable {
                 this.mousemv = null;
                 copy = new ArrayList<>(events);
                 events.clear();
+                dispatched = intime;
+                intime = 0;
             }
             if (mousemv != null) {
                 Coord pos = new Coord(mousemv.getX(), mousemv.getY());
@@ -125,6 +136,7 @@ public interface UIPanel extends Runnable {
         public void keyTyped(KeyEvent e) {
             synchronized (this) {
                 events.add(e);
+                arrived();
                 notifyAll();
             }
         }
@@ -132,6 +144,7 @@ public interface UIPanel extends Runnable {
         public void keyPressed(KeyEvent e) {
             synchronized (this) {
                 events.add(e);
+                arrived();
                 notifyAll();
             }
         }
@@ -139,6 +152,7 @@ public interface UIPanel extends Runnable {
         public void keyReleased(KeyEvent e) {
             synchronized (this) {
                 events.add(e);
+                arrived();
                 notifyAll();
             }
         }
@@ -155,6 +169,7 @@ public interface UIPanel extends Runnable {
         public void mousePressed(MouseEvent e) {
             synchronized (this) {
                 events.add(e);
+                arrived();
                 notifyAll();
             }
         }
@@ -162,6 +177,7 @@ public interface UIPanel extends Runnable {
         public void mouseReleased(MouseEvent e) {
             synchronized (this) {
                 events.add(e);
+                arrived();
                 notifyAll();
             }
         }
@@ -169,6 +185,7 @@ public interface UIPanel extends Runnable {
         public void mouseWheelMoved(MouseWheelEvent e) {
             synchronized (this) {
                 events.add(e);
+                arrived();
                 notifyAll();
             }
         }
@@ -176,12 +193,14 @@ public interface UIPanel extends Runnable {
         public void mouseDragged(MouseEvent e) {
             synchronized (this) {
                 mousemv = e;
+                arrived();
             }
         }
 
         public void mouseMoved(MouseEvent e) {
             synchronized (this) {
                 mousemv = e;
+                arrived();
             }
         }
     }
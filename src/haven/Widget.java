@@ -32,6 +32,10 @@ import java.lang.reflect.*;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 
+import haven.render.*;
+import haven.render.Texture2D.Sampler2D;
+import haven.render.States.Blending.Factor;
+
 public class Widget {
     public UI ui;
     public Coord c, sz;
@@ -46,7 +50,18 @@ public class Widget {
     public KeyMatch gkey;
     public KeyBinding kb_gkey;
     private Widget prevtt;
-    static Map<String, Factory> types = new TreeMap<String, Factory>();
+    static Map<String, Factory> types = new HashMap<String, Factory>();
+    /* Factories of resource-defined widget types, by full type name
+     * including any version. */
+    private static final Map<String, Factory> rtypes = new HashMap<String, Factory>();
+    public static boolean retainui = Utils.getprefb("uiretain", true);
+    private static int trhits = 0, trmisses = 0;
+    /* Opt-in: draw this subtree from an offscreen copy, which is only
+     * redrawn when the subtree has been marked dirty. */
+    protected boolean retain = false;
+    private boolean rdirty = true;
+    private RCache rcache = null;
+    public int rhits = 0, rmisses = 0;
 
     @dolda.jglob.Discoverable
     @Target(ElementType.TYPE)
@@ -195,6 +210,12 @@ public class Widget {
                 return (types.get(name));
             }
         } else {
+            synchronized (types) {
+                Factory f = rtypes.get(name);
+                if (f != null)
+                    return (f);
+            }
+            String tname = name;
             int ver = -1, p;
             if ((p = name.indexOf(':')) > 0) {
                 ver = Integer.parseInt(name.substring(p + 1));
@@ -203,7 +224,11 @@ public class Widget {
             Indir<Resource> res = Resource.remote().load(name, ver);
             while (true) {
                 try {
-                    return (res.get().getcode(Factory.class, true));
+                    Factory f = res.get().getcode(Factory.class, true);
+                    synchronized (types) {
+                        rtypes.put(tname, f);
+                    }
+                    return (f);
                 } catch (Loading l) {
                     l.waitfor();
                 }
@@ -434,6 +459,7 @@ public class Widget {
     }
 
     public void link() {
+        parent.redraw();
         if (parent.lchild != null)
             parent.lchild.next = this;
         if (parent.child == null)
@@ -443,6 +469,7 @@ public class Widget {
     }
 
     public void linkfirst() {
+        parent.redraw();
         if (parent.child != null)
             parent.child.prev = this;
         if (parent.lchild == null)
@@ -452,6 +479,7 @@ public class Widget {
     }
 
     public void unlink() {
+        parent.redraw();
         if (next != null)
             next.prev = prev;
         if (prev != null)
@@ -503,6 +531,10 @@ public class Widget {
     public void rdispose() {
         for (Widget ch = child; ch != null; ch = ch.next)
             ch.rdispose();
+        if (rcache != null) {
+            rcache.dispose();
+            rcache = null;
+        }
         dispose();
     }
 
@@ -541,6 +573,7 @@ public class Widget {
     }
 
     public void setfocus(Widget w) {
+        redraw();
         if (focusctl) {
             if (w != focused) {
                 Widget last = focused;
@@ -718,6 +751,8 @@ public class Widget {
          * classes, but alas, this is Java. */
         anims.addAll(nanims);
         nanims.clear();
+        if (!anims.isEmpty() || animating())
+            redraw();
         for (Iterator<Anim> i = anims.iterator(); i.hasNext(); ) {
             Anim anim = i.next();
             if (anim.tick(dt))
@@ -744,10 +779,97 @@ public class Widget {
                 g2 = g.reclip(cc, wdg.sz);
             else
                 g2 = g.reclipl(cc, wdg.sz);
-            wdg.draw(g2);
+            if (wdg.retain && retainui && strict)
+                wdg.rdraw(g2);
+            else
+                wdg.draw(g2);
+        }
+    }
+
+    /* Whether this widget changes by itself from frame to frame.
+     * Retained ancestors are redrawn as long as it returns true. */
+    public boolean animating() {
+        return (false);
+    }
+
+    /* Marks this widget as changed, so that any retained ancestors get
+     * redrawn. */
+    public void redraw() {
+        for (Widget w = this; w != null; w = w.parent)
+            w.rdirty = true;
+    }
+
+    private static class RCache implements Disposable {
+        static final State cblend = new States.Blending(Factor.SRC_ALPHA, Factor.INV_SRC_ALPHA, Factor.ONE, Factor.INV_SRC_ALPHA);
+        static final State pblend = new States.Blending(Factor.ONE, Factor.INV_SRC_ALPHA);
+        final Coord sz;
+        final Sampler2D buf;
+        final TexRaw img;
+
+        RCache(Coord sz) {
+            this.sz = sz;
+            Texture2D tex = new Texture2D(sz, DataBuffer.Usage.STATIC, new VectorFormat(4, NumberFormat.UNORM8), null);
+            buf = new Sampler2D(tex);
+            buf.minfilter(Texture.Filter.NEAREST).magfilter(Texture.Filter.NEAREST);
+            img = new TexRaw(buf, true);
+        }
+
+        /* The contents are rendered with premultiplied alpha, so that
+         * they can be composited the same as if drawn directly. */
+        GOut graphics(GOut g) {
+            Pipe st = new BufPipe();
+            Area area = Area.sized(Coord.z, sz);
+            st.prep(new FrameInfo()).prep(new States.Viewport(area)).prep(new Ortho2D(area));
+            st.prep(new FragColor<>(buf.tex.image(0)));
+            st.prep(cblend);
+            g.out.clear(st, FragColor.fragcol, new FColor(0, 0, 0, 0));
+            return (new GOut(g.out, st, sz));
+        }
+
+        public void dispose() {
+            buf.dispose();
         }
     }
 
+    private void rdraw(GOut g) {
+        if (ui.mc.isect(rootpos(), sz)) {
+            /* Hovering may change anything, so draw it directly. */
+            rdirty = true;
+            draw(g);
+            return;
+        }
+        if ((rcache == null) || !rcache.sz.equals(sz)) {
+            if (rcache != null)
+                rcache.dispose();
+            rcache = new RCache(sz);
+            rdirty = true;
+        }
+        if (rdirty) {
+            rdirty = false;
+            GOut rg = rcache.graphics(g);
+            draw(rg);
+            rg.flush();
+            rmisses++;
+            trmisses++;
+        } else {
+            rhits++;
+            trhits++;
+        }
+        g.image(rcache.img, Coord.z, RCache.pblend);
+    }
+
+    public static String rstats() {
+        return (String.format("%,d hits, %,d redraws", trhits, trmisses));
+    }
+
+    static {
+        Console.setscmd("uiretain", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                Utils.setprefb("uiretain", retainui = Utils.parsebool(args[1], true));
+            }
+        });
+    }
+
     public void draw(GOut g) {
         draw(g, true);
     }
@@ -946,10 +1068,13 @@ public class Widget {
 
     public void move(Coord c) {
         this.c = c;
+        if (parent != null)
+            parent.redraw();
     }
 
     public void resize(Coord sz) {
         this.sz = sz;
+        redraw();
         for (Widget ch = child; ch != null; ch = ch.next)
             ch.presize();
         if (parent != null)
@@ -1141,12 +1266,16 @@ public class Widget {
 
     public void hide() {
         visible = false;
+        if (parent != null)
+            parent.redraw();
         if (canfocus && (parent != null))
             parent.delfocusable(this);
     }
 
     public void show() {
         visible = true;
+        if (parent != null)
+            parent.redraw();
         if (canfocus && (parent != null))
             parent.newfocusable(this);
     }
@@ -0,0 +1,228 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.util.zip.*;
+import java.lang.management.ManagementFactory;
+
+/* Compares map grid save and load through ZMessage against the path
+ * it replaced, which is kept here as OldZ, and checks that the two
+ * decode each other's output to the same values. Grids are synthetic,
+ * with 8 tilesets, 10000 tile bytes and 10000 heights. Run as
+ *   ZBench [LEVEL] */
+public class ZBench {
+    static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    static long sink;
+
+    /* ZMessage as it was before pooling: a new Inflater or Deflater
+     * per blob, and a freshly allocated read buffer per refill. */
+    public static class OldZ extends Message {
+        private Inflater zi = null;
+        private Deflater zo = null;
+        private boolean eof;
+        private final Message bk;
+
+        public OldZ(Message from) {
+            this.bk = from;
+        }
+
+        public boolean underflow(int hint) {
+            if (zi == null) {
+                if (eof)
+                    return (false);
+                zi = new Inflater();
+            }
+            boolean ret = false;
+            if (rbuf.length - rt < 1) {
+                byte[] n = new byte[Math.max(1024, rt - rh) + rt - rh];
+                System.arraycopy(rbuf, rh, n, 0, rt - rh);
+                rt -= rh;
+                rh = 0;
+                rbuf = n;
+            }
+            try {
+                while (true) {
+                    int rv = zi.inflate(rbuf, rt, rbuf.length - rt);
+                    if (rv == 0) {
+                        if (zi.finished()) {
+                            zi.end();
+                            zi = null;
+                            eof = true;
+                            return (ret);
+                        }
+                        if (zi.needsInput()) {
+                            if (bk.rt - bk.rh < 1) {
+                                if (!bk.underflow(128))
+                                    throw (new EOF("Unterminated z-blob"));
+                            }
+                            zi.setInput(bk.rbuf, bk.rh, bk.rt - bk.rh);
+                            bk.rh = bk.rt;
+                        }
+                    } else {
+                        rt += rv;
+                        return (true);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw (new FormatError("Malformed z-blob", e));
+            }
+        }
+
+        private void flush(boolean sync, boolean finish) {
+            if (zo == null)
+                zo = new Deflater(9);
+            zo.setInput(wbuf, 0, wh);
+            if (finish)
+                zo.finish();
+            while (!zo.needsInput() || (finish && !zo.finished())) {
+                if (bk.wt - bk.wh < 1)
+                    bk.overflow(1024);
+                int rv = zo.deflate(bk.wbuf, bk.wh, bk.wt - bk.wh, sync ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+                bk.wh += rv;
+            }
+            wh = 0;
+            if (finish) {
+                zo.end();
+                zo = null;
+            }
+        }
+
+        public void overflow(int min) {
+            if (wh > 1024)
+                flush(false, false);
+            if (wt - wh < min) {
+                int l = (wbuf.length == 0) ? 1024 : wbuf.length;
+                while (l < wh + min)
+                    l *= 2;
+                byte[] n = new byte[l];
+                System.arraycopy(wbuf, 0, n, 0, wh);
+                wbuf = n;
+                wt = wbuf.length;
+            }
+        }
+
+        public void finish() {
+            flush(false, true);
+        }
+    }
+
+    static void payload(Message z, Random rnd) {
+        z.addint64(rnd.nextLong()).addint64(12345);
+        z.adduint8(8);
+        for (int i = 0; i < 8; i++)
+            z.addstring("gfx/tiles/t" + i).adduint16(3).adduint8(i);
+        byte[] tiles = new byte[10000];
+        for (int i = 0; i < tiles.length; i++)
+            tiles[i] = (byte) (((i % 100) / 17 + (i / 1700)) & 7);
+        z.addbytes(tiles);
+        int h = 0;
+        for (int i = 0; i < 10000; i++)
+            z.addint16((short) (h += rnd.nextInt(5) - 2));
+    }
+
+    static long read(Message z) {
+        long ret = z.int64() + z.int64();
+        int n = z.uint8();
+        for (int i = 0; i < n; i++)
+            ret = (ret * 31) + z.string().hashCode() + z.uint16() + z.uint8();
+        ret = (ret * 31) + Arrays.hashCode(z.bytes(10000));
+        for (int i = 0; i < 10000; i++)
+            ret = (ret * 31) + z.int16();
+        return (ret);
+    }
+
+    static byte[] save(boolean nw, int level, Random rnd) {
+        MessageBuf out = new MessageBuf();
+        if (nw) {
+            ZMessage z = new ZMessage(out).level(level);
+            payload(z, rnd);
+            z.finish();
+        } else {
+            OldZ z = new OldZ(out);
+            payload(z, rnd);
+            z.finish();
+        }
+        return (out.fin());
+    }
+
+    static long load(boolean nw, byte[] blob) {
+        if (nw) {
+            ZMessage z = new ZMessage(new MessageBuf(blob), 8192);
+            long ret = read(z);
+            z.release();
+            return (ret);
+        } else {
+            return (read(new OldZ(new MessageBuf(blob))));
+        }
+    }
+
+    static void check(int level) {
+        byte[] o = save(false, 9, new Random(2)), n = save(true, level, new Random(2));
+        long ref = load(false, o);
+        if ((load(true, o) != ref) || (load(false, n) != ref) || (load(true, n) != ref))
+            throw (new AssertionError("old and new paths disagree at level " + level));
+    }
+
+    static void bench(boolean nw, int level) {
+        Random rnd = new Random(1);
+        byte[][] blobs = new byte[64][];
+        long tid = Thread.currentThread().getId();
+        long tsave = 0, tload = 0, asave = 0, aload = 0, size = 0;
+        int n = 0;
+        for (int r = 0; r < 40; r++) {
+            long a0 = threads.getThreadAllocatedBytes(tid), t0 = System.nanoTime();
+            for (int i = 0; i < blobs.length; i++)
+                blobs[i] = save(nw, level, rnd);
+            long a1 = threads.getThreadAllocatedBytes(tid), t1 = System.nanoTime();
+            for (int i = 0; i < blobs.length; i++)
+                sink += load(nw, blobs[i]);
+            long a2 = threads.getThreadAllocatedBytes(tid), t2 = System.nanoTime();
+            /* The first rounds are warmup. */
+            if (r >= 10) {
+                tsave += t1 - t0;
+                tload += t2 - t1;
+                asave += a1 - a0;
+                aload += a2 - a1;
+                n += blobs.length;
+                for (byte[] blob : blobs)
+                    size += blob.length;
+            }
+        }
+        System.out.printf("%s lvl %d: save %.1f us/grid (%d B alloc), load %.1f us/grid (%d B alloc), %d B/grid%n",
+                          nw ? "new" : "old", nw ? level : 9, tsave / 1e3 / n, asave / n, tload / 1e3 / n, aload / n, size / n);
+    }
+
+    public static void main(String[] args) {
+        int level = (args.length > 0) ? Integer.parseInt(args[0]) : 9;
+        check(level);
+        bench(false, 9);
+        bench(true, level);
+        if (sink == 42)
+            System.out.println(sink);
+    }
+}
@@ -26,42 +26,98 @@
 
 package haven;
 
+import java.util.*;
 import java.util.zip.*;
 import java.io.*;
 
 public class ZMessage extends Message implements Closeable, Flushable {
+    /* Inflaters and deflaters own sizeable native buffers, so they
+     * are reset and reused rather than created per blob. */
+    private static final int poolsz = 4;
+    private static final ArrayDeque<Inflater> ipool = new ArrayDeque<>();
+    private static final ArrayDeque<Deflater> dpool = new ArrayDeque<>();
     private Inflater zi = null;
     private Deflater zo = null;
     private boolean eof;
     private final Message bk;
+    private final int window;
+    private int level = 9;
 
-    public ZMessage(Message from) {
+    /* The size hint is the expected size of the uncompressed data,
+     * if known, and is used to size the inflation buffer. */
+    public ZMessage(Message from, int sizehint) {
         this.bk = from;
+        this.window = Utils.clip(sizehint, 1024, 65536);
     }
 
-    public boolean underflow(int hint) {
+    public ZMessage(Message from) {
+        this(from, 8192);
+    }
+
+    /* Sets the compression level to use when writing. Must be called
+     * before anything has been flushed. */
+    public ZMessage level(int level) {
+        this.level = level;
+        return (this);
+    }
+
+    private static Inflater getinflater() {
+        synchronized (ipool) {
+            Inflater ret = ipool.poll();
+            return ((ret == null) ? new Inflater() : ret);
+        }
+    }
+
+    private static Deflater getdeflater(int level) {
+        Deflater ret;
+        synchronized (dpool) {
+            ret = dpool.poll();
+        }
+        if (ret == null)
+            return (new Deflater(level));
+        ret.setLevel(level);
+        return (ret);
+    }
+
+    private static void release(Inflater zi) {
+        zi.reset();
+        synchronized (ipool) {
+            if (ipool.size() < poolsz) {
+                ipool.push(zi);
+                return;
+            }
+        }
+        zi.end();
+    }
+
+    private static void release(Deflater zo) {
+        zo.reset();
+        synchronized (dpool) {
+            if (dpool.size() < poolsz) {
+                dpool.push(zo);
+                return;
+            }
+        }
+        zo.end();
+    }
+
+    /* Inflates directly into the given buffer, returning the number
+     * of bytes produced, or -1 at the end of the blob. */
+    private int inflate(byte[] buf, int off, int len) {
         if (zi == null) {
             if (eof)
-                return (false);
-            zi = new Inflater();
-        }
-        boolean ret = false;
-        if (rbuf.length - rt < 1) {
-            byte[] n = new byte[Math.max(1024, rt - rh) + rt - rh];
-            System.arraycopy(rbuf, rh, n, 0, rt - rh);
-            rt -= rh;
-            rh = 0;
-            rbuf = n;
+                return (-1);
+            zi = getinflater();
         }
         try {
             while (true) {
-                int rv = zi.inflate(rbuf, rt, rbuf.length - rt);
+                int rv = zi.inflate(buf, off, len);
                 if (rv == 0) {
                     if (zi.finished()) {
-                        zi.end();
+                        release(zi);
                         zi = null;
                         eof = true;
-                        return (ret);
+                        return (-1);
                     }
                     if (zi.needsInput()) {
                         if (bk.rt - bk.rh < 1) {
@@ -72,8 +128,7 @@ public class ZMessage extends Message implements Closeable, Flushable {
                         bk.rh = bk.rt;
                     }
                 } else {
-                    rt += rv;
-                    return (true);
+                    return (rv);
                 }
             }
         } catch (DataFormatException e) {
@@ -81,9 +136,63 @@ public class ZMessage extends Message implements Closeable, Flushable {
         }
     }
 
+    public boolean underflow(int hint) {
+        if ((zi == null) && eof)
+            return (false);
+        if (rbuf.length - rt < 1) {
+            int live = rt - rh;
+            if ((rbuf.length > 0) && (live <= rbuf.length / 2)) {
+                System.arraycopy(rbuf, rh, rbuf, 0, live);
+            } else {
+                byte[] n = new byte[Math.max(window, live * 2)];
+                System.arraycopy(rbuf, rh, n, 0, live);
+                rbuf = n;
+            }
+            rt = live;
+            rh = 0;
+        }
+        int rv = inflate(rbuf, rt, rbuf.length - rt);
+        if (rv < 0)
+            return (false);
+        rt += rv;
+        return (true);
+    }
+
+    public void bytes(byte[] b, int off, int len) {
+        int olen = len;
+        int n = Math.min(len, rt - rh);
+        System.arraycopy(rbuf, rh, b, off, n);
+        rh += n;
+        off += n;
+        len -= n;
+        while (len > 0) {
+            int rv = inflate(b, off, len);
+            if (rv < 0)
+                throw (new EOF("Required " + olen + " bytes, got only " + (olen - len)));
+            off += rv;
+            len -= rv;
+        }
+    }
+
+    public byte[] bytes(int n) {
+        byte[] ret = new byte[n];
+        bytes(ret, 0, n);
+        return (ret);
+    }
+
+    /* Lets a reader that stops before the end of the blob return its
+     * inflater to the pool. */
+    public void release() {
+        if (zi != null) {
+            release(zi);
+            zi = null;
+        }
+        eof = true;
+    }
+
     private void flush(boolean sync, boolean finish) {
         if (zo == null)
-            zo = new Deflater(9);
+            zo = getdeflater(level);
         zo.setInput(wbuf, 0, wh);
         if (finish)
             zo.finish();
@@ -95,7 +204,7 @@ public class ZMessage extends Message implements Closeable, Flushable {
         }
         wh = 0;
         if (finish) {
-            zo.end();
+            release(zo);
             zo = null;
         }
     }
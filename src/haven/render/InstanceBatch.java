@@ -47,6 +47,9 @@ public interface InstanceBatch {
 
     public <T extends State> void update(State.Slot<? super T> slot, T state);
 
+    public default void uploaded(int ninst, int bytes) {
+    }
+
     public static interface Client {
         public void iupdate(int idx);
 
@@ -62,7 +65,13 @@ public interface InstanceBatch {
     public static class AttributeData implements DataBuffer.PartFiller<VertexArray.Buffer>, haven.Disposable {
         public final InstanceBatch bat;
         public final Input[] fmt;
-        private int bufsz, minupd = -1, maxupd = -1;
+        /* Runs of dirty instances closer than this are uploaded
+         * together, as rewriting a few unchanged records is cheaper
+         * than issuing another update. */
+        public static final int MERGEGAP = 4;
+        private int bufsz, ndirty = 0;
+        private int[] dirty = new int[16];
+        private boolean[] isdirty;
         private VertexArray.Buffer buf = null;
         private Environment curenv;
 
@@ -92,6 +101,7 @@ public interface InstanceBatch {
             this.fmt = fmt;
 
             this.bufsz = Math.max(16, bat.instances() * 2);
+            this.isdirty = new boolean[this.bufsz];
             if (stride() > 0)
                 this.buf = new VertexArray.Buffer(this.bufsz * stride(), DataBuffer.Usage.STREAM, this);
         }
@@ -124,10 +134,26 @@ public interface InstanceBatch {
         }
 
         public void commit(Render g) {
-            if (minupd >= 0) {
-                int st = stride();
-                g.update(this.buf, this, minupd * st, (maxupd + 1) * st);
+            if (ndirty == 0)
+                return;
+            int st = stride(), ni = bat.instances();
+            int[] dirty = this.dirty;
+            Arrays.sort(dirty, 0, ndirty);
+            int n = 0, bytes = 0;
+            for (int i = 0; i < ndirty; ) {
+                int from = dirty[i], to = from + 1;
+                if (from >= ni)
+                    break;
+                for (i++; (i < ndirty) && (dirty[i] < ni) && (dirty[i] - to < MERGEGAP); i++)
+                    to = dirty[i] + 1;
+                g.update(this.buf, this, from * st, to * st);
+                n += to - from;
+                bytes += (to - from) * st;
             }
+            for (int i = 0; i < ndirty; i++)
+                isdirty[dirty[i]] = false;
+            ndirty = 0;
+            bat.uploaded(n, bytes);
         }
 
         public boolean iupdate(int idx) {
@@ -138,13 +164,16 @@ public interface InstanceBatch {
                 this.bufsz = idx * 2;
                 this.buf.dispose();
                 this.buf = new VertexArray.Buffer(this.bufsz * st, DataBuffer.Usage.STREAM, this);
+                /* The new buffer is filled in its entirety. */
+                this.isdirty = new boolean[this.bufsz];
+                this.ndirty = 0;
                 return (true);
             } else {
-                if (minupd < 0) {
-                    minupd = maxupd = idx;
-                } else {
-                    minupd = Math.min(minupd, idx);
-                    maxupd = Math.max(maxupd, idx);
+                if (!isdirty[idx]) {
+                    if (ndirty == dirty.length)
+                        dirty = Arrays.copyOf(dirty, dirty.length * 2);
+                    dirty[ndirty++] = idx;
+                    isdirty[idx] = true;
                 }
                 return (false);
             }
@@ -43,6 +43,7 @@ public class InstanceList implements RenderList<Rendered>, RenderList.Adapter, D
     private final Map<Pipe, Object> pipemap = new IdentityHashMap<>();
     private final Set<InstancedSlot> dirty = new HashSet<>();
     private int nbypass, ninvalid, nuinst, nbatches, ninst;
+    private int fbatches, finst, fbytes, lbatches, linst, lbytes;
 
     private static int[][][] _stcounts = {};
 
@@ -479,6 +480,12 @@ public class InstanceList implements RenderList<Rendered>, RenderList.Adapter, D
             dirty.add(this);
         }
 
+        public void uploaded(int ninst, int bytes) {
+            fbatches++;
+            finst += ninst;
+            fbytes += bytes;
+        }
+
         private void commit(Render g) {
             if (backdirty) {
                 clupdate(this);
@@ -723,11 +730,15 @@ public class InstanceList implements RenderList<Rendered>, RenderList.Adapter, D
 
     public void commit(Render g) {
         synchronized (this) {
+            fbatches = finst = fbytes = 0;
             for (Iterator<InstancedSlot> i = dirty.iterator(); i.hasNext(); ) {
                 InstancedSlot slot = i.next();
                 slot.commit(g);
                 i.remove();
             }
+            lbatches = fbatches;
+            linst = finst;
+            lbytes = fbytes;
         }
     }
 
@@ -773,6 +784,6 @@ public class InstanceList implements RenderList<Rendered>, RenderList.Adapter, D
     }
 
     public String stats() {
-        return (String.format("%,d+%,d(%,d) %d %d", nuinst, nbatches, ninst, ninvalid, nbypass));
+        return (String.format("%,d+%,d(%,d) %d %d, upd %d(%,d) %,dB", nuinst, nbatches, ninst, ninvalid, nbypass, lbatches, linst, lbytes));
     }
 }
@@ -0,0 +1,94 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import haven.*;
+
+public class LOD {
+    /* Minimum projected radius, in pixels, of each detail level;
+     * anything smaller than the last band is at level SKIP. Only
+     * animation rates are keyed to these levels (see Gob.lodrate);
+     * geometry is drawn at full detail at every level. */
+    public static final float[] bands = {48, 12, 3};
+    public static final int FULL = 0, SKIP = bands.length;
+    private static final AtomicIntegerArray cur = new AtomicIntegerArray(SKIP + 1);
+    private static int[] last = new int[SKIP + 1];
+
+    /* Projected radius, in pixels, of a sphere of radius rad around
+     * the object-space point c under the given state. */
+    public static float scrrad(Pipe state, Coord3f c, float rad) {
+        States.Viewport vp = state.get(States.viewport);
+        if (vp == null)
+            return (Float.POSITIVE_INFINITY);
+        float[] e = Homo3D.camxf(state).mul4(Homo3D.locxf(state).mul4(c.to4a(1)));
+        Matrix4f prj = Homo3D.prjxf(state);
+        float w = (prj.m[3] * e[0]) + (prj.m[7] * e[1]) + (prj.m[11] * e[2]) + (prj.m[15] * e[3]);
+        if (w <= 0)
+            return (0);
+        return ((rad * prj.m[5] * vp.area.sz().y * 0.5f) / w);
+    }
+
+    public static int level(float scrrad) {
+        for (int i = 0; i < bands.length; i++) {
+            if (scrrad >= bands[i])
+                return (i);
+        }
+        return (SKIP);
+    }
+
+    public static int level(Pipe state, Coord3f c, float rad) {
+        return (level(scrrad(state, c, rad)));
+    }
+
+    public static void count(int level) {
+        cur.incrementAndGet(level);
+    }
+
+    public static void cycle() {
+        int[] n = new int[SKIP + 1];
+        for (int i = 0; i <= SKIP; i++)
+            n[i] = cur.getAndSet(i, 0);
+        last = n;
+    }
+
+    public static int[] histogram() {
+        return (last);
+    }
+
+    public static String stats() {
+        int[] h = last;
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < h.length; i++) {
+            if (i > 0)
+                buf.append('/');
+            buf.append(h[i]);
+        }
+        return (buf.toString());
+    }
+}
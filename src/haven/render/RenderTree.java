@@ -35,16 +35,30 @@ import haven.*;
 import static haven.Utils.eq;
 
 public class RenderTree implements RenderList.Adapter {
+    private static final int J_ADD = 1, J_REMOVE = 2, J_UPDATE = 3;
     private final Lock lock = new ReentrantLock();
     private final TreeSlot root;
     private final List<Client<?>> clients = new ArrayList<>();
     private int nslots, nleaves;
-
-    public RenderTree() {
+    /* In journaling mode, client notifications are not delivered as
+     * the tree is changed, but collected here, coalesced per slot and
+     * per state group, and delivered in one batch by flush(). */
+    public final boolean journal;
+    private final Object jmon = new Object();
+    private Map<TreeSlot, Integer> jslots = new LinkedHashMap<>(), fslots = new LinkedHashMap<>();
+    private Map<Pipe, int[]> jgroups = new IdentityHashMap<>(), fgroups = new IdentityHashMap<>();
+    private int jops, jbatch, jnotified;
+
+    public RenderTree(boolean journal) {
+        this.journal = journal;
         root = new TreeSlot(this, null, null);
         nslots = nleaves = 1;
     }
 
+    public RenderTree() {
+        this(false);
+    }
+
     public Locked lock() {
         return (new Locked(this.lock));
     }
@@ -79,6 +93,180 @@ public class RenderTree implements RenderList.Adapter {
         void updated(Pipe group, int[] mask) {
             list.update(group, mask);
         }
+
+        /* Notifications that threw during a flush, and which are
+         * retried on the next one. Loading is expected and retried
+         * quietly. Other errors are reported the first time, and
+         * kept from stopping the rest of the batch, or the other
+         * clients, from being delivered. */
+        private Map<TreeSlot, Integer> retry = null;
+        private Map<Pipe, int[]> gretry = null;
+
+        @SuppressWarnings("unchecked")
+        private void apply(TreeSlot slot, int op, boolean again) {
+            try {
+                if (op == J_ADD)
+                    list.add((RenderList.Slot<R>) slot);
+                else if (op == J_REMOVE)
+                    list.remove((RenderList.Slot<R>) slot);
+                else
+                    list.update((RenderList.Slot<R>) slot);
+            } catch (RuntimeException e) {
+                if (!again && !(e instanceof Loading))
+                    new Warning(e, "could not notify render list of " + slot.node).issue();
+                if (retry == null)
+                    retry = new LinkedHashMap<>();
+                retry.put(slot, op);
+            }
+        }
+
+        private void apply(Pipe group, int[] mask, boolean again) {
+            try {
+                list.update(group, mask);
+            } catch (RuntimeException e) {
+                if (!again && !(e instanceof Loading))
+                    new Warning(e, "could not notify render list of state change").issue();
+                if (gretry == null)
+                    gretry = new IdentityHashMap<>();
+                int[] prev = gretry.get(group);
+                gretry.put(group, (prev == null) ? mask : union(prev, mask));
+            }
+        }
+
+        int apply(Map<TreeSlot, Integer> slots, Map<Pipe, int[]> groups) {
+            int n = 0;
+            if ((retry != null) && !retry.isEmpty()) {
+                Map<TreeSlot, Integer> prev = retry;
+                retry = null;
+                for (Map.Entry<TreeSlot, Integer> ent : prev.entrySet()) {
+                    apply(ent.getKey(), ent.getValue(), true);
+                    n++;
+                }
+            }
+            if ((gretry != null) && !gretry.isEmpty()) {
+                Map<Pipe, int[]> prev = gretry;
+                gretry = null;
+                for (Map.Entry<Pipe, int[]> ent : prev.entrySet()) {
+                    apply(ent.getKey(), ent.getValue(), true);
+                    n++;
+                }
+            }
+            for (Map.Entry<TreeSlot, Integer> ent : slots.entrySet()) {
+                TreeSlot slot = ent.getKey();
+                if (!type.isInstance(slot.node))
+                    continue;
+                int op = ent.getValue();
+                Integer rop = (retry == null) ? null : retry.get(slot);
+                if (op == J_REMOVE) {
+                    if (rop != null) {
+                        retry.remove(slot);
+                        if (rop == J_ADD)
+                            continue;
+                    }
+                    apply(slot, op, false);
+                    n++;
+                } else if (rop == null) {
+                    apply(slot, op, false);
+                    n++;
+                }
+            }
+            for (Map.Entry<Pipe, int[]> ent : groups.entrySet()) {
+                apply(ent.getKey(), ent.getValue(), false);
+                n++;
+            }
+            return (n);
+        }
+    }
+
+    private void jslot(TreeSlot slot, int op) {
+        synchronized (jmon) {
+            jops++;
+            Integer prev = jslots.get(slot);
+            if (prev == null) {
+                jslots.put(slot, op);
+            } else if (prev == J_ADD) {
+                /* Clients have not seen the slot yet, so an update is
+                 * covered by the addition, and a removal cancels it. */
+                if (op == J_REMOVE)
+                    jslots.remove(slot);
+            } else if (op == J_REMOVE) {
+                jslots.put(slot, op);
+            }
+        }
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] ret = Arrays.copyOf(a, a.length + b.length);
+        int n = a.length;
+        outer:
+        for (int id : b) {
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] == id)
+                    continue outer;
+            }
+            ret[n++] = id;
+        }
+        return ((n == ret.length) ? ret : Arrays.copyOf(ret, n));
+    }
+
+    private void jgroup(Pipe group, int[] mask) {
+        synchronized (jmon) {
+            jops++;
+            int[] prev = jgroups.get(group);
+            jgroups.put(group, (prev == null) ? mask : union(prev, mask));
+        }
+    }
+
+    private void updated(TreeSlot slot) {
+        if (journal) {
+            jslot(slot, J_UPDATE);
+            return;
+        }
+        synchronized (clients) {
+            clients.forEach(cl -> cl.updated(slot));
+        }
+    }
+
+    private void updated(Pipe group, int[] mask) {
+        if (journal) {
+            jgroup(group, mask);
+            return;
+        }
+        synchronized (clients) {
+            clients.forEach(cl -> cl.updated(group, mask));
+        }
+    }
+
+    /* Delivers the notifications collected since the last flush to
+     * all clients. Meant to be called once per frame, before the
+     * clients are used for drawing. */
+    public void flush() {
+        if (!journal)
+            return;
+        try (Locked lk = lock()) {
+            Map<TreeSlot, Integer> slots;
+            Map<Pipe, int[]> groups;
+            synchronized (jmon) {
+                slots = jslots;
+                groups = jgroups;
+                jslots = fslots;
+                jgroups = fgroups;
+                jbatch = slots.size() + groups.size();
+            }
+            int n = 0;
+            try {
+                synchronized (clients) {
+                    for (Client<?> cl : clients)
+                        n += cl.apply(slots, groups);
+                }
+            } finally {
+                jnotified = n;
+                slots.clear();
+                groups.clear();
+                fslots = slots;
+                fgroups = groups;
+            }
+        }
     }
 
     public static class Inheritance implements GroupPipe {
@@ -444,6 +632,32 @@ public class RenderTree implements RenderList.Adapter {
             return (parent);
         }
 
+        private void notifyadd(TreeSlot ch) {
+            synchronized (tree.clients) {
+                ListIterator<Client<?>> it = tree.clients.listIterator();
+                try {
+                    while (it.hasNext()) {
+                        Client<?> cl = it.next();
+                        cl.added(ch);
+                    }
+                } catch (RuntimeException e) {
+                    try {
+                        removech(ch);
+                        it.previous();
+                        while (it.hasPrevious()) {
+                            Client<?> cl = it.previous();
+                            cl.removed(ch);
+                        }
+                    } catch (RuntimeException e2) {
+                        Error err = new Error("Unexpected non-local exit", e2);
+                        err.addSuppressed(e);
+                        throw (err);
+                    }
+                    throw (e);
+                }
+            }
+        }
+
         public TreeSlot add(Node n, Pipe.Op state) {
             try (Locked lk = tree.lock()) {
                 if ((parent != null) && (pidx < 0))
@@ -451,29 +665,10 @@ public class RenderTree implements RenderList.Adapter {
                 TreeSlot ch = new TreeSlot(tree, this, n);
                 ch.cstate = state;
                 addch(ch);
-                synchronized (tree.clients) {
-                    ListIterator<Client<?>> it = tree.clients.listIterator();
-                    try {
-                        while (it.hasNext()) {
-                            Client<?> cl = it.next();
-                            cl.added(ch);
-                        }
-                    } catch (RuntimeException e) {
-                        try {
-                            removech(ch);
-                            it.previous();
-                            while (it.hasPrevious()) {
-                                Client<?> cl = it.previous();
-                                cl.removed(ch);
-                            }
-                        } catch (RuntimeException e2) {
-                            Error err = new Error("Unexpected non-local exit", e2);
-                            err.addSuppressed(e);
-                            throw (err);
-                        }
-                        throw (e);
-                    }
-                }
+                if (tree.journal)
+                    tree.jslot(ch, J_ADD);
+                else
+                    notifyadd(ch);
                 if (n != null) {
                     try {
                         n.added(ch);
@@ -508,8 +703,12 @@ public class RenderTree implements RenderList.Adapter {
                 try {
                     if (node != null)
                         node.removed(this);
-                    synchronized (tree.clients) {
-                        tree.clients.forEach(cl -> cl.removed(this));
+                    if (tree.journal) {
+                        tree.jslot(this, J_REMOVE);
+                    } else {
+                        synchronized (tree.clients) {
+                            tree.clients.forEach(cl -> cl.removed(this));
+                        }
                     }
                 } catch (RuntimeException e) {
                     throw (new Error("Unexpected non-local exit", e));
@@ -604,11 +803,8 @@ public class RenderTree implements RenderList.Adapter {
                 for (TreeSlot rdep : cdeps)
                     rdep.rdepupd();
                 Pipe pdst = this.pdstate;
-                if (pdst != null) {
-                    synchronized (tree.clients) {
-                        tree.clients.forEach(cl -> cl.updated(pdst, tch));
-                    }
-                }
+                if (pdst != null)
+                    tree.updated(pdst, tch);
             } else {
                 /* XXX? Optimize specifically for non-defined slots being updated? */
                 updtotal(false);
@@ -622,9 +818,7 @@ public class RenderTree implements RenderList.Adapter {
                 setdstate(mkdstate(cstate, ostate));
             for (TreeSlot child : children())
                 child.updtotal(true);
-            synchronized (tree.clients) {
-                tree.clients.forEach(cl -> cl.updated(this));
-            }
+            tree.updated(this);
         }
 
         private DepInfo dstate() {
@@ -689,9 +883,7 @@ public class RenderTree implements RenderList.Adapter {
         public void update() {
             if ((parent != null) && (pidx < 0))
                 throw (new SlotRemoved());
-            synchronized (tree.clients) {
-                tree.clients.forEach(cl -> cl.updated(this));
-            }
+            tree.updated(this);
         }
 
         public class SlotPipe implements Pipe {
@@ -869,6 +1061,10 @@ public class RenderTree implements RenderList.Adapter {
     }
 
     public <R> void add(RenderList<R> list, Class<? extends R> type) {
+        /* A new client has already been given the current slots of
+         * the tree, so pending notifications are only for the
+         * existing ones. */
+        flush();
         synchronized (clients) {
             clients.add(new Client<R>(type, list));
         }
@@ -893,6 +1089,11 @@ public class RenderTree implements RenderList.Adapter {
     }
 
     public String stats() {
+        if (journal) {
+            synchronized (jmon) {
+                return (String.format("%,d L / %,d N, J: %,d ops, %,d batched, %,d notified", nleaves, nslots, jops, jbatch, jnotified));
+            }
+        }
         return (String.format("%,d L / %,d N", nleaves, nslots));
     }
 }
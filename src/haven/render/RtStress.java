@@ -0,0 +1,205 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import haven.*;
+
+/* Churns slots of a RenderTree from several threads while a draw
+ * thread locks and flushes it every frame, and reports the time spent
+ * in mutation calls and in locked frames, and the number of client
+ * notifications, with and without journaling. Afterwards, the render
+ * list must hold exactly the live slots. In journaling mode, a second
+ * render list also fails the first addition of some slots, mostly with
+ * Loading and a few times with other errors, and must catch up all
+ * the same, without holding up the first. Run as
+ *   RtStress [ITERATIONS] */
+public class RtStress {
+    static class Node implements RenderTree.Node {
+    }
+
+    static void spin(int ns) {
+        long e = System.nanoTime() + ns;
+        while (System.nanoTime() < e);
+    }
+
+    static class List implements RenderList<Node> {
+        final Set<RenderList.Slot<?>> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        long adds, removes, updates, gupdates;
+
+        public synchronized void add(Slot<? extends Node> slot) {
+            slot.state();
+            spin(3000);
+            if (!present.add(slot))
+                throw (new AssertionError("slot added twice"));
+            adds++;
+        }
+
+        public synchronized void remove(Slot<? extends Node> slot) {
+            spin(1000);
+            if (!present.remove(slot))
+                throw (new AssertionError("absent slot removed"));
+            removes++;
+        }
+
+        public synchronized void update(Slot<? extends Node> slot) {
+            slot.state();
+            spin(3000);
+            if (!present.contains(slot))
+                throw (new AssertionError("absent slot updated"));
+            updates++;
+        }
+
+        public synchronized void update(Pipe group, int[] mask) {
+            spin(500);
+            gupdates++;
+        }
+
+        void check(RenderTree tree) {
+            int live = 0;
+            for (RenderTree.Slot slot : tree.slots()) {
+                if (slot.obj() instanceof Node) {
+                    live++;
+                    if (!present.contains(slot))
+                        throw (new AssertionError("live slot missing from render list"));
+                }
+            }
+            if (live != present.size())
+                throw (new AssertionError(present.size() + " slots in render list, but " + live + " live"));
+        }
+    }
+
+    static class Flaky extends List {
+        final Set<RenderList.Slot<?>> tried = Collections.newSetFromMap(new IdentityHashMap<>());
+        int nadd, failed, errors;
+
+        public synchronized void add(Slot<? extends Node> slot) {
+            if (tried.add(slot) && ((nadd++ % 50) == 0)) {
+                failed++;
+                if (errors < 3) {
+                    errors++;
+                    throw (new RuntimeException("simulated failure"));
+                }
+                throw (new Loading());
+            }
+            super.add(slot);
+        }
+
+        public synchronized void remove(Slot<? extends Node> slot) {
+            tried.remove(slot);
+            super.remove(slot);
+        }
+    }
+
+    static void run(boolean journal, int iters) throws InterruptedException {
+        int nthr = 4;
+        RenderTree tree = new RenderTree(journal);
+        List list = new List();
+        Flaky flaky = journal ? new Flaky() : null;
+        tree.add(list, Node.class);
+        if (flaky != null)
+            tree.add(flaky, Node.class);
+        AtomicLong mtime = new AtomicLong(), mmax = new AtomicLong(), nmut = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        long[] fstat = new long[3];
+        Thread draw = new Thread(() -> {
+            while (!done.get()) {
+                long st = System.nanoTime();
+                try (Locked lk = tree.lock()) {
+                    tree.flush();
+                    spin(1000000);
+                }
+                long t = System.nanoTime() - st;
+                fstat[0] += t;
+                fstat[1] = Math.max(fstat[1], t);
+                fstat[2]++;
+                try {
+                    Thread.sleep(15);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        });
+        draw.start();
+        Thread[] threads = new Thread[nthr];
+        for (int t = 0; t < nthr; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random rnd = new Random(seed);
+                java.util.List<RenderTree.Slot> mine = new ArrayList<>();
+                for (int i = 0; i < iters; i++) {
+                    int r = rnd.nextInt(10);
+                    long st = System.nanoTime();
+                    if ((mine.size() < 50) || (r < 3)) {
+                        RenderTree.Slot slot = tree.add(new Node(), new BaseColor(rnd.nextFloat(), 0, 0, 1));
+                        if (rnd.nextBoolean())
+                            slot.add(new Node());
+                        mine.add(slot);
+                    } else if (r < 6) {
+                        mine.remove(rnd.nextInt(mine.size())).remove();
+                    } else {
+                        RenderTree.Slot slot = mine.get(rnd.nextInt(mine.size()));
+                        for (int o = 0; o < 3; o++)
+                            slot.ostate(new BaseColor(rnd.nextFloat(), 1, 0, 1));
+                    }
+                    long d = System.nanoTime() - st;
+                    mtime.addAndGet(d);
+                    nmut.incrementAndGet();
+                    mmax.accumulateAndGet(d, Math::max);
+                }
+            });
+        }
+        long st = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        double wall = (System.nanoTime() - st) / 1e6;
+        done.set(true);
+        draw.join();
+        /* Once to deliver the rest, and once to retry what failed. */
+        tree.flush();
+        tree.flush();
+        list.check(tree);
+        if (flaky != null)
+            flaky.check(tree);
+        System.out.printf("journal=%s: %,d mutations in %.0f ms; mean %.1f us, max %.2f ms per mutation call; %d frames, mean %.2f ms, max %.2f ms locked%n",
+                          journal, nmut.get(), wall, mtime.get() / 1e3 / nmut.get(), mmax.get() / 1e6, fstat[2], fstat[0] / 1e6 / fstat[2], fstat[1] / 1e6);
+        System.out.printf("  client calls: %,d add, %,d remove, %,d update, %,d group update (%,d total), %d live%n",
+                          list.adds, list.removes, list.updates, list.gupdates, list.adds + list.removes + list.updates + list.gupdates, list.present.size());
+        if (flaky != null)
+            System.out.printf("  failing list: %d additions failed and were retried, %d of them with errors%n", flaky.failed, flaky.errors);
+        System.out.println("  " + tree.stats());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int iters = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        run(false, iters);
+        run(true, iters);
+    }
+}
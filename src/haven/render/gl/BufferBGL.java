@@ -30,22 +30,58 @@ import java.util.*;
 import javax.media.opengl.*;
 
 public class BufferBGL extends BGL {
+    public static boolean stream = true;
     public static final BufferBGL empty = new BufferBGL(0) {
         protected void add(Command cmd) {
             throw (new RuntimeException());
         }
     };
     private Command[] list;
-    private int n = 0;
+    protected int n = 0;
+
+    /* Subclasses with their own encoding pass no list; they count
+     * their commands in n but must override everything else that
+     * reads the list. */
+    protected BufferBGL(Command[] list) {
+        this.list = list;
+    }
 
     public BufferBGL(int c) {
-        list = new Command[Math.max(c, 1)];
+        this(new Command[Math.max(c, 1)]);
     }
 
     public BufferBGL() {
         this(128);
     }
 
+    /* Creates a buffer for recording, using the compact opcode
+     * encoding of StreamBGL unless it has been turned off. */
+    public static BufferBGL create(int c) {
+        return (stream ? new StreamBGL(c) : new BufferBGL(c));
+    }
+
+    public static BufferBGL create() {
+        return (create(128));
+    }
+
+    /* Number of recorded commands. */
+    public int size() {
+        return (n);
+    }
+
+    /* Approximate size of the recorded command list, in bytes. */
+    public int bytes() {
+        return (list.length * 4);
+    }
+
+    /* Plain command lists cannot be shadowed, so anything they did is
+     * unknown to the shadow afterwards. */
+    public void run(GL3 gl, GLShadow sh) {
+        run(gl);
+        if ((sh != null) && (n > 0))
+            sh.invalidate();
+    }
+
     public void run(GL3 gl) {
         for (int i = 0; i < n; i++) {
             try {
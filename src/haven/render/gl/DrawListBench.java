@@ -0,0 +1,177 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven.render.gl;
+
+import java.util.*;
+import java.util.function.*;
+import javax.media.opengl.*;
+
+import haven.*;
+import haven.render.*;
+
+/* Measures the CPU cost of keeping a GLDrawList up to date and
+ * emitting it, for some numbers of slots and a given rate of slot
+ * churn per frame. Run as
+ *   DrawListBench [-n] [FRAMES [CHURN-PER-MILLE [SLOTS...]]]
+ * with an offscreen GL 3 context, or with -n, headlessly against
+ * NullGL. */
+public class DrawListBench {
+    static class Mesh implements Rendered, RenderTree.Node {
+        final Model mod;
+
+        Mesh(Model mod) {
+            this.mod = mod;
+        }
+
+        public void draw(Pipe st, Render g) {
+            g.draw(st, mod);
+        }
+    }
+
+    static Model[] models(int n) {
+        VertexArray.Layout fmt = new VertexArray.Layout(new VertexArray.Layout.Input(Homo3D.vertex, new VectorFormat(3, NumberFormat.FLOAT32), 0, 0, 12));
+        Model[] ret = new Model[n];
+        for (int i = 0; i < n; i++) {
+            VertexArray va = new VertexArray(fmt, new VertexArray.Buffer(36, DataBuffer.Usage.STATIC, DataBuffer.Filler.of(new float[9])));
+            ret[i] = new Model(Model.Mode.TRIANGLES, va, null, 0, 3);
+        }
+        return (ret);
+    }
+
+    static final Rendered.Order[] orders = {Rendered.deflt, Rendered.deflt, Rendered.deflt, Rendered.postfx, Rendered.last};
+
+    /* A mix of states giving a handful of distinct programs, orders
+     * and per-slot uniforms. */
+    static Pipe.Op state(Random rnd, int i) {
+        List<Pipe.Op> ops = new ArrayList<>();
+        ops.add(Location.xlate(new Coord3f(i, i, 0)));
+        ops.add(new BaseColor(rnd.nextInt(256), rnd.nextInt(256), 0, 255));
+        if ((i % 3) == 0)
+            ops.add(new MixColor(255, 0, 0, 128));
+        if ((i % 7) == 0)
+            ops.add(new PointSize(2));
+        ops.add(orders[i % orders.length]);
+        return (Pipe.Op.compose(ops.toArray(new Pipe.Op[0])));
+    }
+
+    /* Runs one benchmark on env. finish is given each frame's render
+     * after the draw list has been emitted into it, and should submit
+     * and dispose of it. */
+    public static String bench(GLEnvironment env, Consumer<GLRender> finish, int n, int frames, int churn) throws InterruptedException {
+        RenderTree tree = new RenderTree();
+        GLDrawList dl = env.drawlist();
+        tree.add(dl, Rendered.class);
+        RenderTree.Slot base = tree.add((RenderTree.Node) null, Pipe.Op.compose(new FragColor<>(FragColor.defcolor), new DepthBuffer<>(DepthBuffer.defdepth), Homo3D.state,
+                new Camera(Matrix4f.id), new Projection(Matrix4f.id), new States.Viewport(Area.sized(Coord.z, new Coord(800, 600)))));
+        Model[] mods = models(64);
+        Random rnd = new Random(1);
+        Mesh[] meshes = new Mesh[n];
+        RenderTree.Slot[] slots = new RenderTree.Slot[n];
+        long st = System.nanoTime();
+        for (int i = 0; i < n; i++)
+            slots[i] = base.add(meshes[i] = new Mesh(mods[i % mods.length]), state(rnd, i));
+        double tadd = (System.nanoTime() - st) / 1e6;
+        /* Let background program builds finish and all slots
+         * activate before measuring. */
+        for (int i = 0; (i < 500) && ((env.pendingprogs() > 0) || (i < 3)); i++) {
+            GLRender r = env.render();
+            dl.draw(r);
+            finish.accept(r);
+            Thread.sleep(10);
+        }
+        int nmut = Math.max(1, (n * churn) / 1000);
+        double tupd = 0, tdraw = 0;
+        for (int f = 0; f < frames; f++) {
+            st = System.nanoTime();
+            for (int o = 0; o < nmut; o++) {
+                int i = rnd.nextInt(n);
+                if ((o & 1) == 0) {
+                    slots[i].remove();
+                    slots[i] = base.add(meshes[i], state(rnd, i));
+                } else {
+                    slots[i].ostate(state(rnd, i));
+                }
+            }
+            tupd += System.nanoTime() - st;
+            GLRender r = env.render();
+            st = System.nanoTime();
+            dl.draw(r);
+            tdraw += System.nanoTime() - st;
+            finish.accept(r);
+        }
+        String ret = String.format("%,6d slots: add-all %.1f ms, per frame (%d changed): update %.3f ms, draw %.3f ms [%s]",
+                n, tadd, nmut, tupd / 1e6 / frames, tdraw / 1e6 / frames, dl.stats());
+        dl.dispose();
+        return (ret);
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean mock = (args.length > 0) && args[0].equals("-n");
+        if (mock)
+            args = Arrays.copyOfRange(args, 1, args.length);
+        int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int churn = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int[] sizes = {5000, 20000, 50000};
+        if (args.length > 2) {
+            sizes = new int[args.length - 2];
+            for (int i = 0; i < sizes.length; i++)
+                sizes[i] = Integer.parseInt(args[i + 2]);
+        }
+        if (mock) {
+            NullGL gl = new NullGL();
+            GLEnvironment env = gl.env(new Coord(800, 600));
+            for (int n : sizes) {
+                System.out.println(bench(env, r -> {
+                    env.submit(r);
+                    env.process(gl.gl);
+                }, n, frames, churn));
+            }
+            System.exit(0);
+        }
+        GLProfile prof = GLProfile.getMaxProgrammableCore(true);
+        GLOffscreenAutoDrawable buf = GLDrawableFactory.getFactory(prof).createOffscreenAutoDrawable(null, new GLCapabilities(prof), null, 800, 600);
+        buf.display();
+        GLContext ctx = buf.getContext();
+        if (ctx.makeCurrent() == GLContext.CONTEXT_NOT_CURRENT)
+            throw (new RuntimeException("could not make offscreen context current"));
+        try {
+            GL3 gl = buf.getGL().getGL3();
+            GLEnvironment env = new GLEnvironment(gl, ctx, Area.sized(Coord.z, new Coord(800, 600)));
+            for (int n : sizes) {
+                System.out.println(bench(env, r -> {
+                    env.submit(r);
+                    env.process(gl);
+                }, n, frames, churn));
+            }
+        } finally {
+            ctx.release();
+            buf.destroy();
+        }
+        System.exit(0);
+    }
+}
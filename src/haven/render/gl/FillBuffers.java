@@ -27,6 +27,7 @@
 package haven.render.gl;
 
 import java.nio.*;
+import java.util.function.*;
 
 import haven.render.*;
 
@@ -60,4 +61,78 @@ public class FillBuffers {
         public void dispose() {
         }
     }
+
+    public static class Staged implements FillBuffer {
+        public final StagingArena arena;
+        private final int size;
+        private StagingArena.Chunk chunk;
+
+        public Staged(StagingArena.Chunk chunk, int size) {
+            this.arena = chunk.arena();
+            this.chunk = chunk;
+            this.size = size;
+        }
+
+        public int size() {
+            return (size);
+        }
+
+        public boolean compatible(Environment env) {
+            return ((env instanceof GLEnvironment) && (((GLEnvironment) env).staging == arena));
+        }
+
+        public ByteBuffer push() {
+            return (chunk.data);
+        }
+
+        /* Copies exactly size() bytes, like Array.pull. */
+        public void pull(ByteBuffer buf) {
+            if (buf.remaining() < size)
+                throw (new BufferUnderflowException());
+            ByteBuffer src = buf.duplicate();
+            src.limit(src.position() + size);
+            ByteBuffer dst = chunk.data.duplicate();
+            dst.rewind();
+            dst.put(src);
+            buf.position(buf.position() + size);
+        }
+
+        StagingArena.Chunk take() {
+            synchronized (this) {
+                StagingArena.Chunk ret = this.chunk;
+                if (ret == null)
+                    throw (new IllegalStateException("staged data already consumed"));
+                this.chunk = null;
+                ret.data.rewind();
+                return (ret);
+            }
+        }
+
+        public void dispose() {
+            synchronized (this) {
+                if (chunk != null) {
+                    arena.put(chunk);
+                    chunk = null;
+                }
+            }
+        }
+
+        protected void finalize() {
+            dispose();
+        }
+    }
+
+    /* Passes the data of a buffer from GLEnvironment.fillbuf to cmd,
+     * which should issue the GL command that reads it on gl, and
+     * recycles any staging memory once that command has been run. */
+    public static void xfer(BGL gl, FillBuffer buf, Consumer<ByteBuffer> cmd) {
+        if (buf instanceof Staged) {
+            Staged st = (Staged) buf;
+            StagingArena.Chunk c = st.take();
+            cmd.accept(c.data);
+            st.arena.put(gl, c);
+        } else {
+            cmd.accept(ByteBuffer.wrap(((Array) buf).data));
+        }
+    }
 }
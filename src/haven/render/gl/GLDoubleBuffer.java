@@ -41,6 +41,11 @@ public class GLDoubleBuffer {
                 cur.run(gl);
         }
 
+        public void run(GL3 gl, GLShadow sh) {
+            if (cur != null)
+                cur.run(gl, sh);
+        }
+
         public void abort() {
             cur.abort();
         }
@@ -43,11 +43,14 @@ public class GLDrawList implements DrawList {
     public final GLEnvironment env;
     private final Map<SettingKey, DepSetting> settings = new HashMap<>();
     private final Map<Slot<? extends Rendered>, DrawSlot> slotmap = new IdentityHashMap<>();
+    private final Set<Slot<? extends Rendered>> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Slot<? extends Rendered>> parked = Collections.newSetFromMap(new IdentityHashMap<>());
     private final Map<Pipe, Object> psettings = new IdentityHashMap<>();
     private final Map<Pipe, Object> orderidx = new IdentityHashMap<>();
     private final GLDoubleBuffer settingbuf = new GLDoubleBuffer();
-    private DrawSlot root = null;
+    private final TreeMap<Bucket, Bucket> buckets = new TreeMap<>(border);
     private boolean disposed = false;
+    private int nrecomp = 0;
 
     private static int btheight(DrawSlot s) {
         return ((s == null) ? 0 : s.th);
@@ -62,15 +65,6 @@ public class GLDrawList implements DrawList {
             s.tp = p;
     }
 
-    DrawSlot first() {
-        if (root == null)
-            return (null);
-        for (DrawSlot s = root; true; s = s.tl) {
-            if (s.tl == null)
-                return (s);
-        }
-    }
-
     private static final Comparator<DrawSlot> order = new Comparator<DrawSlot>() {
         public int compare(DrawSlot a, DrawSlot b) {
             int c;
@@ -85,8 +79,130 @@ public class GLDrawList implements DrawList {
             return ((a.sortid < b.sortid) ? -1 : 1);
         }
     };
+    private static int kcmp(Bucket a, Bucket b) {
+        int c;
+        if ((c = Rendered.Order.cmp.compare(a.gorder, b.gorder)) != 0)
+            return (c);
+        if ((c = Utils.sidcmp(a.prog, b.prog)) != 0)
+            return (c);
+        if ((c = Utils.sidcmp(a.fbo, b.fbo)) != 0)
+            return (c);
+        return (Utils.sidcmp(a.vao, b.vao));
+    }
+    private static final Comparator<Bucket> border = new Comparator<Bucket>() {
+        public int compare(Bucket a, Bucket b) {
+            int c;
+            if ((c = kcmp(a, b)) != 0)
+                return (c);
+            return (Long.compare(a.lo, b.lo));
+        }
+    };
+    private static final int MAXBUCKET = 64;
     private static AtomicLong uniqid = new AtomicLong();
 
+    /* The list is kept as trees of slots for each value of the sort
+     * order save the unique ID, each holding the slots from its lower
+     * bound up to that of the next bucket of the same key, so that
+     * the buckets concatenated in order are sorted just as one tree
+     * would be. The command stream of a bucket only depends on its
+     * own slots, so changed buckets can be recompiled independently
+     * of each other, and are simply joined in order when drawing.
+     * Buckets are split when they grow past MAXBUCKET slots, so that
+     * no single change costs recompiling more than that. */
+    private class Bucket {
+        Rendered.Order gorder;
+        final GLProgram prog;
+        final Setting fbo;
+        final VaoBindState vao;
+        final long lo;
+        DrawSlot root = null;
+        DrawSlot first, last, joined;
+        BufferBGL compiled, join;
+        boolean dirty = true;
+
+        Bucket(DrawSlot slot, long lo) {
+            this.gorder = slot.gorder;
+            this.prog = slot.prog;
+            this.fbo = slot.settings[idx_fbo];
+            this.vao = ((VaoSetting) slot.settings[idx_vao]).st;
+            this.lo = lo;
+        }
+
+        void split() {
+            DrawSlot cur = root;
+            while (cur.tl != null)
+                cur = cur.tl;
+            for (int i = btsubsize(root) / 2; i > 0; i--)
+                cur = cur.next();
+            List<DrawSlot> moved = new ArrayList<>();
+            for (; cur != null; cur = cur.next())
+                moved.add(cur);
+            Bucket nb = new Bucket(moved.get(0), moved.get(0).sortid);
+            buckets.put(nb, nb);
+            for (DrawSlot slot : moved) {
+                slot.tremove();
+                slot.tinsert();
+            }
+            moved.get(0).stale = true;
+        }
+
+        /* A bucket holding a single slot can take on a new order in
+         * place as long as that does not move it past any other
+         * bucket, which leaves all command lists valid as they are. */
+        boolean reorder(Rendered.Order norder) {
+            if ((root.tl != null) || (root.tr != null))
+                return (false);
+            Bucket key = new Bucket(root, lo);
+            key.gorder = norder;
+            Bucket lower = buckets.lowerKey(this), higher = buckets.higherKey(this);
+            if (((lower != null) && (kcmp(lower, key) >= 0)) ||
+                ((higher != null) && (kcmp(key, higher) >= 0)))
+                return (false);
+            buckets.remove(this);
+            gorder = norder;
+            buckets.put(this, this);
+            return (true);
+        }
+
+        void compile() {
+            BufferBGL gl = BufferBGL.create();
+            DrawSlot prev = null, cur = root;
+            while (cur.tl != null)
+                cur = cur.tl;
+            if (cur != first)
+                join = null;
+            this.first = cur;
+            for (; cur != null; prev = cur, cur = cur.next()) {
+                if (cur.stale) {
+                    cur.glupdate(prev);
+                    cur.stale = false;
+                }
+                gl.bglCallList(cur.compiled);
+            }
+            this.last = prev;
+            this.compiled = gl.trim();
+            this.dirty = false;
+        }
+
+        BufferBGL join(DrawSlot prev) {
+            if ((join == null) || (joined != prev)) {
+                BufferBGL gl = BufferBGL.create();
+                first.gltrans(gl, prev);
+                join = gl.trim();
+                joined = prev;
+            }
+            return (join);
+        }
+    }
+
+    private Bucket bucket(DrawSlot slot) {
+        Bucket key = new Bucket(slot, slot.sortid);
+        Bucket ret = buckets.floorKey(key);
+        if ((ret == null) || (kcmp(ret, key) != 0))
+            buckets.put(ret = key, key);
+        return (ret);
+    }
+
     private class DrawSlot {
         /* List structure */
         final long sortid;
@@ -138,7 +254,7 @@ public class GLDrawList implements DrawList {
             setp(r.tl = this, r);
             r.setheight();
             if (p == null)
-                setp(root = r, null);
+                setp(bkt.root = r, null);
             else if (p.tl == this)
                 setp(p.tl = r, p);
             else
@@ -154,7 +270,7 @@ public class GLDrawList implements DrawList {
             setp(l.tr = this, l);
             l.setheight();
             if (p == null)
-                setp(root = l, null);
+                setp(bkt.root = l, null);
             else if (p.tl == this)
                 setp(p.tl = l, p);
             else
@@ -184,19 +300,21 @@ public class GLDrawList implements DrawList {
         }
 
         private void tinsert() {
-            if ((tp != null) || (root == this))
+            if (bkt != null)
                 throw (new IllegalStateException());
+            bkt = bucket(this);
             th = 1;
             tsubsize = 1;
-            if (root == null) {
-                root = this;
+            if (bkt.root == null) {
+                bkt.root = this;
             } else {
-                root.insert(this);
+                bkt.root.insert(this);
             }
+            bkt.dirty = true;
         }
 
         private void tremove() {
-            if ((tp == null) && (root != this))
+            if ((bkt == null) || ((tp == null) && (bkt.root != this)))
                 throw (new IllegalStateException());
             DrawSlot rep;
             if ((tl != null) && (tr != null)) {
@@ -225,7 +343,7 @@ public class GLDrawList implements DrawList {
                 else
                     tp.tr = rep;
             } else {
-                root = rep;
+                bkt.root = rep;
             }
             if (rep != null)
                 rep.tp = tp;
@@ -238,9 +356,15 @@ public class GLDrawList implements DrawList {
                     p.bbtrl();
             }
             tr = tl = tp = null;
+            if (bkt.root == null)
+                buckets.remove(bkt);
+            bkt.dirty = true;
+            bkt = null;
         }
 
         /* Render information */
+        Bucket bkt;
+        boolean stale;
         final Slot<? extends Rendered> bk;
         final GLProgram prog;
         final Setting[] settings;
@@ -249,17 +373,6 @@ public class GLDrawList implements DrawList {
         final Pipe ordersrc;
         private volatile boolean disposed = false;
 
-        private GLProgram progfor(Slot<? extends Rendered> sl) {
-            State[] st = sl.state().states();
-            ShaderMacro[] shaders = new ShaderMacro[st.length];
-            int shash = 0;
-            for (int i = 0; i < st.length; i++) {
-                shaders[i] = (st[i] == null) ? null : st[i].shader();
-                shash ^= System.identityHashCode(shaders[i]);
-            }
-            return (env.getprog(shash, shaders));
-        }
-
         private void getsettings() {
             GroupPipe bst = bk.state();
             settings[idx_vao] = vao_nil;
@@ -270,22 +383,25 @@ public class GLDrawList implements DrawList {
                 settings[idx_uni + i] = getuniform(prog, prog.uniforms[i], bst);
         }
 
-        private void glupdate(DrawSlot prev) {
-            if (prev == null) {
-                compiled = main;
-            } else if (prev.prog == this.prog) {
-                BufferBGL gl = new BufferBGL();
+        private void gltrans(BGL gl, DrawSlot prev) {
+            if (prev.prog == this.prog) {
                 for (int i = 0; i < this.settings.length; i++) {
                     if (this.settings[i] != prev.settings[i])
                         gl.bglSubmit(this.settings[i].gl);
                 }
-                gl.bglCallList(main);
-                compiled = gl.trim();
             } else {
-                BufferBGL gl = new BufferBGL();
                 GLProgram.apply(gl, prev.prog, this.prog);
                 for (int i = 0; i < this.settings.length; i++)
                     gl.bglSubmit(this.settings[i].gl);
+            }
+        }
+
+        private void glupdate(DrawSlot prev) {
+            if (prev == null) {
+                compiled = main;
+            } else {
+                BufferBGL gl = BufferBGL.create();
+                gltrans(gl, prev);
                 gl.bglCallList(main);
                 compiled = gl.trim();
             }
@@ -328,24 +444,23 @@ public class GLDrawList implements DrawList {
 
         void orderupdate() {
             Rendered.Order norder = ordersrc.get(Rendered.order);
-            boolean fixed = false;
-            if ((Rendered.Order.cmp.compare(gorder, norder) == 0) ||
-                    ((Rendered.Order.cmp.compare(prev().gorder, norder) >= 0) &&
-                            (Rendered.Order.cmp.compare(next().gorder, norder) <= 0))) {
+            if (Rendered.Order.cmp.compare(gorder, norder) == 0) {
+                gorder = norder;
+            } else if (bkt.reorder(norder)) {
                 gorder = norder;
             } else {
-                tremove();
+                remove();
                 gorder = norder;
-                tinsert();
+                insert();
             }
         }
 
-        DrawSlot(Slot<? extends Rendered> bk) {
+        DrawSlot(Slot<? extends Rendered> bk, GLProgram prog) {
             try {
                 GroupPipe bst = bk.state();
                 this.sortid = uniqid.getAndIncrement();
                 this.bk = bk;
-                this.prog = progfor(bk);
+                this.prog = prog;
                 this.prog.lock();
                 this.settings = new Setting[idx_uni + prog.uniforms.length];
                 getsettings();
@@ -369,19 +484,23 @@ public class GLDrawList implements DrawList {
             }
         }
 
+        /* Compiling the command lists is left to the bucket, so that
+         * it is done only once per frame, and off this thread. */
         void insert() {
             tinsert();
-            DrawSlot prev = prev(), next = next();
-            this.glupdate(prev);
+            DrawSlot next = next();
+            this.stale = true;
             if (next != null)
-                next.glupdate(this);
+                next.stale = true;
+            if (btsubsize(bkt.root) > MAXBUCKET)
+                bkt.split();
         }
 
         void remove() {
-            DrawSlot prev = prev(), next = next();
+            DrawSlot next = next();
             tremove();
             if (next != null)
-                next.glupdate(prev);
+                next.stale = true;
         }
 
         void dispose() {
@@ -489,7 +608,7 @@ public class GLDrawList implements DrawList {
         abstract void compile(BGL gl);
 
         void update() {
-            BufferBGL buf = new BufferBGL();
+            BufferBGL buf = BufferBGL.create();
             compile(buf);
             this.gl.update(buf.trim());
         }
@@ -848,7 +967,7 @@ public class GLDrawList implements DrawList {
             if (st != slot.bk.state())
                 throw (new IllegalArgumentException("Must render with state from rendertree"));
 
-            BufferBGL gl = new BufferBGL(1);
+            BufferBGL gl = BufferBGL.create(1);
             if (GLVertexArray.ephemeralp(mod)) {
                 throw (new NotImplemented("ephemeral models in drawlist"));
             } else {
@@ -941,10 +1060,20 @@ public class GLDrawList implements DrawList {
     }
 
     private void verify() {
-        if (root != null) {
-            if (root.tp != null)
+        DrawSlot last = null;
+        for (Bucket b : buckets.keySet()) {
+            if ((b.root == null) || (b.root.tp != null))
                 throw (new AssertionError());
-            verify(root);
+            verify(b.root);
+            DrawSlot first = b.root;
+            while (first.tl != null)
+                first = first.tl;
+            if ((last != null) && (order.compare(last, first) >= 0))
+                throw (new AssertionError(Long.toString(first.sortid)));
+            for (DrawSlot s = first; s != null; last = s, s = s.next()) {
+                if (s.bkt != b)
+                    throw (new AssertionError(Long.toString(s.sortid)));
+            }
         }
     }
 
@@ -964,6 +1093,62 @@ public class GLDrawList implements DrawList {
         }
     }
 
+    /* Slots whose program is still being constructed are held back
+     * from the list until it is ready. Drawing an updated slot with its
+     * previous program is not an option, since its settings follow the
+     * current state of the slot. */
+    private GLProgram progfor(Slot<? extends Rendered> sl) {
+        State[] st = sl.state().states();
+        ShaderMacro[] shaders = new ShaderMacro[st.length];
+        int shash = 0;
+        for (int i = 0; i < st.length; i++) {
+            shaders[i] = (st[i] == null) ? null : st[i].shader();
+            shash ^= System.identityHashCode(shaders[i]);
+        }
+        return (env.pollprog(shash, shaders));
+    }
+
+    /* A slot whose program failed to build is parked rather than
+     * failing the whole list. It stays out of the list until it is
+     * updated or removed, as it would have if add() itself had
+     * failed. */
+    private void activate() {
+        for (Iterator<Slot<? extends Rendered>> i = pending.iterator(); i.hasNext(); ) {
+            Slot<? extends Rendered> slot = i.next();
+            DrawSlot dslot;
+            try {
+                GLProgram prog = progfor(slot);
+                if (prog == null)
+                    continue;
+                dslot = new DrawSlot(slot, prog);
+            } catch (Loading l) {
+                continue;
+            } catch (RuntimeException e) {
+                i.remove();
+                parked.add(slot);
+                new Warning(e, "could not activate " + slot.obj()).issue();
+                continue;
+            }
+            i.remove();
+            dslot.insert();
+            if (slotmap.put(slot, dslot) != null)
+                throw (new AssertionError());
+        }
+    }
+
+    private void compile() {
+        List<Bucket> dirty = new ArrayList<>();
+        for (Bucket b : buckets.keySet()) {
+            if (b.dirty)
+                dirty.add(b);
+        }
+        if (!Config.par || (dirty.size() < 2))
+            dirty.forEach(Bucket::compile);
+        else
+            dirty.parallelStream().forEach(Bucket::compile);
+        nrecomp = dirty.size();
+    }
+
     public void draw(Render r) {
         if (!(r instanceof GLRender))
             throw (new IllegalArgumentException());
@@ -971,9 +1156,12 @@ public class GLDrawList implements DrawList {
         if (!compatible(g.env))
             throw (new IllegalArgumentException());
         synchronized (this) {
-            DrawSlot first = first(), last = null;
-            if (first == null)
+            if (!pending.isEmpty())
+                activate();
+            if (buckets.isEmpty())
                 return;
+            compile();
+            DrawSlot first = buckets.firstKey().first, last = null;
             try {
                 settingbuf.get(0);
             } catch (InterruptedException e) {
@@ -991,8 +1179,12 @@ public class GLDrawList implements DrawList {
             if (g.state.prog() != first.prog)
                 throw (new ProgramMismatchException(g.state.prog(), first.prog));
             BGL gl = g.gl();
-            for (DrawSlot cur = first; cur != null; last = cur, cur = cur.next())
-                gl.bglCallList(cur.compiled);
+            for (Bucket b : buckets.keySet()) {
+                if (last != null)
+                    gl.bglCallList(b.join(last));
+                gl.bglCallList(b.compiled);
+                last = b.last;
+            }
             settingbuf.put(gl);
             g.state.assume(last.bk.state());
         }
@@ -1002,7 +1194,13 @@ public class GLDrawList implements DrawList {
         synchronized (this) {
             if (disposed)
                 throw (new IllegalStateException());
-            DrawSlot dslot = new DrawSlot(slot);
+            GLProgram prog = progfor(slot);
+            if (prog == null) {
+                if (slotmap.containsKey(slot) || !pending.add(slot))
+                    throw (new AssertionError());
+                return;
+            }
+            DrawSlot dslot = new DrawSlot(slot, prog);
             dslot.insert();
             if (slotmap.put(slot, dslot) != null)
                 throw (new AssertionError());
@@ -1011,6 +1209,8 @@ public class GLDrawList implements DrawList {
 
     public void remove(Slot<? extends Rendered> slot) {
         synchronized (this) {
+            if (pending.remove(slot) || parked.remove(slot))
+                return;
             DrawSlot dslot = slotmap.remove(slot);
             if (dslot == null)
                 throw (new IllegalStateException(String.format("removing non-present slot (%s)", slot.obj())));
@@ -1021,9 +1221,15 @@ public class GLDrawList implements DrawList {
 
     public void update(Slot<? extends Rendered> slot) {
         synchronized (this) {
+            GLProgram prog = progfor(slot);
+            if (prog == null) {
+                remove(slot);
+                pending.add(slot);
+                return;
+            }
             /* Handle exceptions from DrawSlot construction before
              * removing previous slot. */
-            DrawSlot dslot = new DrawSlot(slot);
+            DrawSlot dslot = new DrawSlot(slot, prog);
             remove(slot);
             dslot.insert();
             if (slotmap.put(slot, dslot) != null)
@@ -1075,10 +1281,13 @@ public class GLDrawList implements DrawList {
 
     public void dispose() {
         synchronized (this) {
-            for (DrawSlot slot; (slot = root) != null; ) {
+            while (!buckets.isEmpty()) {
+                DrawSlot slot = buckets.firstKey().root;
                 slot.remove();
                 slot.dispose();
             }
+            pending.clear();
+            parked.clear();
             disposed = true;
         }
     }
@@ -1108,10 +1317,16 @@ public class GLDrawList implements DrawList {
     }
 
     String treedump() {
-        return (treedump(root));
+        StringBuilder buf = new StringBuilder();
+        for (Bucket b : buckets.keySet()) {
+            if (buf.length() > 0)
+                buf.append(" ");
+            buf.append(treedump(b.root));
+        }
+        return (buf.toString());
     }
 
     public String stats() {
-        return (String.format("%,d", btsubsize(root)));
+        return (String.format("%,d in %,d (%,d)", slotmap.size(), buckets.size(), nrecomp));
     }
 }
@@ -50,6 +50,8 @@ public class GLEnvironment implements Environment {
     Area wnd;
     private GLRender prep = null;
     private Applier curstate = new Applier(this);
+    private final GLShadow shadow = new GLShadow();
+    public final StagingArena staging = new StagingArena(64L << 20);
     private boolean invalid = false;
 
     public static class HardwareException extends UnavailableException {
@@ -115,7 +117,9 @@ public class GLEnvironment implements Environment {
                 this.major = major;
                 this.minor = minor;
             }
-            this.coreprof = gl.getContext().isGLCoreProfile();
+            /* Contexts not managed by JOGL, like NullGL, are core. */
+            GLContext ctx = gl.getContext();
+            this.coreprof = (ctx == null) || ctx.isGLCoreProfile();
             this.vendor = gl.glGetString(GL.GL_VENDOR);
             this.version = gl.glGetString(GL.GL_VERSION);
             this.renderer = gl.glGetString(GL.GL_RENDERER);
@@ -182,15 +186,16 @@ public class GLEnvironment implements Environment {
     final long[] stats_mem = new long[MemStats.values().length];
 
     public GLEnvironment(GL initgl, GLContext ctx, Area wnd) {
-        if (debuglog)
+        if (debuglog && (ctx != null))
             ctx.enableGLDebugMessage(true);
         this.ctx = ctx;
         this.wnd = wnd;
         this.caps = new Caps(initgl);
         this.caps.checkreq();
         initialize(initgl.getGL3());
-        this.nilfbo_id = ctx.getDefaultDrawFramebuffer();
-        this.nilfbo_db = ctx.getDefaultReadBuffer();
+        this.nilfbo_id = (ctx == null) ? 0 : ctx.getDefaultDrawFramebuffer();
+        this.nilfbo_db = (ctx == null) ? GL.GL_BACK : ctx.getDefaultReadBuffer();
+        pregenerate();
     }
 
     private void initialize(GL3 gl) {
@@ -283,14 +288,17 @@ public class GLEnvironment implements Environment {
             prep = this.prep;
             this.prep = null;
         }
+        shadow.frame();
+        staging.frame();
+        GLShadow sh = GLShadow.enabled ? shadow : null;
         try {
             synchronized (drawmon) {
                 checkqueries(gl);
                 if ((prep != null) && (prep.gl != null)) {
-                    BufferBGL xf = new BufferBGL(16);
+                    BufferBGL xf = BufferBGL.create(16);
                     this.curstate.apply(xf, prep.init);
-                    xf.run(gl);
-                    prep.gl.run(gl);
+                    xf.run(gl, sh);
+                    prep.gl.run(gl, sh);
                     this.curstate = prep.state;
                     try {
                         GLException.checkfor(gl, this);
@@ -300,10 +308,10 @@ public class GLEnvironment implements Environment {
                     sequnreg(prep);
                 }
                 for (GLRender cmd : copy) {
-                    BufferBGL xf = new BufferBGL(16);
+                    BufferBGL xf = BufferBGL.create(16);
                     this.curstate.apply(xf, cmd.init);
-                    xf.run(gl);
-                    cmd.gl.run(gl);
+                    xf.run(gl, sh);
+                    cmd.gl.run(gl, sh);
                     this.curstate = cmd.state;
                     try {
                         GLException.checkfor(gl, this);
@@ -366,7 +374,7 @@ public class GLEnvironment implements Environment {
         synchronized (seqmon) {
             tail = seqtail;
         }
-        BufferBGL buf = new BufferBGL();
+        BufferBGL buf = BufferBGL.create();
         Collection<GLObject> copy;
         synchronized (disposed) {
             if (disposed.isEmpty())
@@ -397,9 +405,24 @@ public class GLEnvironment implements Environment {
             if ((tgt instanceof Model.Indices) && (((Model.Indices) tgt).ro instanceof StreamBuffer))
                 return (((StreamBuffer) (((Model.Indices) tgt).ro)).new Fill());
         }
+        if (stageable(tgt)) {
+            StagingArena.Chunk c = staging.get(to - from);
+            if (c != null)
+                return (new FillBuffers.Staged(c, to - from));
+        }
         return (new FillBuffers.Array(to - from));
     }
 
+    /* Ephemeral buffers keep their fill data as the buffer itself, so
+     * only data that is uploaded once and then dropped is staged. */
+    private static boolean stageable(DataBuffer tgt) {
+        if (tgt instanceof VertexArray.Buffer)
+            return (((VertexArray.Buffer) tgt).usage != EPHEMERAL);
+        if (tgt instanceof Model.Indices)
+            return (((Model.Indices) tgt).usage != EPHEMERAL);
+        return (tgt instanceof Texture.Image);
+    }
+
     GLRender prepare() {
         if (prep == null) {
             prep = new GLRender(this);
@@ -466,12 +489,12 @@ public class GLEnvironment implements Environment {
                             buf.ro.dispose();
                         buf.ro = ret = new GLBuffer(this);
                         if (buf.init != null) {
-                            FillBuffers.Array data = (FillBuffers.Array) buf.init.fill(buf, this);
+                            FillBuffer data = buf.init.fill(buf, this);
                             GLBuffer jdret = ret;
                             prepare((GLRender g) -> {
                                 BGL gl = g.gl();
                                 Vao0State.apply(this, gl, g.state, jdret);
-                                gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, buf.size(), ByteBuffer.wrap(data.data), GL.GL_STATIC_DRAW);
+                                FillBuffers.xfer(gl, data, xf -> gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, buf.size(), xf, GL.GL_STATIC_DRAW));
                                 jdret.setmem(MemStats.INDICES, buf.size());
                             });
                         }
@@ -524,12 +547,12 @@ public class GLEnvironment implements Environment {
                             buf.ro.dispose();
                         buf.ro = ret = new GLBuffer(this);
                         if (buf.init != null) {
-                            FillBuffers.Array data = (FillBuffers.Array) buf.init.fill(buf, this);
+                            FillBuffer data = buf.init.fill(buf, this);
                             GLBuffer jdret = ret;
                             prepare((GLRender g) -> {
                                 BGL gl = g.gl();
                                 VboState.apply(gl, g.state, jdret);
-                                gl.glBufferData(GL.GL_ARRAY_BUFFER, buf.size(), ByteBuffer.wrap(data.data), GL.GL_STATIC_DRAW);
+                                FillBuffers.xfer(gl, data, xf -> gl.glBufferData(GL.GL_ARRAY_BUFFER, buf.size(), xf, GL.GL_STATIC_DRAW));
                                 jdret.setmem(MemStats.VERTICES, buf.size());
                             });
                         }
@@ -661,9 +684,13 @@ public class GLEnvironment implements Environment {
     static class SavedProg {
         final int hash;
         final ShaderMacro[] shaders;
-        final GLProgram prog;
+        GLProgram prog;
+        Defer.Future<GLProgram> build;
+        RuntimeException failed;
+        String desc;
         SavedProg next;
         boolean used = true;
+        int keep = 0;
 
         SavedProg(int hash, ShaderMacro[] shaders, GLProgram prog) {
             this.hash = hash;
@@ -674,7 +701,7 @@ public class GLEnvironment implements Environment {
 
     private final Object pmon = new Object();
     private SavedProg[] ptab = new SavedProg[32];
-    private int nprog = 0;
+    private int nprog = 0, npending = 0;
 
     private SavedProg findprog(int hash, ShaderMacro[] shaders) {
         int idx = hash & (ptab.length - 1);
@@ -718,7 +745,7 @@ public class GLEnvironment implements Environment {
         ptab = ntab;
     }
 
-    private void putprog(int hash, ShaderMacro[] shaders, GLProgram prog) {
+    private SavedProg putprog(int hash, ShaderMacro[] shaders, GLProgram prog) {
         int idx = hash & (ptab.length - 1);
         SavedProg save = new SavedProg(hash, shaders, prog);
         save.next = ptab[idx];
@@ -726,32 +753,143 @@ public class GLEnvironment implements Environment {
         nprog++;
         if (nprog > ptab.length)
             rehash(ptab.length * 2);
+        return (save);
+    }
+
+    private static Collection<ShaderMacro> macros(ShaderMacro[] shaders) {
+        Collection<ShaderMacro> mods = new LinkedList<>();
+        for (int i = 0; i < shaders.length; i++) {
+            if (shaders[i] != null)
+                mods.add(shaders[i]);
+        }
+        return (mods);
+    }
+
+    /* Collects the result of a finished background build. A failed
+     * build is rethrown to every caller until the entry is cleaned
+     * out. Failed entries are not marked as used, so that happens
+     * at the next cleaning. */
+    private GLProgram settle(SavedProg s) {
+        if (s.failed != null)
+            throw (s.failed);
+        if ((s.build != null) && s.build.done()) {
+            Defer.Future<GLProgram> build = s.build;
+            if (s.prog == null) {
+                s.build = null;
+                npending--;
+                try {
+                    s.prog = build.get();
+                } catch (RuntimeException e) {
+                    s.used = false;
+                    throw (s.failed = e);
+                }
+            } else {
+                /* Someone needed it sooner and built it themselves. */
+                s.build = null;
+                npending--;
+                try {
+                    build.get().dispose();
+                } catch (Defer.DeferredException e) {
+                }
+            }
+        }
+        return (s.prog);
     }
 
     public GLProgram getprog(int hash, ShaderMacro[] shaders) {
         synchronized (pmon) {
             SavedProg s = findprog(hash, shaders);
             if (s != null) {
-                s.used = true;
-                return (s.prog);
+                try {
+                    GLProgram prog = settle(s);
+                    s.used = true;
+                    if (prog != null)
+                        return (prog);
+                } catch (RuntimeException e) {
+                    /* Build it here instead, so that the caller gets
+                     * the error, if it persists, first-hand. */
+                }
             }
         }
-        Collection<ShaderMacro> mods = new LinkedList<>();
-        for (int i = 0; i < shaders.length; i++) {
-            if (shaders[i] != null)
-                mods.add(shaders[i]);
+        GLProgram prog = GLProgram.build(this, macros(shaders));
+        synchronized (pmon) {
+            SavedProg s = findprog(hash, shaders);
+            if (s == null) {
+                putprog(hash, shaders, prog);
+                return (prog);
+            }
+            s.used = true;
+            if (s.prog == null) {
+                s.prog = prog;
+                s.failed = null;
+                return (prog);
+            }
+            prog.dispose();
+            return (s.prog);
         }
-        GLProgram prog = GLProgram.build(this, mods);
+    }
+
+    /* Like getprog, but never constructs a new program on the calling
+     * thread. Instead, construction is started in the background, and
+     * null is returned until it has finished. */
+    public GLProgram pollprog(int hash, ShaderMacro[] shaders) {
         synchronized (pmon) {
             SavedProg s = findprog(hash, shaders);
-            if (s != null) {
-                prog.dispose();
-                s.used = true;
-                return (s.prog);
+            if (s == null) {
+                SavedProg save = s = putprog(hash, shaders, null);
+                s.build = Defer.later(() -> GLProgram.build(this, macros(save.shaders)));
+                npending++;
+                return (null);
             }
-            putprog(hash, shaders, prog);
-            return (prog);
+            GLProgram ret = settle(s);
+            s.used = true;
+            return (ret);
+        }
+    }
+
+    /* Pre-generated programs are kept around for a while even if
+     * unused, since the session that uses them may not have started
+     * yet. */
+    private void prebuild(String desc, ShaderMacro[] shaders) {
+        int hash = 0;
+        for (int i = 0; i < shaders.length; i++)
+            hash ^= System.identityHashCode(shaders[i]);
+        synchronized (pmon) {
+            if (findprog(hash, shaders) != null)
+                return;
         }
+        GLProgram prog = GLProgram.build(this, macros(shaders));
+        synchronized (pmon) {
+            if (findprog(hash, shaders) != null)
+                return;
+            SavedProg s = putprog(hash, shaders, prog);
+            s.desc = desc;
+            s.used = false;
+            s.keep = 10;
+        }
+    }
+
+    private final ProgManifest progs = (ResCache.global == null) ? null : new ProgManifest(ResCache.global, "tmp/glprogs");
+
+    private void pregenerate() {
+        if (progs == null)
+            return;
+        Defer.later(() -> {
+            for (String desc : progs.load()) {
+                if (invalid)
+                    break;
+                ShaderMacro[] shaders = ProgManifest.parse(desc);
+                if (shaders == null)
+                    continue;
+                try {
+                    prebuild(desc, shaders);
+                } catch (RuntimeException e) {
+                    /* Loading or a changed macro; it will be built
+                     * when it is needed instead. */
+                }
+            }
+            return (null);
+        });
     }
 
     private void cleanprogs() {
@@ -759,17 +897,27 @@ public class GLEnvironment implements Environment {
             for (int i = 0; i < ptab.length; i++) {
                 SavedProg c, p;
                 for (c = ptab[i], p = null; c != null; c = c.next) {
-                    int rc = c.prog.locked.get();
-                    if (c.used || (rc > 0)) {
+                    int rc = (c.prog == null) ? 0 : c.prog.locked.get();
+                    if (c.used || (rc > 0) || (c.keep > 0)) {
+                        if ((progs != null) && (c.prog != null) && (c.used || (rc > 0))) {
+                            if (c.desc == null)
+                                c.desc = ProgManifest.describe(c.shaders);
+                            progs.seen(c.desc);
+                        }
                         if (rc < 1)
                             c.used = false;
+                        if (c.keep > 0)
+                            c.keep--;
                         p = c;
                     } else {
                         if (p == null)
                             ptab[i] = c.next;
                         else
                             p.next = c.next;
-                        c.prog.dispose();
+                        if (c.prog != null)
+                            c.prog.dispose();
+                        if (c.build != null)
+                            npending--;
                         nprog--;
                     }
                 }
@@ -778,6 +926,11 @@ public class GLEnvironment implements Environment {
              * problem, but it might be nice just for
              * completeness. */
         }
+        if (progs != null)
+            Defer.later(() -> {
+                progs.save();
+                return (null);
+            });
     }
 
     public Object progdump() {
@@ -788,7 +941,7 @@ public class GLEnvironment implements Environment {
                 for (SavedProg p = ptab[i]; p != null; p = p.next) {
                     ret.put(String.format("p%d-idx", seq), i);
                     ret.put(String.format("p%d-hash", seq), p.hash);
-                    ret.put(String.format("p%d-rc", seq), p.prog.locked.get());
+                    ret.put(String.format("p%d-rc", seq), (p.prog == null) ? -1 : p.prog.locked.get());
                     ret.put(String.format("p%d-id", seq), System.identityHashCode(p.prog));
                     List<String> macros = new ArrayList<>();
                     List<Integer> macroi = new ArrayList<>();
@@ -866,7 +1019,26 @@ public class GLEnvironment implements Environment {
     }
 
     public int numprogs() {
-        return (nprog);
+        synchronized (pmon) {
+            return (nprog);
+        }
+    }
+
+    /* Programs still being constructed in the background. */
+    public int pendingprogs() {
+        synchronized (pmon) {
+            return (npending);
+        }
+    }
+
+    /* Redundant calls dropped during the last processed frame. */
+    public String shadowstats() {
+        return (shadow.stats());
+    }
+
+    /* Upload data staged during the last processed frame. */
+    public String stagingstats() {
+        return (staging.stats());
     }
 
     public Caps caps() {
@@ -54,7 +54,7 @@ public class GLRender implements Render, Disposable {
 
     BGL gl() {
         if (this.gl == null) {
-            this.gl = new BufferBGL();
+            this.gl = BufferBGL.create();
             this.init = state.clone();
             if (this.init.prog() != null)
                 this.init.prog().glid();
@@ -246,13 +246,16 @@ public class GLRender implements Render, Disposable {
                     GLBuffer jdvbuf = vbuf;
                     gl.bglSubmit(new BGL.Request() {
                         public void run(GL3 gl) {
-                            ByteBuffer buf = ByteBuffer.wrap(new byte[jdsz]);
+                            StagingArena.Chunk c = env.staging.get(jdsz);
+                            ByteBuffer buf = (c != null) ? c.data : ByteBuffer.wrap(new byte[jdsz]);
                             for (int i = 0; i < data.va.bufs.length; i++) {
                                 if (data.va.bufs[i].usage == EPHEMERAL)
                                     buf.put(((HeapBuffer) bufs[i]).buf);
                             }
                             buf.flip();
                             gl.glBufferData(GL.GL_ARRAY_BUFFER, jdsz, buf, GL3.GL_STREAM_DRAW);
+                            if (c != null)
+                                env.staging.put(c);
                         }
                     });
                 }
@@ -341,10 +344,10 @@ public class GLRender implements Render, Disposable {
             Model.Indices ibuf = (Model.Indices) buf;
             switch (ibuf.usage) {
                 case STATIC: {
-                    FillBuffers.Array data = (FillBuffers.Array) fill.fill(buf, env);
+                    FillBuffer data = fill.fill(buf, env);
                     Vao0State.apply(this.env, this.gl, state, (GLBuffer) env.prepare(ibuf));
                     BGL gl = gl();
-                    gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, buf.size(), ByteBuffer.wrap(data.data), GL.GL_STATIC_DRAW);
+                    FillBuffers.xfer(gl, data, xf -> gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, buf.size(), xf, GL.GL_STATIC_DRAW));
                     break;
                 }
                 case STREAM: {
@@ -364,10 +367,10 @@ public class GLRender implements Render, Disposable {
             VertexArray.Buffer vbuf = (VertexArray.Buffer) buf;
             switch (vbuf.usage) {
                 case STATIC: {
-                    FillBuffers.Array data = (FillBuffers.Array) fill.fill(buf, env);
+                    FillBuffer data = fill.fill(buf, env);
                     VboState.apply(this.gl, state, (GLBuffer) env.prepare(vbuf));
                     BGL gl = gl();
-                    gl.glBufferData(GL.GL_ARRAY_BUFFER, buf.size(), ByteBuffer.wrap(data.data), GL.GL_STATIC_DRAW);
+                    FillBuffers.xfer(gl, data, xf -> gl.glBufferData(GL.GL_ARRAY_BUFFER, buf.size(), xf, GL.GL_STATIC_DRAW));
                     break;
                 }
                 case STREAM: {
@@ -389,6 +392,11 @@ public class GLRender implements Render, Disposable {
     }
 
     public <T extends DataBuffer> void update(T buf, DataBuffer.PartFiller<? super T> fill, int from, int to) {
+        if ((buf instanceof Texture.Image) && (((Texture.Image<?>) buf).tex instanceof Texture2D)) {
+            Texture.Image<?> img = (Texture.Image<?>) buf;
+            env.prepare((Texture2D) img.tex).update(img, fill.fill(buf, env, from, to), from, to);
+            return;
+        }
         if ((from == 0) && (to == buf.size())) {
             update(buf, fill);
             return;
@@ -398,20 +406,20 @@ public class GLRender implements Render, Disposable {
          * stream-buffers, but I'm not totally sure how. */
         if (buf instanceof Model.Indices) {
             Model.Indices ibuf = (Model.Indices) buf;
-            FillBuffers.Array data = (FillBuffers.Array) fill.fill(buf, env, from, to);
+            FillBuffer data = fill.fill(buf, env, from, to);
             Object ro = env.prepare(ibuf);
             GLBuffer glbuf = (ro instanceof StreamBuffer) ? ((StreamBuffer) ro).rbuf : (GLBuffer) ro;
             Vao0State.apply(this.env, this.gl, state, glbuf);
             BGL gl = gl();
-            gl.glBufferSubData(GL.GL_ELEMENT_ARRAY_BUFFER, from, to - from, ByteBuffer.wrap(data.data));
+            FillBuffers.xfer(gl, data, xf -> gl.glBufferSubData(GL.GL_ELEMENT_ARRAY_BUFFER, from, to - from, xf));
         } else if (buf instanceof VertexArray.Buffer) {
             VertexArray.Buffer vbuf = (VertexArray.Buffer) buf;
-            FillBuffers.Array data = (FillBuffers.Array) fill.fill(buf, env, from, to);
+            FillBuffer data = fill.fill(buf, env, from, to);
             Object ro = env.prepare(vbuf);
             GLBuffer glbuf = (ro instanceof StreamBuffer) ? ((StreamBuffer) ro).rbuf : (GLBuffer) ro;
             VboState.apply(this.gl, state, glbuf);
             BGL gl = gl();
-            gl.glBufferSubData(GL.GL_ARRAY_BUFFER, from, to - from, ByteBuffer.wrap(data.data));
+            FillBuffers.xfer(gl, data, xf -> gl.glBufferSubData(GL.GL_ARRAY_BUFFER, from, to - from, xf));
         } else {
             throw (new NotImplemented("updating buffer of type: " + buf.getClass().getName()));
         }
@@ -0,0 +1,306 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven.render.gl;
+
+import java.util.*;
+import javax.media.opengl.*;
+import haven.*;
+
+/* Shadow of the GL state that is touched by encoded StreamBGL
+ * commands, used while replaying to drop calls that would not change
+ * anything. Opaque commands may touch the GL arbitrarily, so any such
+ * command invalidates the whole shadow after it has been run. */
+public class GLShadow {
+    public static boolean enabled = true;
+    private static final Object unknown = new Object();
+    private static final int NUNITS = 16;
+    private static final int[] textargets = {
+            GL.GL_TEXTURE_2D, GL3.GL_TEXTURE_3D, GL.GL_TEXTURE_CUBE_MAP, GL3.GL_TEXTURE_2D_ARRAY, GL3.GL_TEXTURE_2D_MULTISAMPLE,
+    };
+    private static final int[] captargets = {
+            GL.GL_BLEND, GL.GL_DEPTH_TEST, GL.GL_CULL_FACE, GL.GL_SCISSOR_TEST, GL.GL_POLYGON_OFFSET_FILL,
+    };
+    private static final int M_DMASK = 0, M_DFUNC = 1, M_CULL = 2, M_BLENDFUNC = 3, M_BLENDEQ = 7, M_CMASK = 9,
+            M_VIEWPORT = 10, M_SCISSOR = 14, M_NUM = 18;
+    private Object prog, vao, abuf, ebuf;
+    private int unit;
+    private final Object[] tex = new Object[NUNITS * textargets.length];
+    private final int[] caps = new int[captargets.length];
+    private final int[] misc = new int[M_NUM];
+    private final boolean[] mvalid = new boolean[M_NUM];
+    private final Map<Object, UVal> uvals = new IdentityHashMap<>();
+    private int ugen = 0;
+    private int issued = 0, dropped = 0;
+    private int lissued = 0, ldropped = 0;
+
+    private static class UVal {
+        int gen;
+        int[] v;
+    }
+
+    public GLShadow() {
+        invalidate();
+    }
+
+    /* Forget all tracked state, since the real GL state may have been
+     * changed behind the shadow's back. */
+    public void invalidate() {
+        prog = vao = abuf = ebuf = unknown;
+        unit = -1;
+        Arrays.fill(tex, unknown);
+        Arrays.fill(caps, -1);
+        Arrays.fill(mvalid, false);
+        ugen++;
+    }
+
+    /* Starts a new frame, keeping the counts of the previous one. */
+    public void frame() {
+        lissued = issued;
+        ldropped = dropped;
+        issued = dropped = 0;
+        if (uvals.size() > 8192)
+            uvals.clear();
+        invalidate();
+    }
+
+    private boolean count(boolean need) {
+        if (need)
+            issued++;
+        else
+            dropped++;
+        return (need);
+    }
+
+    public boolean prog(Object p) {
+        if (prog == p)
+            return (count(false));
+        prog = p;
+        return (count(true));
+    }
+
+    public boolean vao(Object v) {
+        if (vao == v)
+            return (count(false));
+        vao = v;
+        /* The element buffer binding is part of the VAO state. */
+        ebuf = unknown;
+        return (count(true));
+    }
+
+    public boolean buffer(int target, Object b) {
+        if (target == GL.GL_ARRAY_BUFFER) {
+            if (abuf == b)
+                return (count(false));
+            abuf = b;
+        } else if (target == GL.GL_ELEMENT_ARRAY_BUFFER) {
+            if (ebuf == b)
+                return (count(false));
+            ebuf = b;
+        }
+        return (count(true));
+    }
+
+    public boolean active(int texture) {
+        int u = texture - GL.GL_TEXTURE0;
+        if (unit == u)
+            return (count(false));
+        unit = u;
+        return (count(true));
+    }
+
+    public boolean texture(int target, Object t) {
+        int ti = -1;
+        for (int i = 0; i < textargets.length; i++) {
+            if (textargets[i] == target) {
+                ti = i;
+                break;
+            }
+        }
+        if ((ti < 0) || (unit < 0) || (unit >= NUNITS))
+            return (count(true));
+        int i = (unit * textargets.length) + ti;
+        if (tex[i] == t)
+            return (count(false));
+        tex[i] = t;
+        return (count(true));
+    }
+
+    public boolean cap(int cap, boolean on) {
+        for (int i = 0; i < captargets.length; i++) {
+            if (captargets[i] == cap) {
+                int v = on ? 1 : 0;
+                if (caps[i] == v)
+                    return (count(false));
+                caps[i] = v;
+                return (count(true));
+            }
+        }
+        return (count(true));
+    }
+
+    private boolean misc(int m, int v) {
+        if (mvalid[m] && (misc[m] == v))
+            return (count(false));
+        mvalid[m] = true;
+        misc[m] = v;
+        return (count(true));
+    }
+
+    private boolean misc(int m, int a, int b) {
+        if (mvalid[m] && (misc[m] == a) && (misc[m + 1] == b))
+            return (count(false));
+        mvalid[m] = true;
+        misc[m] = a;
+        misc[m + 1] = b;
+        return (count(true));
+    }
+
+    private boolean misc(int m, int a, int b, int c, int d) {
+        if (mvalid[m] && (misc[m] == a) && (misc[m + 1] == b) && (misc[m + 2] == c) && (misc[m + 3] == d))
+            return (count(false));
+        mvalid[m] = true;
+        misc[m] = a;
+        misc[m + 1] = b;
+        misc[m + 2] = c;
+        misc[m + 3] = d;
+        return (count(true));
+    }
+
+    public boolean depthmask(boolean mask) {
+        return (misc(M_DMASK, mask ? 1 : 0));
+    }
+
+    public boolean depthfunc(int func) {
+        return (misc(M_DFUNC, func));
+    }
+
+    public boolean cullface(int mode) {
+        return (misc(M_CULL, mode));
+    }
+
+    public boolean colormask(int mask) {
+        return (misc(M_CMASK, mask));
+    }
+
+    public boolean blendeq(int cmode, int amode) {
+        return (misc(M_BLENDEQ, cmode, amode));
+    }
+
+    public boolean blendfunc(int cs, int cd, int as, int ad) {
+        return (misc(M_BLENDFUNC, cs, cd, as, ad));
+    }
+
+    public boolean viewport(int x, int y, int w, int h) {
+        return (misc(M_VIEWPORT, x, y, w, h));
+    }
+
+    public boolean scissor(int x, int y, int w, int h) {
+        return (misc(M_SCISSOR, x, y, w, h));
+    }
+
+    private UVal uval(Object loc, int n) {
+        UVal v = uvals.get(loc);
+        if (v == null) {
+            uvals.put(loc, v = new UVal());
+            v.gen = ugen - 1;
+        }
+        if ((v.v == null) || (v.v.length != n)) {
+            v.v = new int[n];
+            v.gen = ugen - 1;
+        }
+        return (v);
+    }
+
+    /* Uniform values stay with their program, so they are tracked by
+     * location regardless of the currently bound program. */
+    public boolean uniform(Object loc, int[] ops, int p, int n) {
+        UVal v = uval(loc, n);
+        int[] cv = v.v;
+        if (v.gen == ugen) {
+            boolean eq = true;
+            for (int i = 0; i < n; i++) {
+                if (cv[i] != ops[p + i]) {
+                    eq = false;
+                    break;
+                }
+            }
+            if (eq)
+                return (count(false));
+        }
+        System.arraycopy(ops, p, cv, 0, n);
+        v.gen = ugen;
+        return (count(true));
+    }
+
+    public boolean uniformv(Object loc, float[] vals, int off, int n) {
+        UVal v = uval(loc, n);
+        int[] cv = v.v;
+        boolean eq = (v.gen == ugen);
+        for (int i = 0; i < n; i++) {
+            int b = Float.floatToRawIntBits(vals[off + i]);
+            if (cv[i] != b) {
+                cv[i] = b;
+                eq = false;
+            }
+        }
+        if (eq)
+            return (count(false));
+        v.gen = ugen;
+        return (count(true));
+    }
+
+    /* Forgets the value of a uniform that is set in a way not
+     * tracked by the shadow. */
+    public boolean forget(Object loc) {
+        UVal v = uvals.get(loc);
+        if (v != null)
+            v.gen = ugen - 1;
+        return (count(true));
+    }
+
+    public int issued() {
+        return (lissued);
+    }
+
+    public int dropped() {
+        return (ldropped);
+    }
+
+    public String stats() {
+        int tot = lissued + ldropped;
+        return (String.format("%,d/%,d dropped (%d%%)", ldropped, tot, (tot == 0) ? 0 : (ldropped * 100) / tot));
+    }
+
+    static {
+        Console.setscmd("glshadow", new Console.Command() {
+            public void run(Console cons, String[] args) {
+                enabled = Utils.parsebool(args[1], true);
+            }
+        });
+    }
+}
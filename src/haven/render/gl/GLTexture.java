@@ -297,7 +297,7 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
         public final Texture2D data;
         Sampler2D sampler;
 
-        public Tex2D(GLEnvironment env, Texture2D data, FillBuffers.Array[] pixels) {
+        public Tex2D(GLEnvironment env, Texture2D data, FillBuffer[] pixels) {
             super(env);
             this.data = data;
             int ifmt = texifmt(data);
@@ -310,14 +310,15 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
                 gl.glActiveTexture(GL.GL_TEXTURE0);
                 bind(gl);
                 if (pixels[0] != null)
-                    gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, ifmt, data.w, data.h, 0, pfmt, pnum, ByteBuffer.wrap(pixels[0].data));
+                    FillBuffers.xfer(gl, pixels[0], xf -> gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, ifmt, data.w, data.h, 0, pfmt, pnum, xf));
                 else
                     gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, ifmt, data.w, data.h, 0, pfmt, pnum, null);
                 long mem = data.ifmt.size() * data.w * data.h;
                 for (int i = 1; i < pixels.length; i++) {
                     if (pixels[i] != null) {
                         Image<?> img = data.image(i);
-                        gl.glTexImage2D(GL.GL_TEXTURE_2D, i, ifmt, img.w, img.h, 0, pfmt, pnum, ByteBuffer.wrap(pixels[i].data));
+                        int level = i;
+                        FillBuffers.xfer(gl, pixels[i], xf -> gl.glTexImage2D(GL.GL_TEXTURE_2D, level, ifmt, img.w, img.h, 0, pfmt, pnum, xf));
                         mem += data.ifmt.size() * img.w * img.h;
                     }
                 }
@@ -327,11 +328,29 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
             });
         }
 
+        /* Replaces whole rows of one image; from and to are byte
+         * offsets into it, which must fall on row boundaries. */
+        public void update(Image<?> img, FillBuffer pixels, int from, int to) {
+            int rs = img.w * data.efmt.size();
+            if (((from % rs) != 0) || ((to % rs) != 0))
+                throw (new IllegalArgumentException(String.format("partial update of %s not on row boundaries: %d-%d", img, from, to)));
+            int pfmt = texefmt1(data.ifmt, data.efmt, data.eperm);
+            int pnum = texefmt2(data.ifmt, data.efmt);
+            env.prepare((GLRender g) -> {
+                BGL gl = g.gl();
+                gl.glActiveTexture(GL.GL_TEXTURE0);
+                bind(gl);
+                FillBuffers.xfer(gl, pixels, xf -> gl.glTexSubImage2D(GL.GL_TEXTURE_2D, img.level, 0, from / rs, img.w, (to - from) / rs, pfmt, pnum, xf));
+                unbind(gl);
+                gl.bglCheckErr();
+            });
+        }
+
         public static Tex2D create(GLEnvironment env, Texture2D data) {
-            FillBuffers.Array[] pixels = new FillBuffers.Array[data.images().size()];
+            FillBuffer[] pixels = new FillBuffer[data.images().size()];
             if (data.init != null) {
                 for (int i = 0; i < pixels.length; i++)
-                    pixels[i] = (FillBuffers.Array) data.init.fill(data.image(i), env);
+                    pixels[i] = data.init.fill(data.image(i), env);
                 data.init.done();
             }
             return (new Tex2D(env, data, pixels));
@@ -381,7 +400,7 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
         public final Texture3D data;
         Sampler3D sampler;
 
-        public Tex3D(GLEnvironment env, Texture3D data, FillBuffers.Array[] pixels) {
+        public Tex3D(GLEnvironment env, Texture3D data, FillBuffer[] pixels) {
             super(env);
             this.data = data;
             int ifmt = texifmt(data);
@@ -394,14 +413,15 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
                 gl.glActiveTexture(GL.GL_TEXTURE0);
                 bind(gl);
                 if (pixels[0] != null)
-                    gl.glTexImage3D(GL3.GL_TEXTURE_3D, 0, ifmt, data.w, data.h, data.d, 0, pfmt, pnum, ByteBuffer.wrap(pixels[0].data));
+                    FillBuffers.xfer(gl, pixels[0], xf -> gl.glTexImage3D(GL3.GL_TEXTURE_3D, 0, ifmt, data.w, data.h, data.d, 0, pfmt, pnum, xf));
                 else
                     gl.glTexImage3D(GL3.GL_TEXTURE_3D, 0, ifmt, data.w, data.h, data.d, 0, pfmt, pnum, null);
                 long mem = data.ifmt.size() * data.w * data.h * data.d;
                 for (int i = 1; i < pixels.length; i++) {
                     if (pixels[i] != null) {
                         Image<?> img = data.image(i);
-                        gl.glTexImage3D(GL.GL_TEXTURE_2D, i, ifmt, img.w, img.h, img.d, 0, pfmt, pnum, ByteBuffer.wrap(pixels[i].data));
+                        int level = i;
+                        FillBuffers.xfer(gl, pixels[i], xf -> gl.glTexImage3D(GL.GL_TEXTURE_2D, level, ifmt, img.w, img.h, img.d, 0, pfmt, pnum, xf));
                         mem += data.ifmt.size() * img.w * img.h * img.d;
                     }
                 }
@@ -412,10 +432,10 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
         }
 
         public static Tex3D create(GLEnvironment env, Texture3D data) {
-            FillBuffers.Array[] pixels = new FillBuffers.Array[data.images().size()];
+            FillBuffer[] pixels = new FillBuffer[data.images().size()];
             if (data.init != null) {
                 for (int i = 0; i < pixels.length; i++)
-                    pixels[i] = (FillBuffers.Array) data.init.fill(data.image(i), env);
+                    pixels[i] = data.init.fill(data.image(i), env);
                 data.init.done();
             }
             return (new Tex3D(env, data, pixels));
@@ -466,7 +486,7 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
         public final TextureCube data;
         SamplerCube sampler;
 
-        public TexCube(GLEnvironment env, TextureCube data, CubeImage[] images, FillBuffers.Array[] pixels) {
+        public TexCube(GLEnvironment env, TextureCube data, CubeImage[] images, FillBuffer[] pixels) {
             super(env);
             this.data = data;
             int ifmt = texifmt(data);
@@ -483,7 +503,7 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
                     CubeImage img = images[i];
                     int tgt = texface(img.face);
                     if (pixels[i] != null) {
-                        gl.glTexImage2D(tgt, img.level, ifmt, img.w, img.h, 0, pfmt, pnum, ByteBuffer.wrap(pixels[i].data));
+                        FillBuffers.xfer(gl, pixels[i], xf -> gl.glTexImage2D(tgt, img.level, ifmt, img.w, img.h, 0, pfmt, pnum, xf));
                         mem += data.ifmt.size() * img.w * img.h;
                     } else if (img.level == 0) {
                         gl.glTexImage2D(tgt, 0, ifmt, data.w, data.h, 0, pfmt, pnum, null);
@@ -498,12 +518,12 @@ public abstract class GLTexture extends GLObject implements BGL.ID {
 
         public static TexCube create(GLEnvironment env, TextureCube data) {
             CubeImage[] images = new CubeImage[data.images().size()];
-            FillBuffers.Array[] pixels = new FillBuffers.Array[data.images().size()];
+            FillBuffer[] pixels = new FillBuffer[data.images().size()];
             int i = 0;
             for (CubeImage img : data.images()) {
                 images[i] = img;
                 if (data.init != null)
-                    pixels[i] = (FillBuffers.Array) data.init.fill(img, env);
+                    pixels[i] = data.init.fill(img, env);
                 i++;
             }
             if (data.init != null)
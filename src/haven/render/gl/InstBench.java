@@ -0,0 +1,190 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import java.nio.*;
+
+import haven.*;
+import haven.render.*;
+import haven.render.sl.InstancedAttribute;
+import haven.render.VertexArray.Layout.Input;
+
+/* Measures the cost of keeping the instance attributes of a large
+ * batch up to date when a small fraction of the instances move every
+ * frame, for the current InstanceBatch.AttributeData and for the
+ * single dirty range it replaced, kept here as OldAttr. Updates are
+ * recorded into a render of a NullGL environment, which is then
+ * processed. Run as
+ *   InstBench [FRAMES [INSTANCES [MOVING-PER-MILLE]]] */
+public class InstBench {
+    static class Batch implements InstanceBatch {
+        final BufPipe[] st;
+        long insts, bytes;
+
+        Batch(int n) {
+            st = new BufPipe[n];
+            for (int i = 0; i < n; i++) {
+                st[i] = new BufPipe();
+                Location.xlate(new Coord3f(i, i * 2, 0)).apply(st[i]);
+            }
+        }
+
+        public State.Slot<?>[] batchstates() {return (new State.Slot<?>[] {Homo3D.loc});}
+        @SuppressWarnings("unchecked")
+        public <T extends State> T batchstate(State.Slot<T> slot) {return ((T) st[0].get(Homo3D.loc));}
+        public int instances() {return (st.length);}
+        public Pipe inststate(int i) {return (st[i]);}
+        public void instupdate() {}
+        public <T extends State> void update(State.Slot<? super T> slot, T state) {}
+
+        public void uploaded(int ninst, int bytes) {
+            this.insts += ninst;
+            this.bytes += bytes;
+        }
+    }
+
+    interface Attr {
+        public boolean iupdate(int idx);
+        public void commit(Render g);
+    }
+
+    /* AttributeData as it was, tracking a single range of updated
+     * instances which was never reset after commit. */
+    static class OldAttr implements Attr, DataBuffer.PartFiller<VertexArray.Buffer> {
+        final InstanceBatch bat;
+        final Input[] fmt;
+        final VertexArray.Buffer buf;
+        int minupd = -1, maxupd = -1;
+
+        OldAttr(InstanceBatch bat) {
+            List<InstancedAttribute> attribs = new ArrayList<>();
+            for (State.Slot<?> slot : bat.batchstates()) {
+                State st = bat.batchstate(slot);
+                if (st instanceof InstanceBatch.AttribState)
+                    attribs.addAll(Arrays.asList(((InstanceBatch.AttribState) st).attribs()));
+            }
+            int[] offsets = new int[attribs.size()];
+            int tsz = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = tsz;
+                tsz = (tsz + attribs.get(i).attrsize() + 3) & ~3;
+            }
+            fmt = new Input[attribs.size()];
+            for (int i = 0; i < fmt.length; i++)
+                fmt[i] = new Input(attribs.get(i), attribs.get(i).attrfmt(), 0, offsets[i], tsz);
+            this.bat = bat;
+            this.buf = new VertexArray.Buffer(Math.max(16, bat.instances() * 2) * tsz, DataBuffer.Usage.STREAM, this);
+        }
+
+        public FillBuffer fill(VertexArray.Buffer dst, Environment env, int from, int to) {
+            FillBuffer ret = env.fillbuf(dst, from, to);
+            ByteBuffer buf = ret.push();
+            int st = fmt[0].stride;
+            int f = from / st, t = Math.min(bat.instances(), f + ((to - from) / st));
+            for (int i = f; i < t; i++) {
+                Pipe ist = bat.inststate(i);
+                for (int o = 0; o < fmt.length; o++)
+                    ((InstancedAttribute) fmt[o].tgt).attrfill(buf, i * st + fmt[o].offset - from, ist);
+            }
+            return (ret);
+        }
+
+        public boolean iupdate(int idx) {
+            if (minupd < 0) {
+                minupd = maxupd = idx;
+            } else {
+                minupd = Math.min(minupd, idx);
+                maxupd = Math.max(maxupd, idx);
+            }
+            return (false);
+        }
+
+        public void commit(Render g) {
+            if (minupd >= 0) {
+                int st = fmt[0].stride;
+                g.update(buf, this, minupd * st, (maxupd + 1) * st);
+                bat.uploaded(maxupd + 1 - minupd, (maxupd + 1 - minupd) * st);
+            }
+        }
+    }
+
+    static class NewAttr extends InstanceBatch.AttributeData implements Attr {
+        NewAttr(InstanceBatch bat) {super(bat);}
+    }
+
+    public static String bench(boolean old, int n, int frames, int moving) {
+        NullGL gl = new NullGL();
+        GLEnvironment env = gl.env(new Coord(800, 600));
+        Batch bat = new Batch(n);
+        Attr attr = old ? new OldAttr(bat) : new NewAttr(bat);
+        Random rnd = new Random(1);
+        for (int i = 0; i < n; i++)
+            attr.iupdate(i);
+        GLRender r = env.render();
+        attr.commit(r);
+        env.submit(r);
+        env.process(gl.gl);
+        bat.insts = bat.bytes = 0;
+        gl.reset();
+        int nmove = Math.max(1, (n * moving) / 1000);
+        double tcommit = 0, tproc = 0;
+        for (int f = 0; f < frames; f++) {
+            for (int o = 0; o < nmove; o++) {
+                int i = rnd.nextInt(n);
+                Location.xlate(new Coord3f(i, f, 0)).apply(bat.st[i]);
+                attr.iupdate(i);
+            }
+            r = env.render();
+            long st = System.nanoTime();
+            attr.commit(r);
+            long mt = System.nanoTime();
+            env.submit(r);
+            env.process(gl.gl);
+            long et = System.nanoTime();
+            tcommit += mt - st;
+            tproc += et - mt;
+        }
+        return (String.format("%s: %,d instances, %d moving: commit %.3f ms, process %.3f ms per frame; %.1f updates, %,d instances, %,d bytes per frame",
+                              old ? "old" : "new", n, nmove, tcommit / 1e6 / frames, tproc / 1e6 / frames,
+                              (double) gl.calls("glBufferSubData") / frames, bat.insts / frames, bat.bytes / frames));
+    }
+
+    public static void main(String[] args) {
+        int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int n = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+        int moving = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+        /* The first round of each is warmup. */
+        for (int r = 0; r < 2; r++) {
+            String o = bench(true, n, frames, moving), w = bench(false, n, frames, moving);
+            if (r == 1) {
+                System.out.println(o);
+                System.out.println(w);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import java.lang.reflect.*;
+import javax.media.opengl.*;
+
+import haven.*;
+
+/* A GL3 that does nothing but count the calls made to it, and answer
+ * queries the way a working OpenGL 3.3 core context would, so that
+ * GLEnvironment can be driven headlessly by benchmarks and checks.
+ * Object names are allocated from a counter, shaders always compile
+ * and link, and syncs and queries are complete unless `signaled' is
+ * cleared. If `log' is set, every call is also appended to it with
+ * its arguments. */
+public class NullGL implements InvocationHandler {
+    public final GL3 gl;
+    public boolean signaled = true;
+    public List<String> log = null;
+    private final Map<String, Integer> calls = new HashMap<>();
+    private int nextid = 1;
+
+    public NullGL() {
+        gl = (GL3) Proxy.newProxyInstance(GL3.class.getClassLoader(), new Class<?>[]{GL3.class}, this);
+    }
+
+    public GLEnvironment env(Coord sz) {
+        return (new GLEnvironment(gl, null, Area.sized(Coord.z, sz)));
+    }
+
+    public synchronized int calls(String name) {
+        Integer n = calls.get(name);
+        return ((n == null) ? 0 : n);
+    }
+
+    public synchronized int calls() {
+        int ret = 0;
+        for (Map.Entry<String, Integer> ent : calls.entrySet()) {
+            if (ent.getKey().startsWith("gl") && !ent.getKey().startsWith("glGet"))
+                ret += ent.getValue();
+        }
+        return (ret);
+    }
+
+    public synchronized Map<String, Integer> counts() {
+        return (new TreeMap<>(calls));
+    }
+
+    public synchronized void reset() {
+        calls.clear();
+    }
+
+    private static int off(Object[] args, int i) {
+        return ((Integer) args[i + 1]);
+    }
+
+    public Object invoke(Object proxy, Method m, Object[] args) {
+        String nm = m.getName();
+        switch (nm) {
+            case "hashCode":
+                return (System.identityHashCode(proxy));
+            case "equals":
+                return (proxy == args[0]);
+            case "toString":
+                return ("#<nullgl>");
+            case "getContext":
+                return (null);
+        }
+        if (nm.startsWith("getGL") || nm.equals("getDownstreamGL") || nm.equals("getRootGL"))
+            return (proxy);
+        synchronized (this) {
+            calls.merge(nm, 1, Integer::sum);
+            if (log != null)
+                log.add(nm + ((args == null) ? "[]" : Arrays.deepToString(args)));
+            switch (nm) {
+                case "glGetString":
+                    switch ((Integer) args[0]) {
+                        case GL.GL_VERSION:
+                            return ("3.3 NullGL");
+                        case GL3.GL_SHADING_LANGUAGE_VERSION:
+                            return ("3.30");
+                        case GL.GL_EXTENSIONS:
+                            return ("");
+                        default:
+                            return ("NullGL");
+                    }
+                case "glGetIntegerv":
+                    if (args[1] instanceof int[]) {
+                        int p = (Integer) args[0];
+                        ((int[]) args[1])[off(args, 1)] = ((p == GL3.GL_MAJOR_VERSION) || (p == GL3.GL_MINOR_VERSION)) ? 3 : 16;
+                    }
+                    return (null);
+                case "glGetFloatv":
+                    if (args[1] instanceof float[])
+                        Arrays.fill((float[]) args[1], off(args, 1), ((float[]) args[1]).length, 1);
+                    return (null);
+                case "glGetShaderiv":
+                case "glGetProgramiv":
+                case "glGetQueryObjectiv":
+                    if (args[2] instanceof int[])
+                        ((int[]) args[2])[off(args, 2)] = signaled ? 1 : 0;
+                    return (null);
+                case "glGetSynciv":
+                    if (args[5] instanceof int[])
+                        ((int[]) args[5])[off(args, 5)] = signaled ? GL3.GL_SIGNALED : GL3.GL_UNSIGNALED;
+                    return (null);
+                case "glCheckFramebufferStatus":
+                    return (GL.GL_FRAMEBUFFER_COMPLETE);
+                case "glCreateShader":
+                case "glCreateProgram":
+                case "glGetUniformLocation":
+                case "glGetAttribLocation":
+                    return (nextid++);
+                case "glFenceSync":
+                    return ((long) nextid++);
+            }
+            if (nm.startsWith("glGen") && (args.length == 3) && (args[1] instanceof int[])) {
+                int[] buf = (int[]) args[1];
+                for (int i = 0, o = (Integer) args[2]; i < (Integer) args[0]; i++)
+                    buf[o + i] = nextid++;
+                return (null);
+            }
+        }
+        Class<?> r = m.getReturnType();
+        if (r == boolean.class)
+            return (false);
+        if (r == int.class)
+            return (0);
+        if (r == long.class)
+            return (0L);
+        if (r == float.class)
+            return (0f);
+        if (r == double.class)
+            return (0d);
+        return (null);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import java.lang.management.*;
+import haven.*;
+import haven.render.sl.*;
+
+/* Measures the frame-time spikes of entering a new area, modelled as
+ * frames 60 to 75 each bringing four new program variants into view,
+ * with program construction against NullGL. In `sync' mode, programs
+ * are built on the frame path by getprog, as before; in `async' mode
+ * they are built in the background through pollprog, and the draws
+ * wait for them; in `manifest' mode, the variants are first recorded
+ * in the program manifest, so that a new environment pre-generates
+ * them before the area is entered. Run as
+ *   ProgBench sync|async|manifest */
+public class ProgBench {
+    static List<String> variants() {
+        String base = "haven.render.States#vxf=haven.render.Homo3D#shader haven.render.FragColor#slot=haven.render.FragColor#shaders[0]";
+        String[] opt = {
+            "haven.render.BaseColor#slot=haven.render.BaseColor#shader",
+            "haven.render.VertexColor#slot=haven.render.VertexColor#shader",
+            "haven.render.ColorTex#slot=haven.render.ColorTex#shader",
+            "haven.render.MixColor#slot=haven.render.MixColor#shader",
+            "haven.render.PointSize#slot=haven.render.PointSize#shader",
+            "haven.Light#lighting=haven.Light$PhongLight#flight",
+        };
+        List<String> ret = new ArrayList<>();
+        for (int m = 0; m < (1 << opt.length); m++) {
+            StringBuilder buf = new StringBuilder(base);
+            for (int i = 0; i < opt.length; i++) {
+                if ((m & (1 << i)) != 0)
+                    buf.append(" ").append(opt[i]);
+            }
+            ret.add(buf.toString());
+        }
+        return (ret);
+    }
+
+    static int hash(ShaderMacro[] shaders) {
+        int ret = 0;
+        for (ShaderMacro sh : shaders)
+            ret ^= System.identityHashCode(sh);
+        return (ret);
+    }
+
+    static void run(String mode, GLEnvironment env, List<ShaderMacro[]> vs) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<ShaderMacro[]> pending = new ArrayList<>();
+        double wmax = 0, cmax = 0, sum = 0;
+        int ready = -1;
+        for (int f = 0; f < 240; f++) {
+            long st = System.nanoTime(), cst = threads.getCurrentThreadCpuTime();
+            if ((f >= 60) && (f < 76))
+                pending.addAll(vs.subList((f - 60) * 4, (f - 60) * 4 + 4));
+            for (Iterator<ShaderMacro[]> i = pending.iterator(); i.hasNext(); ) {
+                ShaderMacro[] sh = i.next();
+                GLProgram prog = mode.equals("sync") ? env.getprog(hash(sh), sh) : env.pollprog(hash(sh), sh);
+                if (prog != null)
+                    i.remove();
+            }
+            double wt = (System.nanoTime() - st) / 1e6, ct = (threads.getCurrentThreadCpuTime() - cst) / 1e6;
+            if (f >= 60) {
+                wmax = Math.max(wmax, wt);
+                cmax = Math.max(cmax, ct);
+                sum += wt;
+            }
+            if ((f >= 76) && pending.isEmpty() && (ready < 0))
+                ready = f;
+            Thread.sleep(16);
+        }
+        System.out.printf("%-8s max frame-path CPU %.2f ms, wall %.2f ms, total %.2f ms over frames 60-239, all drawn by frame %d%n",
+                          mode, cmax, wmax, sum, ready);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = (args.length > 0) ? args[0] : "async";
+        List<String> lines = variants();
+        List<ShaderMacro[]> vs = new ArrayList<>();
+        for (String ln : lines) {
+            ShaderMacro[] sh = ProgManifest.parse(ln);
+            if (sh == null)
+                throw (new RuntimeException("unparsable variant: " + ln));
+            vs.add(sh);
+        }
+        /* Start from an empty manifest, or one with every variant. */
+        ResCache.global.store("tmp/glprogs").close();
+        if (mode.equals("manifest")) {
+            ProgManifest man = new ProgManifest(ResCache.global, "tmp/glprogs");
+            for (String ln : lines)
+                man.seen(ln);
+            man.save();
+        }
+        NullGL gl = new NullGL();
+        GLEnvironment env = gl.env(new Coord(800, 600));
+        if (mode.equals("manifest")) {
+            for (int i = 0; (i < 500) && (env.numprogs() < vs.size()); i++)
+                Thread.sleep(10);
+            System.out.println("pre-generated: " + env.numprogs());
+            mode = "async";
+        }
+        run(mode, env, vs);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import java.io.*;
+import java.lang.reflect.*;
+
+import haven.*;
+import haven.render.*;
+import haven.render.sl.*;
+
+/*
+ * The shader program variants used in earlier sessions, kept in the
+ * resource cache so that they can be constructed in the background
+ * when a new GL environment is created, rather than in the middle of
+ * a frame when they are first drawn.
+ *
+ * Neither state slots nor shader macros have any persistent
+ * identity, so each is named by the static field that holds it, as
+ * found in the class that defines the macro or the state class of
+ * its slot. A variant is recorded only if all of its macros can be
+ * named in that way; programs built from per-instance macros, or from
+ * classes loaded from resources, simply cannot be pre-generated.
+ */
+class ProgManifest {
+    public static final int MAXLEN = 512;
+    private static final Map<Class<?>, Map<Object, String>> statics = new HashMap<>();
+    private final ResCache cache;
+    private final String name;
+    private final LinkedHashSet<String> variants = new LinkedHashSet<>();
+    private boolean dirty = false;
+
+    ProgManifest(ResCache cache, String name) {
+        this.cache = cache;
+        this.name = name;
+    }
+
+    private static Map<Object, String> statics(Class<?> cl) {
+        synchronized (statics) {
+            Map<Object, String> ret = statics.get(cl);
+            if (ret == null) {
+                ret = new IdentityHashMap<>();
+                try {
+                    for (Field f : cl.getDeclaredFields()) {
+                        if (!Modifier.isStatic(f.getModifiers()) || f.getType().isPrimitive())
+                            continue;
+                        f.setAccessible(true);
+                        Object val = f.get(null);
+                        String nm = cl.getName() + "#" + f.getName();
+                        if ((val instanceof ShaderMacro) || (val instanceof State.Slot)) {
+                            ret.putIfAbsent(val, nm);
+                        } else if (val instanceof ShaderMacro[]) {
+                            ShaderMacro[] arr = (ShaderMacro[]) val;
+                            for (int i = 0; i < arr.length; i++) {
+                                if (arr[i] != null)
+                                    ret.putIfAbsent(arr[i], nm + "[" + i + "]");
+                            }
+                        }
+                    }
+                } catch (Exception | LinkageError e) {
+                    /* Inaccessible classes just have nothing to name. */
+                }
+                statics.put(cl, ret);
+            }
+            return (ret);
+        }
+    }
+
+    /* Only classes from the client itself can be found again in a
+     * later session. */
+    private static boolean ownclass(Class<?> cl) {
+        return (cl.getClassLoader() == ProgManifest.class.getClassLoader());
+    }
+
+    private static Class<?> hostclass(Class<?> cl) {
+        String nm = cl.getName();
+        int p = nm.indexOf("$$Lambda");
+        if (p < 0)
+            return (cl);
+        try {
+            return (Class.forName(nm.substring(0, p), false, cl.getClassLoader()));
+        } catch (ClassNotFoundException e) {
+            return (null);
+        }
+    }
+
+    private static String refname(Object obj, Class<?>... hosts) {
+        for (Class<?> host : hosts) {
+            for (Class<?> cl = host; cl != null; cl = cl.getEnclosingClass()) {
+                if (!ownclass(cl))
+                    break;
+                String nm = statics(cl).get(obj);
+                if (nm != null)
+                    return (nm);
+            }
+        }
+        return (null);
+    }
+
+    private static Object resolve(String ref) throws ReflectiveOperationException {
+        int p = ref.indexOf('#');
+        if (p < 0)
+            throw (new NoSuchFieldException(ref));
+        Class<?> cl = Class.forName(ref.substring(0, p), true, ProgManifest.class.getClassLoader());
+        String fnm = ref.substring(p + 1);
+        int idx = -1;
+        if ((p = fnm.indexOf('[')) >= 0) {
+            idx = Integer.parseInt(fnm.substring(p + 1, fnm.length() - 1));
+            fnm = fnm.substring(0, p);
+        }
+        Field f = cl.getDeclaredField(fnm);
+        if (!Modifier.isStatic(f.getModifiers()))
+            throw (new NoSuchFieldException(ref));
+        f.setAccessible(true);
+        Object val = f.get(null);
+        if (idx >= 0)
+            val = ((Object[]) val)[idx];
+        return (val);
+    }
+
+    /* Returns the manifest line for a program variant, or the empty
+     * string if it cannot be recorded. */
+    static String describe(ShaderMacro[] shaders) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < shaders.length; i++) {
+            if (shaders[i] == null)
+                continue;
+            State.Slot<?> slot = State.Slot.byid(i);
+            Class<?> mcl = hostclass(shaders[i].getClass());
+            if ((slot == null) || (mcl == null))
+                return ("");
+            /* Slots for untyped states are usually defined along
+             * with their macros, or with the standard states. */
+            String snm = refname(slot, slot.scl, mcl, States.class);
+            String mnm = refname(shaders[i], mcl, slot.scl);
+            if ((snm == null) || (mnm == null))
+                return ("");
+            if (buf.length() > 0)
+                buf.append(' ');
+            buf.append(snm).append('=').append(mnm);
+        }
+        return (buf.toString());
+    }
+
+    /* Reconstructs the macro array of a recorded variant, indexed by
+     * the slot IDs of this session, or returns null if any part of it
+     * no longer exists. */
+    static ShaderMacro[] parse(String line) {
+        ShaderMacro[] ret = new ShaderMacro[State.Slot.numslots()];
+        try {
+            for (String ent : line.split(" ")) {
+                int p = ent.indexOf('=');
+                if (p < 0)
+                    return (null);
+                Object slot = resolve(ent.substring(0, p));
+                Object mac = resolve(ent.substring(p + 1));
+                if (!(slot instanceof State.Slot) || !(mac instanceof ShaderMacro))
+                    return (null);
+                int id = ((State.Slot<?>) slot).id;
+                if (id >= ret.length)
+                    ret = Arrays.copyOf(ret, id + 1);
+                ret[id] = (ShaderMacro) mac;
+            }
+        } catch (Exception | LinkageError e) {
+            return (null);
+        }
+        return (ret);
+    }
+
+    List<String> load() {
+        List<String> ret = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(cache.fetch(name), "UTF-8"))) {
+            String ln;
+            while ((ln = in.readLine()) != null) {
+                if (!ln.isEmpty())
+                    ret.add(ln);
+            }
+        } catch (IOException e) {
+        }
+        synchronized (this) {
+            for (String ln : ret)
+                variants.add(ln);
+            trim();
+        }
+        return (ret);
+    }
+
+    private void trim() {
+        for (Iterator<String> i = variants.iterator(); variants.size() > MAXLEN; ) {
+            i.next();
+            i.remove();
+        }
+    }
+
+    /* Marks a variant as used, moving it to the back of the line when
+     * old entries are discarded. */
+    void seen(String desc) {
+        if (desc.isEmpty())
+            return;
+        synchronized (this) {
+            if (!variants.remove(desc))
+                dirty = true;
+            variants.add(desc);
+            trim();
+        }
+    }
+
+    void save() {
+        String[] lines;
+        synchronized (this) {
+            if (!dirty)
+                return;
+            dirty = false;
+            lines = variants.toArray(new String[0]);
+        }
+        try (Writer out = new OutputStreamWriter(cache.store(name), "UTF-8")) {
+            for (String ln : lines)
+                out.write(ln + "\n");
+        } catch (IOException e) {
+        }
+    }
+}
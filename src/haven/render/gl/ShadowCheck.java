@@ -0,0 +1,205 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import javax.media.opengl.*;
+
+/* Checks that replaying through a GLShadow only drops calls that are
+ * redundant: a random command stream is replayed into NullGL with and
+ * without the shadow, and the GL state in effect at every draw call
+ * is reconstructed from both call logs and compared. Run as
+ *   ShadowCheck [COMMANDS [SEED]] */
+public class ShadowCheck {
+    static class Prog implements BGL.ID {
+        final int id;
+        final BGL.ID[] locs = new BGL.ID[4];
+
+        Prog(int id) {
+            this.id = id;
+            for (int i = 0; i < locs.length; i++) {
+                int lid = (id * 16) + i;
+                locs[i] = () -> lid;
+            }
+        }
+
+        public int glid() {
+            return (id);
+        }
+    }
+
+    static final Prog[] progs = {new Prog(1), new Prog(2), new Prog(3)};
+    static final BGL.ID[] vaos = {() -> 5, () -> 6};
+    static final BGL.ID[] texs = {() -> 9, () -> 10, () -> 11};
+    static final int[] caps = {GL.GL_DEPTH_TEST, GL.GL_BLEND, GL.GL_CULL_FACE};
+
+    static void gen(StreamBGL gl, Random rnd, int n, boolean nest) {
+        Prog cur = progs[0];
+        float[] mat = new float[16];
+        /* Uniforms are only ever set on a bound program. */
+        gl.glUseProgram(cur);
+        for (int i = 0; i < n; i++) {
+            switch (rnd.nextInt(16)) {
+                case 0:
+                case 1:
+                    gl.glUseProgram(cur = progs[rnd.nextInt(progs.length)]);
+                    break;
+                case 2:
+                    gl.glBindVertexArray(vaos[rnd.nextInt(vaos.length)]);
+                    break;
+                case 3:
+                    gl.glActiveTexture(GL.GL_TEXTURE0 + rnd.nextInt(2));
+                    break;
+                case 4:
+                    gl.glBindTexture(GL.GL_TEXTURE_2D, texs[rnd.nextInt(texs.length)]);
+                    break;
+                case 5:
+                    if (rnd.nextBoolean())
+                        gl.glEnable(caps[rnd.nextInt(caps.length)]);
+                    else
+                        gl.glDisable(caps[rnd.nextInt(caps.length)]);
+                    break;
+                case 6:
+                    gl.glDepthMask(rnd.nextBoolean());
+                    break;
+                case 7:
+                    if (rnd.nextBoolean())
+                        gl.glBlendFunc(GL.GL_ONE, GL.GL_ONE_MINUS_SRC_ALPHA);
+                    else
+                        gl.glBlendFuncSeparate(GL.GL_ONE, GL.GL_ONE_MINUS_SRC_ALPHA, GL.GL_ONE, rnd.nextBoolean() ? GL.GL_ONE : GL.GL_ONE_MINUS_SRC_ALPHA);
+                    break;
+                case 8:
+                case 9:
+                    gl.glUniform1f(cur.locs[rnd.nextInt(2)], rnd.nextInt(2));
+                    break;
+                case 10:
+                    gl.glUniform4f(cur.locs[2], 1, 1, 1, rnd.nextInt(2));
+                    break;
+                case 11:
+                    mat[0] = rnd.nextInt(2);
+                    gl.glUniformMatrix4fv(cur.locs[3], 1, false, mat, 0);
+                    break;
+                case 12:
+                    gl.glViewport(0, 0, 800, 600 - rnd.nextInt(2));
+                    break;
+                case 13:
+                    if (nest && rnd.nextInt(8) == 0) {
+                        StreamBGL sub = new StreamBGL();
+                        gen(sub, rnd, 20, false);
+                        gl.bglCallList(sub);
+                        /* The nested list leaves the program unknown
+                         * to the generator. */
+                        gl.glUseProgram(cur);
+                    } else if (rnd.nextInt(4) == 0) {
+                        gl.glClear(GL.GL_DEPTH_BUFFER_BIT);
+                    }
+                    break;
+                default:
+                    gl.glDrawArrays(GL.GL_TRIANGLES, 0, 3);
+                    break;
+            }
+        }
+    }
+
+    private static String arg0(String args) {
+        int e = args.indexOf(',');
+        return ((e < 0) ? args : args.substring(0, e));
+    }
+
+    /* Reconstructs the state in effect at each draw call from a call
+     * log of NullGL. */
+    static List<Map<String, String>> draws(List<String> log) {
+        List<Map<String, String>> ret = new ArrayList<>();
+        Map<String, String> st = new HashMap<>();
+        for (String call : log) {
+            int b = call.indexOf('[');
+            String nm = call.substring(0, b), args = call.substring(b + 1, call.length() - 1);
+            switch (nm) {
+                case "glUseProgram":
+                    st.put("prog", args);
+                    break;
+                case "glBindVertexArray":
+                    st.put("vao", args);
+                    break;
+                case "glActiveTexture":
+                    st.put("unit", args);
+                    break;
+                case "glBindTexture":
+                    st.put("tex:" + st.get("unit") + ":" + arg0(args), args);
+                    break;
+                case "glEnable":
+                case "glDisable":
+                    st.put("cap:" + args, nm);
+                    break;
+                case "glBlendFunc":
+                    st.put("blendfunc", args + ", " + args);
+                    break;
+                case "glBlendFuncSeparate":
+                    st.put("blendfunc", args);
+                    break;
+                case "glDepthMask":
+                case "glViewport":
+                    st.put(nm, args);
+                    break;
+                default:
+                    if (nm.startsWith("glUniform"))
+                        st.put("unif:" + st.get("prog") + ":" + arg0(args), call);
+                    else if (nm.startsWith("glDraw"))
+                        ret.add(new HashMap<>(st));
+                    break;
+            }
+        }
+        return (ret);
+    }
+
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+        StreamBGL buf = new StreamBGL();
+        gen(buf, new Random(seed), n, true);
+        NullGL plain = new NullGL(), shadowed = new NullGL();
+        plain.log = new ArrayList<>();
+        shadowed.log = new ArrayList<>();
+        buf.run(plain.gl);
+        GLShadow sh = new GLShadow();
+        buf.run(shadowed.gl, sh);
+        sh.frame();
+        List<Map<String, String>> a = draws(plain.log), b = draws(shadowed.log);
+        if (a.size() != b.size())
+            throw (new AssertionError(String.format("draw counts differ: %d != %d", a.size(), b.size())));
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).equals(b.get(i)))
+                throw (new AssertionError(String.format("state differs at draw %d:\n  %s\n  %s", i, new TreeMap<>(a.get(i)), new TreeMap<>(b.get(i)))));
+        }
+        System.out.printf("state identical at all %d draws; %d calls unshadowed, %d shadowed (%s)\n",
+                a.size(), plain.calls(), shadowed.calls(), sh.stats());
+        for (String nm : plain.counts().keySet()) {
+            if (plain.calls(nm) != shadowed.calls(nm))
+                System.out.printf("  %-28s %7d -> %7d\n", nm, plain.calls(nm), shadowed.calls(nm));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven.render.gl;
+
+import java.nio.*;
+import javax.media.opengl.*;
+
+/*
+ * Native memory for data on its way into buffer and texture
+ * uploads. Staging the data in direct buffers saves JOGL from having
+ * to pin or copy heap arrays on every such call, and recycling the
+ * memory saves the allocation of a new heap array for every upload.
+ *
+ * Memory is allocated in fixed-size slabs, each of which is cut into
+ * chunks of one power-of-two size class. A chunk goes back to its free
+ * list once the GL command reading it has been run, which is
+ * signalled by a release request submitted right after that command
+ * on the same BGL. Requests larger than a slab, or that would take
+ * the arena past its memory limit, are refused, and should be staged
+ * on the heap instead.
+ */
+public class StagingArena {
+    public static final int MINCLASS = 8, SLABCLASS = 20;
+    public final long limit;
+    private final Chunk[] free = new Chunk[SLABCLASS + 1];
+    private long slabmem = 0;
+    private long staged = 0, lstaged = 0;
+    private int gets = 0, reused = 0, refused = 0;
+    private int lgets = 0, lreused = 0, lrefused = 0;
+
+    public class Chunk {
+        public final ByteBuffer data;
+        final int cls;
+        Chunk next;
+        boolean busy;
+
+        private Chunk(ByteBuffer data, int cls) {
+            this.data = data;
+            this.cls = cls;
+        }
+
+        public StagingArena arena() {
+            return (StagingArena.this);
+        }
+    }
+
+    public StagingArena(long limit) {
+        this.limit = limit;
+    }
+
+    static int sizeclass(int sz) {
+        return (Math.max(MINCLASS, 32 - Integer.numberOfLeadingZeros(sz - 1)));
+    }
+
+    private void carve(int cls) {
+        ByteBuffer slab = ByteBuffer.allocateDirect(1 << SLABCLASS);
+        slabmem += slab.capacity();
+        int csz = 1 << cls;
+        for (int off = slab.capacity() - csz; off >= 0; off -= csz) {
+            slab.limit(off + csz);
+            slab.position(off);
+            Chunk c = new Chunk(slab.slice().order(ByteOrder.nativeOrder()), cls);
+            c.next = free[cls];
+            free[cls] = c;
+        }
+    }
+
+    /* Returns a chunk whose data holds exactly sz bytes, or null if
+     * it cannot be staged here. */
+    public Chunk get(int sz) {
+        Chunk c;
+        synchronized (this) {
+            int cls = sizeclass(sz);
+            if (cls > SLABCLASS) {
+                refused++;
+                return (null);
+            }
+            if (free[cls] != null) {
+                reused++;
+            } else {
+                if (slabmem + (1 << SLABCLASS) > limit) {
+                    refused++;
+                    return (null);
+                }
+                carve(cls);
+            }
+            c = free[cls];
+            if (c.busy)
+                throw (new AssertionError("staging chunk handed out while in use"));
+            free[cls] = c.next;
+            c.next = null;
+            c.busy = true;
+            gets++;
+            staged += sz;
+        }
+        c.data.rewind();
+        c.data.limit(sz);
+        return (c);
+    }
+
+    public void put(Chunk c) {
+        if (c.arena() != this)
+            throw (new IllegalArgumentException("staging chunk from another arena"));
+        synchronized (this) {
+            if (!c.busy)
+                throw (new AssertionError("staging chunk released twice"));
+            c.busy = false;
+            c.next = free[c.cls];
+            free[c.cls] = c;
+        }
+    }
+
+    /* Releases the chunk once the commands submitted to gl before
+     * this call have been run (or aborted). */
+    public void put(BGL gl, Chunk c) {
+        gl.bglSubmit(new BGL.Request() {
+            public void run(GL3 gl) {
+                put(c);
+            }
+
+            public void abort() {
+                put(c);
+            }
+        });
+    }
+
+    public void frame() {
+        synchronized (this) {
+            lstaged = staged;
+            lgets = gets;
+            lreused = reused;
+            lrefused = refused;
+            staged = 0;
+            gets = reused = refused = 0;
+        }
+    }
+
+    public String stats() {
+        synchronized (this) {
+            return (String.format("%,d B in %d uploads, %d%% reused, %d refused, %,d kB slabs",
+                    lstaged, lgets, (lgets == 0) ? 0 : (lreused * 100) / lgets, lrefused, slabmem >> 10));
+        }
+    }
+}
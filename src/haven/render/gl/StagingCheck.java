@@ -0,0 +1,114 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import java.nio.*;
+import javax.media.opengl.*;
+import haven.*;
+
+/* Checks that StagingArena never hands out a chunk before the GL
+ * command that reads it has run. Random uploads are staged into the
+ * arena of a NullGL environment, each filled with its own tag, and
+ * the command that consumes the data checks the tag when the
+ * environment processes it, a frame after it was recorded. Some
+ * renders are aborted instead. Every frame also waits on a GLFence,
+ * and the check is run both with NullGL's syncs signaled and with
+ * them never signaled: the chunks must come back the same either way,
+ * since they are released by a request on the same command list and
+ * not by a GPU sync. Run as
+ *   StagingCheck [FRAMES] */
+public class StagingCheck {
+    static void run(int frames, boolean signaled) {
+        NullGL ngl = new NullGL();
+        ngl.signaled = signaled;
+        GLEnvironment env = ngl.env(new Coord(64, 64));
+        StagingArena arena = env.staging;
+        Random rnd = new Random(1);
+        int[] checked = {0}, fenced = {0};
+        int staged = 0, aborted = 0;
+        List<GLRender> pending = new ArrayList<>();
+        for (int f = 0; f < frames; f++) {
+            List<GLRender> cur = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                GLRender cmd = env.render();
+                BGL gl = cmd.gl();
+                int n = rnd.nextInt(20);
+                for (int i = 0; i < n; i++) {
+                    int sz = 1 + rnd.nextInt(rnd.nextBoolean() ? 4096 : 300000);
+                    StagingArena.Chunk c = arena.get(sz);
+                    if (c == null)
+                        continue;
+                    FillBuffers.Staged buf = new FillBuffers.Staged(c, sz);
+                    byte tag = (byte) rnd.nextInt();
+                    ByteBuffer data = buf.push();
+                    for (int o = 0; o < sz; o++)
+                        data.put(o, tag);
+                    FillBuffers.xfer(gl, buf, xf -> gl.bglSubmit(cgl -> {
+                        if (xf.remaining() != sz)
+                            throw (new AssertionError("staged size changed"));
+                        for (int o = 0; o < sz; o++) {
+                            if (xf.get(o) != tag)
+                                throw (new AssertionError("staged data overwritten before its command ran"));
+                        }
+                        cgl.glBufferSubData(GL.GL_ARRAY_BUFFER, 0, sz, xf);
+                        checked[0]++;
+                    }));
+                    staged++;
+                }
+                gl.bglCreate(new GLFence(env, cgl -> fenced[0]++));
+                cur.add(cmd);
+            }
+            /* The GL thread lags a frame behind. */
+            for (GLRender cmd : pending) {
+                if (rnd.nextInt(10) == 0) {
+                    cmd.gl.abort();
+                    aborted++;
+                } else {
+                    env.submit(cmd);
+                }
+            }
+            env.process(ngl.gl);
+            pending = cur;
+            if (f % 50 == 49)
+                System.out.println("  " + arena.stats());
+        }
+        for (GLRender cmd : pending)
+            env.submit(cmd);
+        env.process(ngl.gl);
+        if (signaled == (fenced[0] == 0))
+            throw (new AssertionError("fences " + (signaled ? "not " : "") + "signaled"));
+        System.out.printf("%s: %d staged uploads, %d checked, %d renders aborted, %d fences signaled%n",
+                          signaled ? "signaled" : "unsignaled", staged, checked[0], aborted, fenced[0]);
+    }
+
+    public static void main(String[] args) {
+        int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        run(frames, true);
+        run(frames, false);
+    }
+}
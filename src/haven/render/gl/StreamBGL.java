@@ -0,0 +1,799 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import java.nio.*;
+import javax.media.opengl.*;
+
+/* Commands are recorded as a stream of opcodes with their primitive
+ * operands packed into an int array, and with object operands stored
+ * in order in a side table. The most frequent calls are encoded
+ * directly; everything else is recorded as a generic Command object
+ * through the OP_CMD opcode. */
+public class StreamBGL extends BufferBGL {
+    private static final int OP_CMD = 0, OP_CALLLIST = 1, OP_ACTIVETEXTURE = 2, OP_BINDBUFFER = 3,
+            OP_BINDTEXTURE = 4, OP_BINDVERTEXARRAY = 5, OP_USEPROGRAM = 6, OP_ENABLE = 7, OP_DISABLE = 8,
+            OP_DEPTHMASK = 9, OP_DEPTHFUNC = 10, OP_CULLFACE = 11, OP_BLENDFUNC = 12, OP_BLENDFUNCSEP = 13,
+            OP_BLENDEQ = 14, OP_BLENDEQSEP = 15, OP_COLORMASK = 16, OP_VIEWPORT = 17, OP_SCISSOR = 18,
+            OP_UNIFORM1F = 19, OP_UNIFORM2F = 20, OP_UNIFORM3F = 21, OP_UNIFORM4F = 22, OP_UNIFORM1I = 23,
+            OP_UNIFORM3FV = 24, OP_UNIFORM4FV = 25, OP_UNIFORMMATRIX3FV = 26, OP_UNIFORMMATRIX4FV = 27,
+            OP_DRAWARRAYS = 28, OP_DRAWARRAYSINST = 29, OP_DRAWELEMENTS = 30, OP_DRAWELEMENTSINST = 31,
+            OP_ENABLEVAA = 32, OP_DISABLEVAA = 33, OP_VAPOINTER = 34, OP_VADIVISOR = 35,
+            OP_NCMD = 36, OP_BUFFERED = 37;
+    private static final String[] opnames = {
+            "cmd", "bglCallList", "glActiveTexture", "glBindBuffer",
+            "glBindTexture", "glBindVertexArray", "glUseProgram", "glEnable", "glDisable",
+            "glDepthMask", "glDepthFunc", "glCullFace", "glBlendFunc", "glBlendFuncSeparate",
+            "glBlendEquation", "glBlendEquationSeparate", "glColorMask", "glViewport", "glScissor",
+            "glUniform1f", "glUniform2f", "glUniform3f", "glUniform4f", "glUniform1i",
+            "glUniform3fv", "glUniform4fv", "glUniformMatrix3fv", "glUniformMatrix4fv",
+            "glDrawArrays", "glDrawArraysInstanced", "glDrawElements", "glDrawElementsInstanced",
+            "glEnableVertexAttribArray", "glDisableVertexAttribArray", "glVertexAttribPointer", "glVertexAttribDivisor",
+            "cmd", "bglSubmit",
+    };
+    /* Number of int operand words and object references per opcode. */
+    private static final int[] opwords = {
+            0, 0, 1, 1,
+            1, 0, 0, 1, 1,
+            1, 1, 1, 2, 4,
+            1, 2, 1, 4, 4,
+            1, 2, 3, 4, 1,
+            2, 2, 3, 3,
+            3, 4, 5, 6,
+            1, 1, 7, 2,
+            0, 0,
+    };
+    private static final int[] oprefs = {
+            1, 1, 0, 1,
+            1, 1, 1, 0, 0,
+            0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0,
+            1, 1, 1, 1, 1,
+            2, 2, 2, 2,
+            0, 0, 0, 0,
+            1, 1, 1, 1,
+            1, 1,
+    };
+    private int[] ops;
+    private Object[] refs;
+    private int nw = 0, nr = 0;
+
+    private Op failed = null;
+    private boolean neutral = false;
+
+    public StreamBGL(int c) {
+        super((Command[]) null);
+        ops = new int[Math.max(c, 1) * 3];
+        refs = new Object[Math.max(c, 1)];
+    }
+
+    public StreamBGL() {
+        this(128);
+    }
+
+    private void begin(int op, int words, int nrefs) {
+        if (nw + words + 1 > ops.length)
+            ops = Arrays.copyOf(ops, Math.max(ops.length * 2, nw + words + 1));
+        if (nr + nrefs > refs.length)
+            refs = Arrays.copyOf(refs, Math.max(refs.length * 2, nr + nrefs));
+        ops[nw++] = op;
+        n++;
+    }
+
+    private void w(int v) {
+        ops[nw++] = v;
+    }
+
+    private void w(float v) {
+        ops[nw++] = Float.floatToRawIntBits(v);
+    }
+
+    private void w(long v) {
+        ops[nw++] = (int) v;
+        ops[nw++] = (int) (v >>> 32);
+    }
+
+    private void w(boolean v) {
+        ops[nw++] = v ? 1 : 0;
+    }
+
+    private void r(Object o) {
+        refs[nr++] = o;
+    }
+
+    private static int id(Object o) {
+        return ((o == null) ? 0 : ((ID) o).glid());
+    }
+
+    private static float f(int v) {
+        return (Float.intBitsToFloat(v));
+    }
+
+    private static long l(int lo, int hi) {
+        return ((lo & 0xffffffffL) | (((long) hi) << 32));
+    }
+
+    public void run(GL3 gl) {
+        run(gl, null);
+    }
+
+    /* Replays the stream, dropping calls that the shadow, if given,
+     * knows to be redundant. */
+    public void run(GL3 gl, GLShadow sh) {
+        run(gl, sh, this.ops, this.refs, nw, null);
+    }
+
+    /* Also replays single decoded commands, in which case errors
+     * are attributed to that command. */
+    private void run(GL3 gl, GLShadow sh, int[] ops, Object[] refs, int nw, Op self) {
+        int p = 0, r = 0, op = -1, mp = 0, mr = 0;
+        try {
+            while (p < nw) {
+                mp = p;
+                mr = r;
+                switch (op = ops[p++]) {
+                    case OP_CMD:
+                        ((Command) refs[r++]).run(gl);
+                        if (sh != null)
+                            sh.invalidate();
+                        break;
+                    case OP_NCMD:
+                        ((Command) refs[r++]).run(gl);
+                        break;
+                    case OP_CALLLIST:
+                        ((BufferBGL) refs[r++]).run(gl, sh);
+                        break;
+                    case OP_BUFFERED:
+                        ((GLDoubleBuffer.Buffered) refs[r++]).run(gl, sh);
+                        break;
+                    case OP_ACTIVETEXTURE:
+                        if ((sh == null) || sh.active(ops[p]))
+                            gl.glActiveTexture(ops[p]);
+                        p++;
+                        break;
+                    case OP_BINDBUFFER:
+                        if ((sh == null) || sh.buffer(ops[p], refs[r]))
+                            gl.glBindBuffer(ops[p], id(refs[r]));
+                        p++;
+                        r++;
+                        break;
+                    case OP_BINDTEXTURE:
+                        if ((sh == null) || sh.texture(ops[p], refs[r]))
+                            gl.glBindTexture(ops[p], id(refs[r]));
+                        p++;
+                        r++;
+                        break;
+                    case OP_BINDVERTEXARRAY:
+                        if ((sh == null) || sh.vao(refs[r]))
+                            gl.glBindVertexArray(id(refs[r]));
+                        r++;
+                        break;
+                    case OP_USEPROGRAM:
+                        if ((sh == null) || sh.prog(refs[r]))
+                            gl.glUseProgram(id(refs[r]));
+                        r++;
+                        break;
+                    case OP_ENABLE:
+                        if ((sh == null) || sh.cap(ops[p], true))
+                            gl.glEnable(ops[p]);
+                        p++;
+                        break;
+                    case OP_DISABLE:
+                        if ((sh == null) || sh.cap(ops[p], false))
+                            gl.glDisable(ops[p]);
+                        p++;
+                        break;
+                    case OP_DEPTHMASK:
+                        if ((sh == null) || sh.depthmask(ops[p] != 0))
+                            gl.glDepthMask(ops[p] != 0);
+                        p++;
+                        break;
+                    case OP_DEPTHFUNC:
+                        if ((sh == null) || sh.depthfunc(ops[p]))
+                            gl.glDepthFunc(ops[p]);
+                        p++;
+                        break;
+                    case OP_CULLFACE:
+                        if ((sh == null) || sh.cullface(ops[p]))
+                            gl.glCullFace(ops[p]);
+                        p++;
+                        break;
+                    case OP_BLENDFUNC:
+                        if ((sh == null) || sh.blendfunc(ops[p], ops[p + 1], ops[p], ops[p + 1]))
+                            gl.glBlendFunc(ops[p], ops[p + 1]);
+                        p += 2;
+                        break;
+                    case OP_BLENDFUNCSEP:
+                        if ((sh == null) || sh.blendfunc(ops[p], ops[p + 1], ops[p + 2], ops[p + 3]))
+                            gl.glBlendFuncSeparate(ops[p], ops[p + 1], ops[p + 2], ops[p + 3]);
+                        p += 4;
+                        break;
+                    case OP_BLENDEQ:
+                        if ((sh == null) || sh.blendeq(ops[p], ops[p]))
+                            gl.glBlendEquation(ops[p]);
+                        p++;
+                        break;
+                    case OP_BLENDEQSEP:
+                        if ((sh == null) || sh.blendeq(ops[p], ops[p + 1]))
+                            gl.glBlendEquationSeparate(ops[p], ops[p + 1]);
+                        p += 2;
+                        break;
+                    case OP_COLORMASK: {
+                        int m = ops[p++];
+                        if ((sh == null) || sh.colormask(m))
+                            gl.glColorMask((m & 1) != 0, (m & 2) != 0, (m & 4) != 0, (m & 8) != 0);
+                        break;
+                    }
+                    case OP_VIEWPORT:
+                        if ((sh == null) || sh.viewport(ops[p], ops[p + 1], ops[p + 2], ops[p + 3]))
+                            gl.glViewport(ops[p], ops[p + 1], ops[p + 2], ops[p + 3]);
+                        p += 4;
+                        break;
+                    case OP_SCISSOR:
+                        if ((sh == null) || sh.scissor(ops[p], ops[p + 1], ops[p + 2], ops[p + 3]))
+                            gl.glScissor(ops[p], ops[p + 1], ops[p + 2], ops[p + 3]);
+                        p += 4;
+                        break;
+                    case OP_UNIFORM1F:
+                        if ((sh == null) || sh.uniform(refs[r], ops, p, 1))
+                            gl.glUniform1f(id(refs[r]), f(ops[p]));
+                        r++;
+                        p++;
+                        break;
+                    case OP_UNIFORM2F:
+                        if ((sh == null) || sh.uniform(refs[r], ops, p, 2))
+                            gl.glUniform2f(id(refs[r]), f(ops[p]), f(ops[p + 1]));
+                        r++;
+                        p += 2;
+                        break;
+                    case OP_UNIFORM3F:
+                        if ((sh == null) || sh.uniform(refs[r], ops, p, 3))
+                            gl.glUniform3f(id(refs[r]), f(ops[p]), f(ops[p + 1]), f(ops[p + 2]));
+                        r++;
+                        p += 3;
+                        break;
+                    case OP_UNIFORM4F:
+                        if ((sh == null) || sh.uniform(refs[r], ops, p, 4))
+                            gl.glUniform4f(id(refs[r]), f(ops[p]), f(ops[p + 1]), f(ops[p + 2]), f(ops[p + 3]));
+                        r++;
+                        p += 4;
+                        break;
+                    case OP_UNIFORM1I:
+                        if ((sh == null) || sh.uniform(refs[r], ops, p, 1))
+                            gl.glUniform1i(id(refs[r]), ops[p]);
+                        r++;
+                        p++;
+                        break;
+                    case OP_UNIFORM3FV:
+                        if ((sh == null) || sh.uniformv(refs[r], (float[]) refs[r + 1], ops[p + 1], ops[p] * 3))
+                            gl.glUniform3fv(id(refs[r]), ops[p], (float[]) refs[r + 1], ops[p + 1]);
+                        r += 2;
+                        p += 2;
+                        break;
+                    case OP_UNIFORM4FV:
+                        if ((sh == null) || sh.uniformv(refs[r], (float[]) refs[r + 1], ops[p + 1], ops[p] * 4))
+                            gl.glUniform4fv(id(refs[r]), ops[p], (float[]) refs[r + 1], ops[p + 1]);
+                        r += 2;
+                        p += 2;
+                        break;
+                    case OP_UNIFORMMATRIX3FV:
+                        if ((sh == null) || ((ops[p + 1] != 0) ? sh.forget(refs[r]) : sh.uniformv(refs[r], (float[]) refs[r + 1], ops[p + 2], ops[p] * 9)))
+                            gl.glUniformMatrix3fv(id(refs[r]), ops[p], ops[p + 1] != 0, (float[]) refs[r + 1], ops[p + 2]);
+                        r += 2;
+                        p += 3;
+                        break;
+                    case OP_UNIFORMMATRIX4FV:
+                        if ((sh == null) || ((ops[p + 1] != 0) ? sh.forget(refs[r]) : sh.uniformv(refs[r], (float[]) refs[r + 1], ops[p + 2], ops[p] * 16)))
+                            gl.glUniformMatrix4fv(id(refs[r]), ops[p], ops[p + 1] != 0, (float[]) refs[r + 1], ops[p + 2]);
+                        r += 2;
+                        p += 3;
+                        break;
+                    case OP_DRAWARRAYS:
+                        gl.glDrawArrays(ops[p], ops[p + 1], ops[p + 2]);
+                        p += 3;
+                        break;
+                    case OP_DRAWARRAYSINST:
+                        gl.glDrawArraysInstanced(ops[p], ops[p + 1], ops[p + 2], ops[p + 3]);
+                        p += 4;
+                        break;
+                    case OP_DRAWELEMENTS:
+                        gl.glDrawElements(ops[p], ops[p + 1], ops[p + 2], l(ops[p + 3], ops[p + 4]));
+                        p += 5;
+                        break;
+                    case OP_DRAWELEMENTSINST:
+                        gl.glDrawElementsInstanced(ops[p], ops[p + 1], ops[p + 2], l(ops[p + 3], ops[p + 4]), ops[p + 5]);
+                        p += 6;
+                        break;
+                    case OP_ENABLEVAA:
+                        gl.glEnableVertexAttribArray(((ID) refs[r++]).glid() + ops[p++]);
+                        break;
+                    case OP_DISABLEVAA:
+                        gl.glDisableVertexAttribArray(((ID) refs[r++]).glid() + ops[p++]);
+                        break;
+                    case OP_VAPOINTER:
+                        gl.glVertexAttribPointer(((ID) refs[r++]).glid() + ops[p], ops[p + 1], ops[p + 2], ops[p + 3] != 0, ops[p + 4], l(ops[p + 5], ops[p + 6]));
+                        p += 7;
+                        break;
+                    case OP_VADIVISOR:
+                        gl.glVertexAttribDivisor(((ID) refs[r++]).glid() + ops[p], ops[p + 1]);
+                        p += 2;
+                        break;
+                    default:
+                        throw (new AssertionError("Unknown BGL opcode " + op));
+                }
+            }
+        } catch (Exception exc) {
+            if (self != null)
+                throw (new BGLException(this, self, exc));
+            throw (new BGLException(this, ((op == OP_CMD) || (op == OP_NCMD)) ? (Command) refs[mr] : (failed = new Op(mp, mr)), exc));
+        }
+    }
+
+    public void abort() {
+        for (int p = 0, r = 0; p < nw; ) {
+            int op = ops[p];
+            if ((op == OP_CMD) || (op == OP_NCMD))
+                ((Command) refs[r]).abort();
+            else if (op == OP_BUFFERED)
+                ((GLDoubleBuffer.Buffered) refs[r]).abort();
+            p += opwords[op] + 1;
+            r += oprefs[op];
+        }
+    }
+
+    protected void add(Command cmd) {
+        begin(neutral ? OP_NCMD : OP_CMD, 0, 1);
+        r(cmd);
+        neutral = false;
+    }
+
+    public StreamBGL trim() {
+        ops = Arrays.copyOf(ops, nw);
+        refs = Arrays.copyOf(refs, nr);
+        return (this);
+    }
+
+    /* Approximate size of the recorded stream, in bytes. */
+    public int bytes() {
+        return ((ops.length * 4) + (refs.length * 4));
+    }
+
+    public void bglCallList(BufferBGL list) {
+        begin(OP_CALLLIST, 0, 1);
+        r(list);
+    }
+
+    public void bglSubmit(Request req) {
+        if (req instanceof GLDoubleBuffer.Buffered) {
+            begin(OP_BUFFERED, 0, 1);
+            r(req);
+        } else {
+            super.bglSubmit(req);
+        }
+    }
+
+    /* Calls that cannot change any shadowed state are still recorded
+     * as plain commands, but are marked so that they do not
+     * invalidate the shadow on replay. */
+    public void bglCheckErr() {
+        neutral = true;
+        super.bglCheckErr();
+    }
+
+    public void bglCopyBufferf(FloatBuffer dst, int doff, FloatBuffer src, int soff, int len) {
+        neutral = true;
+        super.bglCopyBufferf(dst, doff, src, soff, len);
+    }
+
+    public void bglCopyBufferf(FloatBuffer dst, int doff, float[] src, int soff, int len) {
+        neutral = true;
+        super.bglCopyBufferf(dst, doff, src, soff, len);
+    }
+
+    public void glBindFramebuffer(int target, ID buffer) {
+        neutral = true;
+        super.glBindFramebuffer(target, buffer);
+    }
+
+    public void glBlendColor(float red, float green, float blue, float alpha) {
+        neutral = true;
+        super.glBlendColor(red, green, blue, alpha);
+    }
+
+    public void glBufferData(int target, long size, Buffer data, int usage) {
+        neutral = true;
+        super.glBufferData(target, size, data, usage);
+    }
+
+    public void glBufferSubData(int target, long offset, long size, Buffer data) {
+        neutral = true;
+        super.glBufferSubData(target, offset, size, data);
+    }
+
+    public void glClear(int mask) {
+        neutral = true;
+        super.glClear(mask);
+    }
+
+    public void glClearColor(float r, float g, float b, float a) {
+        neutral = true;
+        super.glClearColor(r, g, b, a);
+    }
+
+    public void glClearDepth(double d) {
+        neutral = true;
+        super.glClearDepth(d);
+    }
+
+    public void glDrawBuffer(int buf) {
+        neutral = true;
+        super.glDrawBuffer(buf);
+    }
+
+    public void glDrawBuffers(int n, int[] bufs, int i) {
+        neutral = true;
+        super.glDrawBuffers(n, bufs, i);
+    }
+
+    public void glDrawRangeElements(int mode, int start, int end, int count, int type, long indices) {
+        neutral = true;
+        super.glDrawRangeElements(mode, start, end, count, type, indices);
+    }
+
+    public void glLineWidth(float w) {
+        neutral = true;
+        super.glLineWidth(w);
+    }
+
+    public void glPixelStorei(int pname, int param) {
+        neutral = true;
+        super.glPixelStorei(pname, param);
+    }
+
+    public void glPointSize(float size) {
+        neutral = true;
+        super.glPointSize(size);
+    }
+
+    public void glPolygonOffset(float factor, float units) {
+        neutral = true;
+        super.glPolygonOffset(factor, units);
+    }
+
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer data) {
+        neutral = true;
+        super.glTexImage2D(target, level, internalformat, width, height, border, format, type, data);
+    }
+
+    public void glTexSubImage2D(int target, int level, int xoff, int yoff, int width, int height, int format, int type, Buffer data) {
+        neutral = true;
+        super.glTexSubImage2D(target, level, xoff, yoff, width, height, format, type, data);
+    }
+
+    public void glTexParameterf(int target, int pname, float param) {
+        neutral = true;
+        super.glTexParameterf(target, pname, param);
+    }
+
+    public void glTexParameterfv(int target, int pname, float[] param, int n) {
+        neutral = true;
+        super.glTexParameterfv(target, pname, param, n);
+    }
+
+    public void glTexParameteri(int target, int pname, int param) {
+        neutral = true;
+        super.glTexParameteri(target, pname, param);
+    }
+
+    public void glActiveTexture(int texture) {
+        begin(OP_ACTIVETEXTURE, 1, 0);
+        w(texture);
+    }
+
+    public void glBindBuffer(int target, ID buffer) {
+        begin(OP_BINDBUFFER, 1, 1);
+        w(target);
+        r(buffer);
+    }
+
+    public void glBindTexture(int target, ID texture) {
+        begin(OP_BINDTEXTURE, 1, 1);
+        w(target);
+        r(texture);
+    }
+
+    public void glBindVertexArray(ID array) {
+        begin(OP_BINDVERTEXARRAY, 0, 1);
+        r(array);
+    }
+
+    public void glUseProgram(ID program) {
+        begin(OP_USEPROGRAM, 0, 1);
+        r(program);
+    }
+
+    public void glEnable(int cap) {
+        begin(OP_ENABLE, 1, 0);
+        w(cap);
+    }
+
+    public void glDisable(int cap) {
+        begin(OP_DISABLE, 1, 0);
+        w(cap);
+    }
+
+    public void glDepthMask(boolean mask) {
+        begin(OP_DEPTHMASK, 1, 0);
+        w(mask);
+    }
+
+    public void glDepthFunc(int func) {
+        begin(OP_DEPTHFUNC, 1, 0);
+        w(func);
+    }
+
+    public void glCullFace(int mode) {
+        begin(OP_CULLFACE, 1, 0);
+        w(mode);
+    }
+
+    public void glBlendFunc(int sfac, int dfac) {
+        begin(OP_BLENDFUNC, 2, 0);
+        w(sfac);
+        w(dfac);
+    }
+
+    public void glBlendFuncSeparate(int csfac, int cdfac, int asfac, int adfac) {
+        begin(OP_BLENDFUNCSEP, 4, 0);
+        w(csfac);
+        w(cdfac);
+        w(asfac);
+        w(adfac);
+    }
+
+    public void glBlendEquation(int mode) {
+        begin(OP_BLENDEQ, 1, 0);
+        w(mode);
+    }
+
+    public void glBlendEquationSeparate(int cmode, int amode) {
+        begin(OP_BLENDEQSEP, 2, 0);
+        w(cmode);
+        w(amode);
+    }
+
+    public void glColorMask(boolean r, boolean g, boolean b, boolean a) {
+        begin(OP_COLORMASK, 1, 0);
+        w((r ? 1 : 0) | (g ? 2 : 0) | (b ? 4 : 0) | (a ? 8 : 0));
+    }
+
+    public void glViewport(int x, int y, int w, int h) {
+        begin(OP_VIEWPORT, 4, 0);
+        w(x);
+        w(y);
+        w(w);
+        w(h);
+    }
+
+    public void glScissor(int x, int y, int w, int h) {
+        begin(OP_SCISSOR, 4, 0);
+        w(x);
+        w(y);
+        w(w);
+        w(h);
+    }
+
+    public void glUniform1f(ID location, float v0) {
+        begin(OP_UNIFORM1F, 1, 1);
+        r(location);
+        w(v0);
+    }
+
+    public void glUniform2f(ID location, float v0, float v1) {
+        begin(OP_UNIFORM2F, 2, 1);
+        r(location);
+        w(v0);
+        w(v1);
+    }
+
+    public void glUniform3f(ID location, float v0, float v1, float v2) {
+        begin(OP_UNIFORM3F, 3, 1);
+        r(location);
+        w(v0);
+        w(v1);
+        w(v2);
+    }
+
+    public void glUniform4f(ID location, float v0, float v1, float v2, float v3) {
+        begin(OP_UNIFORM4F, 4, 1);
+        r(location);
+        w(v0);
+        w(v1);
+        w(v2);
+        w(v3);
+    }
+
+    public void glUniform1i(ID location, int v0) {
+        begin(OP_UNIFORM1I, 1, 1);
+        r(location);
+        w(v0);
+    }
+
+    public void glUniform3fv(ID location, int count, float[] val, int n) {
+        begin(OP_UNIFORM3FV, 2, 2);
+        r(location);
+        r(val);
+        w(count);
+        w(n);
+    }
+
+    public void glUniform4fv(ID location, int count, float[] val, int n) {
+        begin(OP_UNIFORM4FV, 2, 2);
+        r(location);
+        r(val);
+        w(count);
+        w(n);
+    }
+
+    public void glUniformMatrix3fv(ID location, int count, boolean transpose, float[] value, int n) {
+        begin(OP_UNIFORMMATRIX3FV, 3, 2);
+        r(location);
+        r(value);
+        w(count);
+        w(transpose);
+        w(n);
+    }
+
+    public void glUniformMatrix4fv(ID location, int count, boolean transpose, float[] value, int n) {
+        begin(OP_UNIFORMMATRIX4FV, 3, 2);
+        r(location);
+        r(value);
+        w(count);
+        w(transpose);
+        w(n);
+    }
+
+    public void glDrawArrays(int mode, int first, int count) {
+        begin(OP_DRAWARRAYS, 3, 0);
+        w(mode);
+        w(first);
+        w(count);
+    }
+
+    public void glDrawArraysInstanced(int mode, int first, int count, int primcount) {
+        begin(OP_DRAWARRAYSINST, 4, 0);
+        w(mode);
+        w(first);
+        w(count);
+        w(primcount);
+    }
+
+    public void glDrawElements(int mode, int count, int type, long indices) {
+        begin(OP_DRAWELEMENTS, 5, 0);
+        w(mode);
+        w(count);
+        w(type);
+        w(indices);
+    }
+
+    public void glDrawElementsInstanced(int mode, int count, int type, long indices, int primcount) {
+        begin(OP_DRAWELEMENTSINST, 6, 0);
+        w(mode);
+        w(count);
+        w(type);
+        w(indices);
+        w(primcount);
+    }
+
+    public void glEnableVertexAttribArray(ID location) {
+        glEnableVertexAttribArray(location, 0);
+    }
+
+    public void glEnableVertexAttribArray(ID location, int offset) {
+        begin(OP_ENABLEVAA, 1, 1);
+        r(location);
+        w(offset);
+    }
+
+    public void glDisableVertexAttribArray(ID location) {
+        glDisableVertexAttribArray(location, 0);
+    }
+
+    public void glDisableVertexAttribArray(ID location, int offset) {
+        begin(OP_DISABLEVAA, 1, 1);
+        r(location);
+        w(offset);
+    }
+
+    public void glVertexAttribPointer(ID location, int size, int type, boolean normalized, int stride, long pointer) {
+        glVertexAttribPointer(location, 0, size, type, normalized, stride, pointer);
+    }
+
+    public void glVertexAttribPointer(ID location, int offset, int size, int type, boolean normalized, int stride, long pointer) {
+        begin(OP_VAPOINTER, 7, 1);
+        r(location);
+        w(offset);
+        w(size);
+        w(type);
+        w(normalized);
+        w(stride);
+        w(pointer);
+    }
+
+    public void glVertexAttribDivisor(ID location, int divisor) {
+        glVertexAttribDivisor(location, 0, divisor);
+    }
+
+    public void glVertexAttribDivisor(ID location, int offset, int divisor) {
+        begin(OP_VADIVISOR, 2, 1);
+        r(location);
+        w(offset);
+        w(divisor);
+    }
+
+    /* Decoded form of an encoded command, for dumps. */
+    private class Op extends Command {
+        final String name;
+        final Object[] refs;
+        final int[] args;
+        final int[] code;
+
+        final int p;
+
+        Op(int p, int r) {
+            int op = ops[p];
+            this.p = p;
+            this.name = opnames[op];
+            this.refs = Arrays.copyOfRange(StreamBGL.this.refs, r, r + oprefs[op]);
+            this.code = Arrays.copyOfRange(ops, p, p + 1 + opwords[op]);
+            this.args = Arrays.copyOfRange(code, 1, code.length);
+        }
+
+        public void run(GL3 gl) {
+            StreamBGL.this.run(gl, null, code, refs, code.length, this);
+        }
+
+        public String toString() {
+            return (String.format("#<op %s %s %s>", name, Arrays.asList(refs), Arrays.toString(args)));
+        }
+    }
+
+    protected Iterable<Command> dump() {
+        List<Command> ret = new ArrayList<>(n);
+        for (int p = 0, r = 0; p < nw; ) {
+            int op = ops[p];
+            if ((op == OP_CMD) || (op == OP_NCMD))
+                ret.add((Command) refs[r]);
+            else
+                ret.add(((failed != null) && (failed.p == p)) ? failed : new Op(p, r));
+            p += opwords[op] + 1;
+            r += oprefs[op];
+        }
+        return (ret);
+    }
+}
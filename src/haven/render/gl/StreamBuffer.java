@@ -54,8 +54,11 @@ public class StreamBuffer implements haven.Disposable {
         this.size = size;
     }
 
+    /* The transfer buffers are kept for the life of the buffer, so
+     * they may as well be direct, sparing JOGL from having to pin or
+     * copy a heap array on every update. */
     private ByteBuffer mkbuf() {
-        return (ByteBuffer.allocate(size).order(ByteOrder.nativeOrder()));
+        return (ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder()));
     }
 
     public ByteBuffer get() {
@@ -0,0 +1,152 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import javax.media.opengl.*;
+
+/* Checks that a StreamBGL replays exactly the calls that a plain
+ * BufferBGL recording the same commands does, directly and through
+ * bglCallList, and compares their recording and replay rates and
+ * allocation. Replay rates include the overhead of NullGL, which is
+ * the same for both. Run as
+ *   StreamCheck [COMMANDS] */
+public class StreamCheck {
+    static final BGL.ID id = () -> 7, id2 = () -> 3;
+
+    /* 40 commands covering every directly encoded opcode as well as
+     * some generic ones. */
+    static void rec(BGL gl, int i) {
+        float[] m = new float[16];
+        m[0] = 1.5f;
+        gl.glUseProgram(id);
+        gl.glBindVertexArray(null);
+        gl.glBindBuffer(1, id2);
+        gl.glBindTexture(2, id);
+        gl.glActiveTexture(GL.GL_TEXTURE0 + (i % 4));
+        gl.glEnable(5);
+        gl.glDisable(6);
+        gl.glDepthMask(true);
+        gl.glDepthFunc(3);
+        gl.glCullFace(4);
+        gl.glBlendFunc(1, 2);
+        gl.glBlendFuncSeparate(1, 2, 3, 4);
+        gl.glBlendEquation(9);
+        gl.glBlendEquationSeparate(8, 7);
+        gl.glColorMask(true, false, true, false);
+        gl.glViewport(1, 2, 3, 4);
+        gl.glScissor(4, 3, 2, 1);
+        gl.glUniform1f(id, 0.25f);
+        gl.glUniform2f(id, 1f, -2f);
+        gl.glUniform3f(id, 1, 2, 3);
+        gl.glUniform4f(id, 1, 2, 3, i);
+        gl.glUniform1i(id, -5);
+        gl.glUniform3fv(id, 1, m, 0);
+        gl.glUniform4fv(id, 1, m, 2);
+        gl.glUniformMatrix3fv(id, 1, false, m, 0);
+        gl.glUniformMatrix4fv(id, 1, true, m, 0);
+        gl.glDrawArrays(4, 0, 36);
+        gl.glDrawArraysInstanced(4, 1, 2, 3);
+        gl.glDrawElements(4, 6, GL.GL_UNSIGNED_SHORT, 0x1_0000_0010L);
+        gl.glDrawElementsInstanced(4, 6, GL.GL_UNSIGNED_SHORT, 12L, 9);
+        gl.glEnableVertexAttribArray(id);
+        gl.glEnableVertexAttribArray(id, 2);
+        gl.glDisableVertexAttribArray(id);
+        gl.glDisableVertexAttribArray(id, 1);
+        gl.glVertexAttribPointer(id, 3, GL.GL_FLOAT, false, 12, 8L);
+        gl.glVertexAttribPointer(id, 1, 4, GL.GL_FLOAT, true, 16, 0L);
+        gl.glVertexAttribDivisor(id, 1);
+        gl.glVertexAttribDivisor(id, 2, 1);
+        gl.glClear(3);
+        gl.glClearColor(1, 0, 0, 1);
+    }
+
+    static final int percall = 40;
+
+    static void recn(BGL gl, int n) {
+        for (int i = 0; i < n / percall; i++)
+            rec(gl, i);
+    }
+
+    static List<String> replay(BufferBGL buf) {
+        NullGL gl = new NullGL();
+        gl.log = new ArrayList<>();
+        buf.run(gl.gl);
+        return (gl.log);
+    }
+
+    static void check(int n) {
+        BufferBGL a = new BufferBGL();
+        StreamBGL b = new StreamBGL(4);
+        recn(a, n);
+        recn(b, n);
+        StreamBGL outer = new StreamBGL();
+        outer.bglCallList(b);
+        List<String> la = replay(a), lb = replay(b), lc = replay(outer);
+        if (!la.equals(lb) || !la.equals(lc))
+            throw (new AssertionError("replayed calls differ"));
+        if (a.size() != b.size())
+            throw (new AssertionError(String.format("command counts differ: %d != %d", a.size(), b.size())));
+        System.out.printf("replay identical: %d calls, %d commands\n", la.size(), b.size());
+    }
+
+    /* Records and replays lists of 120 commands, the typical size
+     * of a draw list bucket. */
+    static void bench(int n) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        NullGL nul = new NullGL();
+        int len = percall * 3, nl = n / len;
+        BufferBGL[] la = new BufferBGL[nl], lb = new BufferBGL[nl];
+        for (int rep = 0; rep < 5; rep++) {
+            long st = System.nanoTime(), a0 = mx.getThreadAllocatedBytes(tid);
+            for (int i = 0; i < nl; i++)
+                recn(la[i] = new BufferBGL(), len);
+            long ta = System.nanoTime() - st, a1 = mx.getThreadAllocatedBytes(tid);
+            st = System.nanoTime();
+            for (int i = 0; i < nl; i++)
+                recn(lb[i] = new StreamBGL(), len);
+            long tb = System.nanoTime() - st, a2 = mx.getThreadAllocatedBytes(tid);
+            st = System.nanoTime();
+            for (BufferBGL l : la)
+                l.run(nul.gl);
+            long ra = System.nanoTime() - st;
+            st = System.nanoTime();
+            for (BufferBGL l : lb)
+                l.run(nul.gl);
+            long rb = System.nanoTime() - st;
+            System.out.printf("record: list %.1f, stream %.1f cmds/us (%d, %d B/list); replay: list %.1f, stream %.1f cmds/us\n",
+                    n * 1000.0 / ta, n * 1000.0 / tb, (a1 - a0) / nl, (a2 - a1) / nl, n * 1000.0 / ra, n * 1000.0 / rb);
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 400000;
+        check(4000);
+        bench(n);
+    }
+}
@@ -62,6 +62,7 @@ public class DrawBuffer implements Disposable {
     public void draw(Drawn thing) {
         GOut g = graphics();
         thing.draw(g);
+        g.flush();
         env.submit(g.out);
     }
 